@@ -0,0 +1,54 @@
+package planning;
+
+import io.DataLoader;
+import io.InstanceGenerator;
+import model.DeliveryRequest;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Синтетическая задача для бенчмарков, детерминированная по seed
+ * Генерируется InstanceGenerator (смешанная география, широкие окна, 1-3 строки заказа на магазин)
+ * во временный каталог и читается обратно через DataLoader, как рабочие данные.
+ */
+public class BenchmarkInstance {
+
+    public static final long SEED = InstanceGenerator.DEFAULT_SEED;
+
+    public final List<Truck> trucks;
+    public final Map<String, Store> stores = new HashMap<>();
+    public final Map<String, Product> products = new HashMap<>();
+    public final Map<String, List<DeliveryRequest>> demands;
+
+    public BenchmarkInstance(int storeCount, long seed) {
+        try {
+            File dir = Files.createTempDirectory("instance").toFile();
+            try {
+                InstanceGenerator.generate(dir, storeCount, 2, InstanceGenerator.defaultTruckCount(storeCount),
+                        InstanceGenerator.Geography.MIXED, InstanceGenerator.Windows.WIDE, seed);
+                for (Product product : DataLoader.loadProducts(new File(dir, "products.csv").getPath())) {
+                    products.put(product.getProductId(), product);
+                }
+                for (Store store : DataLoader.loadStores(new File(dir, "stores.csv").getPath())) {
+                    stores.put(store.getStoreId(), store);
+                }
+                trucks = DataLoader.loadTrucks(new File(dir, "trucks.csv").getPath());
+                demands = DataLoader.loadDemands(new File(dir, "stores.csv").getPath(), products);
+            } finally {
+                for (File file : Objects.requireNonNull(dir.listFiles())) {
+                    file.delete();
+                }
+                dir.delete();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
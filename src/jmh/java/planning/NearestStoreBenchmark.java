@@ -0,0 +1,41 @@
+package planning;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Один шаг жадного алгоритма: выбор следующего магазина (RoutePlanningEngine.Greedy.findNearestStore)
+ * Текущая точка перебирается по всем магазинам, чтобы измерение не сводилось к одному случаю.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class NearestStoreBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int stores;
+
+    private ProblemInstance instance;
+    private RoutePlanningEngine.Greedy greedy;
+    private int current;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkInstance data = new BenchmarkInstance(stores, BenchmarkInstance.SEED);
+        instance = ProblemInstance.compile(data.trucks, data.stores, data.demands);
+        greedy = new RoutePlanningEngine.Greedy(instance, RoutePlanningEngine.COST_WEIGHT, null,
+                new boolean[instance.lineCount()]);
+    }
+
+    @Benchmark
+    public int findNearestStore() {
+        current = (current + 1) % instance.matrix.storeCount();
+        int time = instance.availableFrom[0] + 3600;
+        return greedy.findNearestStore(0, current, time, 0, instance.capacity[0], instance.costPerKm[0],
+                instance.depot[0], instance.availableUntil[0]);
+    }
+}
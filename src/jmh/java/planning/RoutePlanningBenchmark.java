@@ -0,0 +1,36 @@
+package planning;
+
+import model.DeliveryRoute;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полное планирование RoutePlanningEngine.planRoutes (жадный алгоритм + локальный поиск)
+ * Размер 50000 не входит в набор по умолчанию: плотная матрица расстояний для него
+ * не помещается в память; его можно задать через -p stores=50000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class RoutePlanningBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int stores;
+
+    private BenchmarkInstance instance;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        instance = new BenchmarkInstance(stores, BenchmarkInstance.SEED);
+    }
+
+    @Benchmark
+    public List<DeliveryRoute> planRoutes() {
+        return RoutePlanningEngine.planRoutes(instance.trucks, instance.stores, instance.products, instance.demands);
+    }
+}
@@ -0,0 +1,73 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.Store;
+import model.Truck;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планирование маршрута агента грузовика (TruckOrderPlanner) по очереди из одного заказа на магазин
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class TruckOrderPlannerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int stores;
+
+    private Truck truck;
+    private List<QueuedOrder> orders;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkInstance data = new BenchmarkInstance(stores, BenchmarkInstance.SEED);
+        truck = data.trucks.get(0);
+        orders = new ArrayList<>();
+        for (Map.Entry<String, List<DeliveryRequest>> entry : data.demands.entrySet()) {
+            double weight = 0;
+            int quantity = 0;
+            for (DeliveryRequest request : entry.getValue()) {
+                weight += request.getTotalWeight();
+                quantity += request.getQuantity();
+            }
+            orders.add(new QueuedOrder(data.stores.get(entry.getKey()), weight, quantity));
+        }
+    }
+
+    @Benchmark
+    public List<QueuedOrder> plan() {
+        LocalTime start = truck.getAvailabilityStart().plusMinutes(10);
+        return TruckOrderPlanner.plan(truck, truck.getStartX(), truck.getStartY(), start, 0, orders, null);
+    }
+
+    public static class QueuedOrder implements TruckOrderPlanner.Order {
+        private final Store store;
+        private final double totalWeight;
+        private final int totalQuantity;
+
+        QueuedOrder(Store store, double totalWeight, int totalQuantity) {
+            this.store = store;
+            this.totalWeight = totalWeight;
+            this.totalQuantity = totalQuantity;
+        }
+
+        @Override
+        public Store getStore() { return store; }
+
+        @Override
+        public double getTotalWeight() { return totalWeight; }
+
+        @Override
+        public int getTotalQuantity() { return totalQuantity; }
+    }
+}
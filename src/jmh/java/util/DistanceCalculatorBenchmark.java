@@ -0,0 +1,50 @@
+package util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчёт расстояний: одна пара точек и путь через все точки
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistanceCalculatorBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int stores;
+
+    private double[] xs;
+    private double[] ys;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        double side = 10 * Math.sqrt(stores);
+        xs = new double[stores];
+        ys = new double[stores];
+        for (int i = 0; i < stores; i++) {
+            xs[i] = random.nextDouble() * side;
+            ys[i] = random.nextDouble() * side;
+        }
+    }
+
+    @Benchmark
+    public double calculateDistance() {
+        int i = index;
+        int j = i + 1 == stores ? 0 : i + 1;
+        index = j;
+        return DistanceCalculator.calculateDistance(xs[i], ys[i], xs[j], ys[j]);
+    }
+
+    @Benchmark
+    public double calculateTotalDistance() {
+        return DistanceCalculator.calculateTotalDistance(xs, ys);
+    }
+}
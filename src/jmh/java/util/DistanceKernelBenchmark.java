@@ -0,0 +1,70 @@
+package util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расстояния от одной точки до всех кандидатов: попарные вызовы DistanceCalculator,
+ * скалярное ядро (векторизует C2) и текущее ядро DistanceKernels.current()
+ * Ядро Vector API выбирается, только если форк запущен с модулем:
+ * mvn -P jmh compile exec:exec -Djmh.args="DistanceKernel -jvmArgsAppend --add-modules=jdk.incubator.vector"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistanceKernelBenchmark {
+
+    @Param({"10000", "50000", "100000"})
+    public int candidates;
+
+    private double[] xs;
+    private double[] ys;
+    private double[] out;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        double side = 10 * Math.sqrt(candidates);
+        xs = new double[candidates];
+        ys = new double[candidates];
+        out = new double[candidates];
+        for (int i = 0; i < candidates; i++) {
+            xs[i] = random.nextDouble() * side;
+            ys[i] = random.nextDouble() * side;
+        }
+    }
+
+    @Benchmark
+    public double[] pairwise() {
+        int from = next();
+        for (int i = 0; i < candidates; i++) {
+            out[i] = DistanceCalculator.calculateDistance(xs[from], ys[from], xs[i], ys[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public double[] scalarKernel() {
+        int from = next();
+        DistanceKernels.SCALAR.distancesFrom(xs[from], ys[from], xs, ys, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] currentKernel() {
+        int from = next();
+        DistanceKernels.current().distancesFrom(xs[from], ys[from], xs, ys, out);
+        return out;
+    }
+
+    private int next() {
+        index = index + 1 == candidates ? 0 : index + 1;
+        return index;
+    }
+}
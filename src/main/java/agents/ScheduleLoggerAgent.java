@@ -10,7 +10,10 @@ import model.DeliveryRoute;
 import model.Product;
 import model.Store;
 import model.Truck;
+import planning.LowerBound;
 import util.DistanceCalculator;
+import util.DistanceProvider;
+import util.DistanceProviders;
 
 import java.io.File;
 import java.io.IOException;
@@ -31,6 +34,8 @@ public class ScheduleLoggerAgent extends Agent {
     private final Map<String, Store> stores = new HashMap<>();
     private final Map<String, Product> products = new HashMap<>();
     private final Map<String, Truck> trucks = new HashMap<>();
+    // Источник расстояний (тот же, что у TruckAgent)
+    private DistanceProvider distances;
     private int routeCounter = 0;
     // Активные маршруты: ключ = "truckId:departureTime", значение = DeliveryRoute
     private final Map<String, DeliveryRoute> activeRoutes = new HashMap<>();
@@ -41,6 +46,7 @@ public class ScheduleLoggerAgent extends Agent {
     @Override
     protected void setup() {
         System.out.println("ScheduleLoggerAgent " + getLocalName() + " инициализирован");
+        distances = DistanceProviders.current();
 
         try {
             // Локальная информация для построения отчёта
@@ -208,13 +214,13 @@ public class ScheduleLoggerAgent extends Agent {
                     // Рассчитываем расстояние от последней остановки или от склада
                     if (route.getStops().isEmpty()) {
                         // Первая остановка - расстояние от склада
-                        double dist = DistanceCalculator.calculateDistance(
+                        double dist = distances.distance(
                                 truck.getStartX(), truck.getStartY(), stopX, stopY);
                         stop.setDistanceFromPreviousStop(dist);
                     } else {
                         // От последней остановки
                         DeliveryRoute.RouteStop lastStop = route.getStops().get(route.getStops().size() - 1);
-                        double dist = DistanceCalculator.calculateDistance(
+                        double dist = distances.distance(
                                 lastStop.getX(), lastStop.getY(), stopX, stopY);
                         stop.setDistanceFromPreviousStop(dist);
                     }
@@ -256,7 +262,7 @@ public class ScheduleLoggerAgent extends Agent {
             // Добавляем расстояние возврата на склад
             if (!route.getStops().isEmpty()) {
                 DeliveryRoute.RouteStop lastStop = route.getStops().get(route.getStops().size() - 1);
-                double distanceToDepot = DistanceCalculator.calculateDistance(
+                double distanceToDepot = distances.distance(
                         lastStop.getX(), lastStop.getY(), truck.getStartX(), truck.getStartY());
                 totalRouteDistance += distanceToDepot;
                 
@@ -302,10 +308,16 @@ public class ScheduleLoggerAgent extends Agent {
                     System.out.println("[ScheduleLogger] ⚠ ПРЕДУПРЕЖДЕНИЕ: нет маршрутов для записи! Возможно, агенты не договорились о доставках.");
                     System.out.println("[ScheduleLogger] ⚠ Проверьте логи StoreAgent и TruckAgent на наличие ошибок договоренности.");
                 } else {
+                    // Разрыв до нижней оценки стоимости (без данных о грузовиках не считается)
+                    LowerBound.Report bound = trucks.isEmpty() ? null
+                            : LowerBound.evaluate(routes, new ArrayList<>(trucks.values()));
+                    if (bound != null) {
+                        System.out.println("[ScheduleLogger] Нижняя оценка: " + bound);
+                    }
                     System.out.println("[ScheduleLogger] Записываю CSV файл...");
-                    ScheduleWriter.writeScheduleToCSV("output/schedule.csv", routes);
+                    ScheduleWriter.writeScheduleToCSV("output/schedule.csv", routes, bound);
                     System.out.println("[ScheduleLogger] Записываю Excel файл...");
-                    ScheduleWriter.writeScheduleToExcel("output/schedule.xlsx", routes);
+                    ScheduleWriter.writeScheduleToExcel("output/schedule.xlsx", routes, bound);
                     System.out.println("[ScheduleLogger] ✓✓✓ Расписание успешно обновлено в output/schedule.csv и output/schedule.xlsx");
                 }
             } catch (IOException e) {
@@ -10,6 +10,10 @@ import jade.domain.FIPAAgentManagement.DFAgentDescription;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import model.Store;
 import model.DeliveryRequest;
+import model.Truck;
+import planning.CostWeights;
+import planning.Feasibility;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -36,11 +40,13 @@ public class StoreAgent extends Agent {
     // Список предложений от грузовиков для выбора самого дешевого
     private List<ProposalInfo> pendingProposals = new ArrayList<>();
     private long proposalCollectionDeadline = 0; // Время окончания сбора предложений
+    // Грузовики, которые в принципе могут обслужить магазин (null - CFP получают все)
+    private Feasibility feasibility;
     private static final long PROPOSAL_COLLECTION_TIMEOUT = 5000; // Время ожидания предложений (5 секунд)
     
     // Коэффициент веса для стоимости (0.0 - только время, 1.0 - только стоимость)
-    // 0.3 означает 30% веса на стоимость, 70% на время доставки
-    private static final double COST_WEIGHT = 0.3;
+    // 0.3 означает 30% веса на стоимость, 70% на время доставки; настройка запуска - CostWeights.PROPERTY
+    private static final double COST_WEIGHT = CostWeights.current(0.3);
     private static final double TIME_WEIGHT = 1.0 - COST_WEIGHT;
     
     // Класс для хранения информации о предложении
@@ -77,6 +83,18 @@ public class StoreAgent extends Agent {
             return;
         }
 
+        // Отсекаем грузовики, которые не успевают в окно магазина или не поднимут ни одной единицы товара.
+        // Грузовики передаются третьим аргументом; те же веса единиц считает для себя TruckAgent
+        if (args.length >= 3 && args[2] != null) {
+            @SuppressWarnings("unchecked")
+            List<Truck> trucks = (List<Truck>) args[2];
+            feasibility = Feasibility.forAgents(trucks, Collections.singletonList(store),
+                    Feasibility.minUnitWeights(Collections.singletonMap(store.getStoreId(), demands)));
+            System.out.println("  Допустимых грузовиков: " + feasibility.count() + " из " + trucks.size());
+        } else {
+            System.err.println("[" + getLocalName() + "] Список грузовиков не передан, CFP будет отправляться всем");
+        }
+
         // Регистрируемся в DF как равноправный сервис
         DFAgentDescription dfd = new DFAgentDescription();
         dfd.setName(getAID());
@@ -347,8 +365,17 @@ public class StoreAgent extends Agent {
                 }
 
                 ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+                int receivers = 0;
                 for (DFAgentDescription desc : result) {
-                    cfp.addReceiver(desc.getName());
+                    // Недопустимым грузовикам CFP не отправляем: они всё равно откажут
+                    if (feasibility == null || feasibility.allows(store.getStoreId(), desc.getName().getLocalName())) {
+                        cfp.addReceiver(desc.getName());
+                        receivers++;
+                    }
+                }
+                if (receivers == 0) {
+                    System.out.println("[" + getLocalName() + "] Нет грузовиков, способных обслужить магазин, CFP не будет отправлен");
+                    return;
                 }
                 // Формат: DELIVERY_CFP:storeId:productId1:qty1:productId2:qty2:...
                 // Отправляем только не доставленные И не заказанные товары
@@ -11,12 +11,20 @@ import model.Truck;
 import model.Product;
 import model.Store;
 import io.DataLoader;
+import planning.DistanceRowCache;
+import planning.Feasibility;
+import planning.MatrixDistanceProvider;
+import planning.TruckOrderPlanner;
 import util.DistanceCalculator;
+import util.DistanceProvider;
+import util.DistanceProviders;
+import util.EuclideanDistanceProvider;
 import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Locale;
 import java.io.IOException;
 
@@ -28,16 +36,22 @@ public class TruckAgent extends Agent {
     private Truck truck;
     private Map<String, Product> products; // Справочник товаров для расчёта веса
     private Map<String, Store> stores; // Справочник магазинов для расчёта расстояний
+    private Feasibility feasibility; // Магазины, в окна которых грузовик в принципе успевает
+    private Map<String, Double> minUnitWeights; // Вес самой лёгкой единицы товара по магазинам (Feasibility.minUnitWeights)
     // Текущая позиция грузовика (координаты)
     private double currentX;
     private double currentY;
+    // Источник расстояний (общий для агентов контейнера)
+    private DistanceProvider distances;
+    // Кэш строк расстояний для дорогого источника (дорожная сеть); null - считать напрямую
+    private DistanceRowCache rowCache;
     // Флаг занятости грузовика (выполняет ли он сейчас доставку)
     private boolean isBusy = false;
     // Очередь принятых заказов для планирования маршрута
     private List<PendingOrder> pendingOrders = new ArrayList<>();
     
     // Внутренний класс для хранения принятых заказов
-    private static class PendingOrder {
+    private static class PendingOrder implements TruckOrderPlanner.Order {
         String storeId;
         Store store;
         List<String> productIds;
@@ -56,6 +70,15 @@ public class TruckAgent extends Agent {
             this.totalQuantity = totalQuantity;
             this.requestedTime = LocalTime.now();
         }
+
+        @Override
+        public Store getStore() { return store; }
+
+        @Override
+        public double getTotalWeight() { return totalWeight; }
+
+        @Override
+        public int getTotalQuantity() { return totalQuantity; }
     }
 
     @Override
@@ -63,6 +86,11 @@ public class TruckAgent extends Agent {
         Object[] args = getArguments();
         if (args != null && args.length > 0) {
             truck = (Truck) args[0];
+            if (args.length > 1) {
+                @SuppressWarnings("unchecked")
+                Map<String, Double> weights = (Map<String, Double>) args[1];
+                minUnitWeights = weights;
+            }
             System.out.println("TruckAgent " + getLocalName() + " инициализирован: " + truck);
         } else {
             System.err.println("Ошибка инициализации TruckAgent: отсутствуют аргументы");
@@ -70,6 +98,8 @@ public class TruckAgent extends Agent {
             return;
         }
 
+        distances = DistanceProviders.current();
+
         // Инициализируем текущую позицию грузовика (на складе)
         currentX = truck.getStartX();
         currentY = truck.getStartY();
@@ -95,6 +125,14 @@ public class TruckAgent extends Agent {
         } catch (IOException e) {
             System.err.println("[" + getLocalName() + "] Ошибка загрузки магазинов: " + e.getMessage());
         }
+        // Строки расстояний от позиций грузовика считаются по требованию. Евклидово расстояние - один sqrt,
+        // а общая матрица контейнера уже хранит все пары: для них кэш только мешает
+        if (!(distances instanceof EuclideanDistanceProvider || distances instanceof MatrixDistanceProvider)) {
+            rowCache = new DistanceRowCache(stores, truck, distances);
+            distances = rowCache;
+        }
+        feasibility = Feasibility.forAgents(Collections.singletonList(truck), stores.values(), minUnitWeights);
+        System.out.println("[" + getLocalName() + "] Допустимых магазинов: " + feasibility.count() + " из " + stores.size());
 
         // Регистрируем в DF
         DFAgentDescription dfd = new DFAgentDescription();
@@ -114,6 +152,28 @@ public class TruckAgent extends Agent {
         addBehaviour(new TruckServiceBehaviour());
     }
 
+    /**
+     * Расстояние от точки маршрута (склад или магазин) до магазина; с кэшем строк - по индексам узлов
+     */
+    private double distanceToStore(double x, double y, Store store) {
+        if (rowCache != null) {
+            int from = rowCache.nodeAt(x, y);
+            int to = rowCache.indexOf(store.getStoreId());
+            if (from >= 0 && to >= 0) {
+                return rowCache.distance(from, to);
+            }
+        }
+        return distances.distance(x, y, store.getX(), store.getY());
+    }
+
+    private double distanceToBase(Store store) {
+        int from = rowCache != null ? rowCache.indexOf(store.getStoreId()) : -1;
+        if (from >= 0) {
+            return rowCache.distance(from, rowCache.depot());
+        }
+        return distances.distance(store.getX(), store.getY(), truck.getStartX(), truck.getStartY());
+    }
+
     @Override
     protected void takeDown() {
         try {
@@ -121,6 +181,9 @@ public class TruckAgent extends Agent {
         } catch (jade.domain.FIPAException fe) {
             fe.printStackTrace();
         }
+        if (rowCache != null) {
+            System.out.println("[" + getLocalName() + "] " + rowCache.stats());
+        }
         System.out.println("TruckAgent " + getLocalName() + " закончил работу");
     }
 
@@ -173,6 +236,16 @@ public class TruckAgent extends Agent {
             }
             
             String storeId = parts[1];
+
+            // Магазин, в окно которого грузовик не успевает даже со свободного склада, отсекаем сразу
+            if (!feasibility.allows(storeId, truck.getTruckId())) {
+                ACLMessage reply = msg.createReply();
+                reply.setPerformative(ACLMessage.REFUSE);
+                reply.setContent("INFEASIBLE");
+                send(reply);
+                System.out.println("[" + getLocalName() + "] → Отказ: магазин " + storeId + " недостижим для грузовика");
+                return;
+            }
             
             // Парсим все товары из заказа
             List<String> productIds = new ArrayList<>();
@@ -282,7 +355,7 @@ public class TruckAgent extends Agent {
             
             // Если грузовик не на базе, рассчитываем время возврата на базу
             if (currentX != truck.getStartX() || currentY != truck.getStartY()) {
-                double distanceToBase = DistanceCalculator.calculateDistance(
+                double distanceToBase = distances.distance(
                         currentX, currentY, truck.getStartX(), truck.getStartY()
                 );
                 int returnTimeSeconds = DistanceCalculator.calculateTravelTime(distanceToBase);
@@ -295,9 +368,7 @@ public class TruckAgent extends Agent {
             }
 
             // Рассчитываем расстояние от базы (или текущей позиции, если уже на базе) до магазина
-            double distanceToStore = DistanceCalculator.calculateDistance(
-                    currentPosX, currentPosY, store.getX(), store.getY()
-            );
+            double distanceToStore = distanceToStore(currentPosX, currentPosY, store);
 
             // Рассчитываем время в пути
             int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distanceToStore);
@@ -369,9 +440,7 @@ public class TruckAgent extends Agent {
             reply.setPerformative(ACLMessage.PROPOSE);
             
             // Рассчитываем стоимость: путь туда + обратный путь от магазина до базы * 0.7
-            double distanceFromStoreToBase = DistanceCalculator.calculateDistance(
-                    store.getX(), store.getY(), truck.getStartX(), truck.getStartY()
-            );
+            double distanceFromStoreToBase = distanceToBase(store);
             double estimatedCost = DistanceCalculator.calculateCostWithReturn(
                     distanceToStore, distanceFromStoreToBase, truck.getCostPerKm()
             );
@@ -683,18 +752,10 @@ public class TruckAgent extends Agent {
             }
         }
         
-    // Коэффициент веса для стоимости (0.0 - только время, 1.0 - только стоимость)
-    // 0.1 означает 10% веса на стоимость, 90% на время доставки (время имеет больший вес)
-    private static final double COST_WEIGHT = 0.1;
-    private static final double TIME_WEIGHT = 1.0 - COST_WEIGHT;
-    // Коэффициент для увеличения веса времени доставки
-    private static final double TIME_MULTIPLIER = 2.0;
-    
         /**
          * Планирует оптимальный маршрут из очереди заказов с учетом стоимости и времени доставки
          */
         private List<PendingOrder> planOptimalRoute() {
-            List<PendingOrder> route = new ArrayList<>();
             double currentLoad = truck.getCurrentLoad();
             LocalTime currentTime = truck.getNextFreeTime();
             if (currentTime == null) {
@@ -711,7 +772,7 @@ public class TruckAgent extends Agent {
             double routeY = currentY;
             if (currentX != truck.getStartX() || currentY != truck.getStartY()) {
                 // Грузовик не на базе - возвращаемся на базу и загружаем товары
-                double distanceToBase = DistanceCalculator.calculateDistance(
+                double distanceToBase = distances.distance(
                         currentX, currentY, truck.getStartX(), truck.getStartY()
                 );
                 int returnTimeSeconds = DistanceCalculator.calculateTravelTime(distanceToBase);
@@ -754,174 +815,12 @@ public class TruckAgent extends Agent {
             }
             
             // Оптимизация с учетом стоимости и времени доставки
-            while (!availableOrders.isEmpty() && currentTime.isBefore(truck.getAvailabilityEnd())) {
-                PendingOrder bestOrder = null;
-                double bestScore = Double.MAX_VALUE;
-                int bestIndex = -1;
-                
-                // Первый проход: находим максимальные значения для нормализации
-                double maxCost = 0;
-                long maxTimeSeconds = 0;
-                
-                for (PendingOrder order : availableOrders) {
-                    if (currentLoad + order.totalWeight > truck.getCapacity()) {
-                        continue;
-                    }
-                    
-                    double distance = DistanceCalculator.calculateDistance(
-                            routeX, routeY, order.store.getX(), order.store.getY());
-                    // Стоимость: путь туда + обратный путь от магазина до базы * 0.7
-                    double distanceFromStoreToBase = DistanceCalculator.calculateDistance(
-                            order.store.getX(), order.store.getY(), truck.getStartX(), truck.getStartY()
-                    );
-                    double cost = DistanceCalculator.calculateCostWithReturn(distance, distanceFromStoreToBase, truck.getCostPerKm());
-                    int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
-                    LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
-                    
-                    if (arrivalTime.isBefore(order.store.getTimeWindowStart())) {
-                        long waitSeconds = java.time.Duration.between(arrivalTime, order.store.getTimeWindowStart()).getSeconds();
-                        travelTimeSeconds += waitSeconds;
-                    } else if (arrivalTime.isAfter(order.store.getTimeWindowEnd())) {
-                        continue;
-                    }
-                    
-                    int serviceTimeSeconds = DistanceCalculator.calculateServiceTime(order.totalQuantity); // Разгрузка зависит от количества товаров
-                    LocalTime departureTime = arrivalTime.plusSeconds(serviceTimeSeconds);
-                    
-                    if (departureTime.isAfter(order.store.getTimeWindowEnd()) || 
-                        departureTime.isAfter(truck.getAvailabilityEnd())) {
-                        continue;
-                    }
-                    
-                    // Учитываем время разгрузки при расчете общего времени для нормализации
-                    long totalTimeSeconds = travelTimeSeconds + serviceTimeSeconds;
-                    
-                    maxCost = Math.max(maxCost, cost);
-                    maxTimeSeconds = Math.max(maxTimeSeconds, totalTimeSeconds);
-                }
-                
-                // Второй проход: выбираем лучший заказ по комбинированному критерию
-                for (int i = 0; i < availableOrders.size(); i++) {
-                    PendingOrder order = availableOrders.get(i);
-                    
-                    // Проверяем грузоподъёмность
-                    if (currentLoad + order.totalWeight > truck.getCapacity()) {
-                        continue;
-                    }
-                    
-                    // Рассчитываем расстояние и стоимость
-                    double distance = DistanceCalculator.calculateDistance(
-                            routeX, routeY, order.store.getX(), order.store.getY());
-                    
-                    // Ищем ближайший следующий заказ для цепочки (без возврата на базу)
-                    double distanceFromStore = Double.MAX_VALUE;
-                    for (PendingOrder nextOrder : availableOrders) {
-                        if (nextOrder == order) continue;
-                        if (currentLoad + order.totalWeight + nextOrder.totalWeight > truck.getCapacity()) continue;
-                        
-                        double distToNext = DistanceCalculator.calculateDistance(
-                                order.store.getX(), order.store.getY(), 
-                                nextOrder.store.getX(), nextOrder.store.getY()
-                        );
-                        if (distToNext < distanceFromStore) {
-                            distanceFromStore = distToNext;
-                        }
-                    }
-                    
-                    // Если не нашли следующий заказ в цепочке, считаем возврат на базу
-                    if (distanceFromStore == Double.MAX_VALUE) {
-                        distanceFromStore = DistanceCalculator.calculateDistance(
-                                order.store.getX(), order.store.getY(), 
-                                truck.getStartX(), truck.getStartY()
-                        );
-                    }
-                    
-                    double cost = DistanceCalculator.calculateCostWithReturn(distance, distanceFromStore, truck.getCostPerKm());
-                    
-                    // Рассчитываем время прибытия
-                    int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
-                    LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
-                    
-                    // Проверяем временное окно МАГАЗИНА
-                    if (arrivalTime.isBefore(order.store.getTimeWindowStart())) {
-                        // Приедем раньше окна - ждем до начала окна магазина
-                        long waitSeconds = java.time.Duration.between(arrivalTime, order.store.getTimeWindowStart()).getSeconds();
-                        travelTimeSeconds += waitSeconds;
-                        arrivalTime = order.store.getTimeWindowStart();
-                    } else if (arrivalTime.isAfter(order.store.getTimeWindowEnd())) {
-                        // Приедем позже окна - пропускаем этот заказ
-                        continue;
-                    }
-                    
-                    // Рассчитываем время обслуживания (разгрузка зависит от количества товаров)
-                    int serviceTimeSeconds = DistanceCalculator.calculateServiceTime(order.totalQuantity);
-                    LocalTime departureTime = arrivalTime.plusSeconds(serviceTimeSeconds);
-                    
-                    // Проверяем, что обслуживание завершится до конца окна магазина
-                    if (departureTime.isAfter(order.store.getTimeWindowEnd())) {
-                        continue; // Не вписывается в окно магазина
-                    }
-                    
-                    // Проверяем, не выходим ли за окно доступности грузовика
-                    if (departureTime.isAfter(truck.getAvailabilityEnd())) {
-                        continue;
-                    }
-                    
-                    // Учитываем время разгрузки при расчете общего времени для нормализации
-                    long totalTimeSeconds = travelTimeSeconds + serviceTimeSeconds;
-                    
-                    // Нормализуем значения (избегаем деления на ноль)
-                    double normalizedCost = maxCost > 0 ? cost / maxCost : 0;
-                    double normalizedTime = maxTimeSeconds > 0 ? (double)totalTimeSeconds / maxTimeSeconds : 0;
-                    
-                    // Комбинированный score: меньше = лучше
-                    // Время доставки домножается на коэффициент для увеличения веса
-                    double score = COST_WEIGHT * normalizedCost + TIME_WEIGHT * normalizedTime * TIME_MULTIPLIER;
-                    
-                    if (score < bestScore) {
-                        bestScore = score;
-                        bestOrder = order;
-                        bestIndex = i;
-                    }
-                }
-                
-                if (bestOrder == null) {
-                    break; // Нет доступных заказов
-                }
-                
-                // Добавляем в маршрут
-                route.add(bestOrder);
-                currentLoad += bestOrder.totalWeight;
-                
-                // Обновляем позицию и время (цепочка заказов без возврата на базу)
-                double distance = DistanceCalculator.calculateDistance(
-                        routeX, routeY, bestOrder.store.getX(), bestOrder.store.getY());
-                int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
-                LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
-                // Учитываем окно магазина
-                if (arrivalTime.isBefore(bestOrder.store.getTimeWindowStart())) {
-                    arrivalTime = bestOrder.store.getTimeWindowStart();
-                } else if (arrivalTime.isAfter(bestOrder.store.getTimeWindowEnd())) {
-                    // Это не должно произойти, так как мы уже проверили выше, но на всякий случай
-                    arrivalTime = bestOrder.store.getTimeWindowStart();
-                }
-                int serviceTimeSeconds = DistanceCalculator.calculateServiceTime(bestOrder.totalQuantity);
-                LocalTime departureTime = arrivalTime.plusSeconds(serviceTimeSeconds);
-                // Убеждаемся, что не выходим за окно магазина
-                if (departureTime.isAfter(bestOrder.store.getTimeWindowEnd())) {
-                    departureTime = bestOrder.store.getTimeWindowEnd();
-                }
-                currentTime = departureTime;
-                routeX = bestOrder.store.getX();
-                routeY = bestOrder.store.getY();
-                
-                System.out.println("[" + getLocalName() + "] 📦 Добавлен в цепочку маршрута: " + bestOrder.storeId + 
-                        " (прибытие: " + arrivalTime + ", отправление: " + departureTime + 
-                        ", текущая загрузка: " + currentLoad + "/" + truck.getCapacity() + ")");
-                
-                // Удаляем из доступных
-                availableOrders.remove(bestIndex);
-            }
+            List<PendingOrder> route = TruckOrderPlanner.plan(truck, routeX, routeY, currentTime, currentLoad, availableOrders,
+                    (order, arrivalTime, departureTime, load) ->
+                            System.out.println("[" + getLocalName() + "] 📦 Добавлен в цепочку маршрута: " + order.storeId +
+                                    " (прибытие: " + arrivalTime + ", отправление: " + departureTime +
+                                    ", текущая загрузка: " + load + "/" + truck.getCapacity() + ")"),
+                    distances);
             
             // Удаляем заказы из основной очереди
             synchronized (pendingOrders) {
@@ -973,8 +872,7 @@ public class TruckAgent extends Agent {
             for (PendingOrder order : route) {
                 
                 // Рассчитываем расстояние от предыдущей позиции (база или предыдущий магазин)
-                double distance = DistanceCalculator.calculateDistance(
-                        prevX, prevY, order.store.getX(), order.store.getY());
+                double distance = distanceToStore(prevX, prevY, order.store);
                 
                 // Рассчитываем время в пути
                 int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
@@ -1071,7 +969,7 @@ public class TruckAgent extends Agent {
             if (!executedOrders.isEmpty()) {
                 // currentTime здесь - это время отправления из последнего магазина (departureFromStore)
                 // Рассчитываем расстояние от последнего магазина до базы
-                double distanceToDepot = DistanceCalculator.calculateDistance(
+                double distanceToDepot = distances.distance(
                         routeX, routeY, truck.getStartX(), truck.getStartY());
                 // Время в пути от магазина до базы (должно быть таким же, как от базы до магазина)
                 int returnTimeSeconds = DistanceCalculator.calculateTravelTime(distanceToDepot);
@@ -8,6 +8,9 @@ import jade.wrapper.AgentController;
 import agents.*;
 import model.*;
 import io.DataLoader;
+import planning.CostWeights;
+import planning.MatrixDistanceProvider;
+import util.DistanceProviders;
 
 import java.io.IOException;
 import java.util.*;
@@ -21,6 +24,8 @@ import java.util.*;
  * 
  * Пример:
  *   java -cp target/jade-delivery-system.jar client.ClientLauncher 192.168.1.100 1099 Client2
+ * Источник расстояний и каталог матриц задаются так же, как на сервере:
+ * -Ddelivery.distance=road[:файл], -Ddelivery.matrixDir=каталог, -Ddelivery.costWeight=0..1
  */
 public class ClientLauncher {
 
@@ -55,6 +60,9 @@ public class ClientLauncher {
             clientName = args[2];
         }
 
+        // Неверный вес стоимости - ошибка запуска, а не сбой при создании первого агента магазина
+        CostWeights.current(0);
+
         System.out.println("=== Запуск клиентской части JADE ===");
         System.out.println("Подключение к серверу: " + serverHost + ":" + serverPort);
         System.out.println("Имя контейнера: " + clientName);
@@ -83,6 +91,10 @@ public class ClientLauncher {
             // Потребности магазинов: на каждый магазин может быть несколько товаров
             Map<String, List<DeliveryRequest>> demands = loadDemands(products);
             System.out.println("✓ Данные загружены");
+            // Грузовики нужны для общей матрицы и для отсева грузовиков в агентах магазинов
+            List<Truck> trucks = DataLoader.loadTrucks("data/trucks.csv");
+            MatrixDistanceProvider.install(stores, trucks);
+            System.out.println("  - Расстояния: " + DistanceProviders.current());
 
             // КЛИЕНТ создает агентов магазинов: один агент на магазин со всеми потребностями
             System.out.println("\nСоздание магазинов на клиенте (один агент на магазин со всеми потребностями)...");
@@ -99,7 +111,7 @@ public class ClientLauncher {
                     continue;
                 }
                 // Создаём один агент на магазин со всеми его потребностями
-                Object[] args_store = new Object[]{store, storeDemands};
+                Object[] args_store = new Object[]{store, storeDemands, trucks};
                 String agentName = "store_" + storeId;
                 AgentController storeController = remoteContainer.createNewAgent(
                     agentName,
@@ -0,0 +1,205 @@
+package io;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Генератор больших тестовых задач в форматах DataLoader
+ * Пишет products.csv, stores.csv (по строке на каждую позицию заказа, с колонками product_id и demand)
+ * и trucks.csv. Результат полностью определяется параметрами и seed.
+ * Грузовики распределяются по складам (точкам старта) по очереди: один склад - в центре области,
+ * несколько - равномерно по окружности радиусом в четверть стороны вокруг центра.
+ *
+ * Использование:
+ *   java -cp target/jade-delivery-system.jar io.InstanceGenerator dir stores
+ *        [linesPerStore] [trucks] [random|clustered|mixed] [tight|wide] [seed] [depots]
+ */
+public class InstanceGenerator {
+
+    /**
+     * Расположение магазинов
+     */
+    public enum Geography {
+        RANDOM,     // равномерно по квадрату
+        CLUSTERED,  // группами вокруг случайных центров
+        MIXED       // половина равномерно, половина группами
+    }
+
+    /**
+     * Ширина временных окон магазинов
+     */
+    public enum Windows {
+        TIGHT,  // 1-2 часа, начало с 08:00 до 15:30
+        WIDE    // 4-8 часов, начало с 08:00 до 11:30
+    }
+
+    public static final int PRODUCT_COUNT = 20;
+    public static final long DEFAULT_SEED = 42;
+    public static final int DEFAULT_DEPOTS = 1;
+
+    // Магазинов на один кластер при CLUSTERED/MIXED
+    private static final int STORES_PER_CLUSTER = 200;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Использование: InstanceGenerator dir stores [linesPerStore] [trucks] "
+                    + "[random|clustered|mixed] [tight|wide] [seed] [depots]");
+            return;
+        }
+        File dir = new File(args[0]);
+        int stores = Integer.parseInt(args[1]);
+        int linesPerStore = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int trucks = args.length > 3 ? Integer.parseInt(args[3]) : defaultTruckCount(stores);
+        Geography geography = args.length > 4 ? Geography.valueOf(args[4].toUpperCase(Locale.ROOT)) : Geography.MIXED;
+        Windows windows = args.length > 5 ? Windows.valueOf(args[5].toUpperCase(Locale.ROOT)) : Windows.WIDE;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : DEFAULT_SEED;
+        int depots = args.length > 7 ? Integer.parseInt(args[7]) : DEFAULT_DEPOTS;
+
+        long lines = generate(dir, stores, linesPerStore, trucks, geography, windows, seed, depots);
+        System.out.println("Сгенерировано в " + dir + ": магазинов " + stores + ", строк заказов " + lines
+                + ", грузовиков " + trucks + ", складов " + Math.min(depots, trucks));
+    }
+
+    /**
+     * Один грузовик на 20 магазинов, но не меньше двух
+     */
+    public static int defaultTruckCount(int stores) {
+        return Math.max(2, stores / 20);
+    }
+
+    /**
+     * Генерирует задачу с одним складом в центре области в каталог dir
+     */
+    public static long generate(File dir, int stores, int linesPerStore, int trucks,
+                                Geography geography, Windows windows, long seed) throws IOException {
+        return generate(dir, stores, linesPerStore, trucks, geography, windows, seed, DEFAULT_DEPOTS);
+    }
+
+    /**
+     * Генерирует задачу в каталог dir
+     * @param linesPerStore среднее число позиций заказа на магазин (от 1 до 2*linesPerStore-1)
+     * @param depots число складов, с которых стартуют грузовики
+     * @return число строк заказов в stores.csv
+     */
+    public static long generate(File dir, int stores, int linesPerStore, int trucks,
+                                Geography geography, Windows windows, long seed, int depots) throws IOException {
+        if (depots < 1) {
+            throw new IllegalArgumentException("Число складов должно быть положительным: " + depots);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Не удалось создать каталог " + dir);
+        }
+        Random random = new Random(seed);
+        // Площадь растёт вместе с числом магазинов, плотность точек постоянна
+        double side = 10 * Math.sqrt(stores);
+
+        double[] unitWeights = new double[PRODUCT_COUNT];
+        try (Writer out = writer(new File(dir, "products.csv"))) {
+            out.write("product_id,name,unit_weight\n");
+            for (int p = 0; p < PRODUCT_COUNT; p++) {
+                unitWeights[p] = 0.1 * (1 + random.nextInt(20));
+                out.write(String.format(Locale.ROOT, "%s,Товар %d,%.1f%n", productId(p), p + 1, unitWeights[p]));
+            }
+        }
+
+        int clusterCount = Math.max(1, stores / STORES_PER_CLUSTER);
+        double[] clusterX = new double[clusterCount];
+        double[] clusterY = new double[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            clusterX[c] = random.nextDouble() * side;
+            clusterY[c] = random.nextDouble() * side;
+        }
+        double spread = side / (4 * Math.sqrt(clusterCount));
+
+        long lines = 0;
+        int[] products = new int[PRODUCT_COUNT];
+        for (int p = 0; p < PRODUCT_COUNT; p++) {
+            products[p] = p;
+        }
+        int maxLines = Math.min(PRODUCT_COUNT, Math.max(1, 2 * linesPerStore - 1));
+        try (Writer out = writer(new File(dir, "stores.csv"))) {
+            out.write("store_id,x,y,time_window_start,time_window_end,product_id,demand\n");
+            for (int s = 0; s < stores; s++) {
+                boolean clustered = geography == Geography.CLUSTERED
+                        || (geography == Geography.MIXED && random.nextBoolean());
+                double x;
+                double y;
+                if (clustered) {
+                    int c = random.nextInt(clusterCount);
+                    x = clamp(clusterX[c] + random.nextGaussian() * spread, side);
+                    y = clamp(clusterY[c] + random.nextGaussian() * spread, side);
+                } else {
+                    x = random.nextDouble() * side;
+                    y = random.nextDouble() * side;
+                }
+
+                // Окна задаются с шагом 30 минут
+                int start;
+                int length;
+                if (windows == Windows.TIGHT) {
+                    start = 8 * 60 + 30 * random.nextInt(16);
+                    length = 60 + 30 * random.nextInt(3);
+                } else {
+                    start = 8 * 60 + 30 * random.nextInt(8);
+                    length = 240 + 30 * random.nextInt(9);
+                }
+                String prefix = String.format(Locale.ROOT, "%s,%.2f,%.2f,%s,%s,",
+                        storeId(s), x, y, time(start), time(start + length));
+
+                // Разные товары в пределах магазина: частичное перемешивание Фишера-Йейтса
+                int count = 1 + random.nextInt(maxLines);
+                for (int i = 0; i < count; i++) {
+                    int j = i + random.nextInt(PRODUCT_COUNT - i);
+                    int swap = products[i];
+                    products[i] = products[j];
+                    products[j] = swap;
+                    out.write(prefix);
+                    out.write(productId(products[i]));
+                    out.write(',');
+                    out.write(Integer.toString(1 + random.nextInt(10)));
+                    out.write('\n');
+                }
+                lines += count;
+            }
+        }
+
+        try (Writer out = writer(new File(dir, "trucks.csv"))) {
+            out.write("truck_id,capacity,cost_per_km,start_x,start_y,avail_start,avail_end\n");
+            for (int t = 0; t < trucks; t++) {
+                // Склады на окружности без случайных чисел: при одном складе задача не меняется
+                double depotX = side / 2;
+                double depotY = side / 2;
+                if (depots > 1) {
+                    double angle = 2 * Math.PI * (t % depots) / depots;
+                    depotX += side / 4 * Math.cos(angle);
+                    depotY += side / 4 * Math.sin(angle);
+                }
+                out.write(String.format(Locale.ROOT, "TRUCK_%05d,%.1f,%.1f,%.2f,%.2f,08:00,18:00%n",
+                        t + 1, 40.0 + 10 * random.nextInt(7), 9.0 + random.nextInt(7), depotX, depotY));
+            }
+        }
+        return lines;
+    }
+
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static String storeId(int index) {
+        return String.format(Locale.ROOT, "STORE_%07d", index + 1);
+    }
+
+    private static String productId(int index) {
+        return String.format(Locale.ROOT, "PROD_%03d", index + 1);
+    }
+
+    private static String time(int minutes) {
+        return String.format(Locale.ROOT, "%02d:%02d", minutes / 60, minutes % 60);
+    }
+
+    private static double clamp(double value, double side) {
+        return Math.max(0, Math.min(side, value));
+    }
+}
@@ -1,6 +1,8 @@
 package io;
 
 import model.DeliveryRoute;
+import planning.LowerBound;
+import planning.ParetoSweep;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
@@ -14,8 +16,95 @@ import java.util.Locale;
 public class ScheduleWriter {
 
     public static void writeScheduleToExcel(String filename, List<DeliveryRoute> routes) throws IOException {
+        writeScheduleToExcel(filename, routes, null);
+    }
+
+    /**
+     * @param bound нижние оценки плана (LowerBound.evaluate); если не null, в итоги добавляется разрыв до оптимума
+     */
+    public static void writeScheduleToExcel(String filename, List<DeliveryRoute> routes,
+                                            LowerBound.Report bound) throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        fillSchedule(workbook, workbook.createSheet("Расписание"), routes, bound);
+        save(workbook, filename);
+    }
+
+    /**
+     * Фронт Парето перебора весов (ParetoSweep): лист сводки и по листу расписания на каждый план
+     */
+    public static void writeParetoToExcel(String filename, List<ParetoSweep.Plan> plans) throws IOException {
         Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Расписание");
+        Sheet summary = workbook.createSheet("Парето");
+        CellStyle headerStyle = workbook.createCellStyle();
+        headerStyle.setFillForegroundColor(IndexedColors.LIGHT_BLUE.getIndex());
+        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        Font headerFont = workbook.createFont();
+        headerFont.setBold(true);
+        headerStyle.setFont(headerFont);
+        DataFormat dataFormat = workbook.createDataFormat();
+        CellStyle numberStyle = workbook.createCellStyle();
+        numberStyle.setDataFormat(dataFormat.getFormat("#,##0.00"));
+
+        String[] headers = {
+                "Вес стоимости",
+                "Лист",
+                "Стоимость, ₽",
+                "Пробег, км",
+                "Доставлено, шт",
+                "Ожидание магазинов, ч",
+                "Опоздания, ч",
+                "Маршрутов"
+        };
+        Row headerRow = summary.createRow(0);
+        for (int i = 0; i < headers.length; i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(headers[i]);
+            cell.setCellStyle(headerStyle);
+        }
+
+        int rowNum = 1;
+        for (ParetoSweep.Plan plan : plans) {
+            String sheetName = String.format(Locale.US, "w=%.2f", plan.getCostWeight());
+            Row row = summary.createRow(rowNum++);
+            row.createCell(0).setCellValue(plan.getCostWeight());
+            row.createCell(1).setCellValue(sheetName);
+            row.createCell(2).setCellValue(plan.getCost());
+            row.createCell(3).setCellValue(plan.getDistance());
+            row.createCell(4).setCellValue(plan.getQuantity());
+            row.createCell(5).setCellValue(plan.getWaitSeconds() / 3600.0);
+            row.createCell(6).setCellValue(plan.getLateSeconds() / 3600.0);
+            row.createCell(7).setCellValue(plan.getRoutes().size());
+            for (int col : new int[]{0, 2, 3, 5, 6}) {
+                row.getCell(col).setCellStyle(numberStyle);
+            }
+            fillSchedule(workbook, workbook.createSheet(sheetName), plan.getRoutes(), null);
+        }
+        for (int i = 0; i < headers.length; i++) {
+            summary.autoSizeColumn(i);
+        }
+        save(workbook, filename);
+    }
+
+    /**
+     * Сводка фронта Парето в CSV: одна строка на план
+     */
+    public static void writeParetoToCSV(String filename, List<ParetoSweep.Plan> plans) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(filename, false))) {
+            writer.println("cost_weight,cost_rub,distance_km,delivered_qty,wait_hours,late_hours,routes");
+            for (ParetoSweep.Plan plan : plans) {
+                writer.printf(Locale.US, "%.2f,%.2f,%.2f,%d,%.2f,%.2f,%d%n",
+                        plan.getCostWeight(), plan.getCost(), plan.getDistance(), plan.getQuantity(),
+                        plan.getWaitSeconds() / 3600.0, plan.getLateSeconds() / 3600.0, plan.getRoutes().size());
+            }
+        }
+        System.out.println("Фронт Парето сохранён в: " + new File(filename).getAbsolutePath());
+    }
+
+    /**
+     * Заполняет лист расписанием маршрутов и итогами
+     */
+    private static void fillSchedule(Workbook workbook, Sheet sheet, List<DeliveryRoute> routes,
+                                     LowerBound.Report bound) {
 
         // Стили
         CellStyle headerStyle = workbook.createCellStyle();
@@ -194,6 +283,25 @@ public class ScheduleWriter {
         servedStoresCell.setCellValue(servedStores.size());
         servedStoresCell.setCellStyle(integerStyle);
 
+        if (bound != null) {
+            Row summary6 = sheet.createRow(summaryRow + 6);
+            summary6.createCell(0).setCellValue("Нижняя оценка стоимости, ₽:");
+            Cell costBoundCell = summary6.createCell(1);
+            costBoundCell.setCellValue(bound.getCostBound());
+            costBoundCell.setCellStyle(currencyStyle);
+
+            Row summary7 = sheet.createRow(summaryRow + 7);
+            summary7.createCell(0).setCellValue("Разрыв до оптимума, %:");
+            Cell gapCell = summary7.createCell(1);
+            gapCell.setCellValue(bound.getGap() * 100);
+            gapCell.setCellStyle(numberStyle);
+        }
+    }
+
+    /**
+     * Сохраняет книгу через временный файл; если файл открыт в Excel, пишет рядом *_new.xlsx
+     */
+    private static void save(Workbook workbook, String filename) throws IOException {
         // Используем временный файл, чтобы избежать проблем с открытыми файлами
         File targetFile = new File(filename);
         File tempFile = new File(filename + ".tmp");
@@ -260,6 +368,14 @@ public class ScheduleWriter {
     }
 
     public static void writeScheduleToCSV(String filename, List<DeliveryRoute> routes) throws IOException {
+        writeScheduleToCSV(filename, routes, null);
+    }
+
+    /**
+     * @param bound нижние оценки плана (LowerBound.evaluate); если не null, в итоги добавляется разрыв до оптимума
+     */
+    public static void writeScheduleToCSV(String filename, List<DeliveryRoute> routes,
+                                          LowerBound.Report bound) throws IOException {
         // Используем временный файл, чтобы избежать проблем с открытыми файлами
         File targetFile = new File(filename);
         File tempFile = new File(filename + ".tmp");
@@ -319,6 +435,10 @@ public class ScheduleWriter {
             writer.printf(Locale.US, "# Суммарный пробег: %.2f км%n", totalDistance);
             writer.printf(Locale.US, "# Совокупная стоимость: %.2f ₽%n", totalCost);
             writer.printf("# Позиций доставлено: %d%n", totalDeliveries);
+            if (bound != null) {
+                writer.printf(Locale.US, "# Нижняя оценка стоимости: %.2f ₽%n", bound.getCostBound());
+                writer.printf(Locale.US, "# Разрыв до оптимума: %.1f%%%n", bound.getGap() * 100);
+            }
             
             // Явно вызываем flush перед закрытием
             writer.flush();
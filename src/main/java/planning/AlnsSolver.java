@@ -0,0 +1,509 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Адаптивный поиск с большой окрестностью (ALNS) с ограничением по времени
+ * Стартует с жадного плана RoutePlanningEngine и до истечения бюджета
+ * разрушает и восстанавливает решение:
+ * - удаление: случайное, самых дорогих посещений, связанных посещений (Shaw);
+ * - вставка: жадная и regret-2.
+ * Веса операторов подстраиваются по их успешности, новое решение принимается
+ * по правилу имитации отжига. Возвращается лучшее найденное решение.
+ * Поиск прекращается и при прерывании потока (см. AnytimePlanner), после IDLE_ITERATIONS
+ * итераций без нового лучшего решения (небольшие задачи сходятся за доли секунды и не ждут
+ * конца бюджета), а если задан допустимый разрыв - как только план без опозданий обслуживает
+ * все строки и его стоимость отстоит от нижней оценки (LowerBound) не больше чем на этот разрыв.
+ */
+public class AlnsSolver implements RoutePlanner {
+
+    public static final long DEFAULT_BUDGET_MILLIS = 30_000;
+
+    // Штраф за незапланированное посещение и за секунду опоздания
+    private static final double UNASSIGNED_PENALTY = 10_000;
+    private static final double TIME_WARP_PENALTY = 1.0;
+
+    // Очки операторов: новое лучшее решение, улучшение текущего, принятое ухудшение
+    private static final double SCORE_BEST = 33;
+    private static final double SCORE_BETTER = 9;
+    private static final double SCORE_ACCEPTED = 13;
+    private static final double REACTION = 0.1;
+    private static final int SEGMENT_LENGTH = 100;
+    // Итераций без нового лучшего решения до остановки
+    static final int IDLE_ITERATIONS = 5_000;
+
+    // Начальная температура: ухудшение на 5% принимается с вероятностью 50%
+    private static final double START_WORSENING = 0.05;
+    private static final double FINAL_TEMPERATURE_RATIO = 0.002;
+
+    private static final int MAX_REMOVED = 60;
+    private static final double REMOVAL_SHARE = 0.3;
+    // Степень рандомизации при выборе посещений в worst и Shaw удалении
+    private static final double RANDOMIZATION = 3;
+
+    private static final int DESTROY_RANDOM = 0;
+    private static final int DESTROY_WORST = 1;
+    private static final int DESTROY_SHAW = 2;
+    private static final int REPAIR_GREEDY = 0;
+    private static final int REPAIR_REGRET = 1;
+
+    private final long budgetMillis;
+    private final long seed;
+    private final double targetGap;
+
+    public AlnsSolver() {
+        this(DEFAULT_BUDGET_MILLIS, 42);
+    }
+
+    public AlnsSolver(long budgetMillis, long seed) {
+        this(budgetMillis, seed, 0);
+    }
+
+    /**
+     * @param targetGap допустимый разрыв до нижней оценки стоимости (0.05 = 5%), 0 - искать весь бюджет
+     */
+    public AlnsSolver(long budgetMillis, long seed, double targetGap) {
+        this.budgetMillis = budgetMillis;
+        this.seed = seed;
+        this.targetGap = targetGap;
+    }
+
+    @Override
+    public String cacheKey() {
+        return getClass().getName() + "(budget=" + budgetMillis + " мс, seed=" + seed + ", gap=" + targetGap + ")";
+    }
+
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+        Solution best = new Search(instance, new Random(seed), null, targetGap)
+                .run(initialSolution(instance), System.nanoTime() + budgetMillis * 1_000_000L);
+
+        int routeCounter = 0;
+        for (RouteState state : best.routes) {
+            if (state.size > 0) {
+                state.routeId = "ROUTE_" + (++routeCounter);
+            }
+        }
+        return instance.toRoutes(best.routes);
+    }
+
+    /**
+     * Начальное решение - жадный план с локальным поиском
+     * Грузовики без рейсов получают пустые маршруты, незапланированные строки - в unassigned.
+     */
+    static Solution initialSolution(ProblemInstance instance) {
+        DistanceMatrix matrix = instance.matrix;
+        double maxCapacity = 0;
+        for (double capacity : instance.capacity) {
+            maxCapacity = Math.max(maxCapacity, capacity);
+        }
+
+        boolean[] planned = new boolean[instance.lineCount()];
+        Solution initial = new Solution();
+        initial.routes.addAll(RoutePlanningEngine.plan(instance, RoutePlanningEngine.identityOrder(instance.truckCount()),
+                RoutePlanningEngine.COST_WEIGHT, null, planned));
+        LocalSearch.improve(initial.routes, instance);
+        Set<Truck> usedTrucks = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (RouteState state : initial.routes) {
+            usedTrucks.add(state.truck);
+        }
+        // Свободные грузовики: пустые маршруты, которые можно открыть вставкой
+        for (Truck truck : instance.trucks) {
+            if (!usedTrucks.contains(truck)) {
+                RouteState state = new RouteState(null, truck, ProblemInstance.departureTime(truck), matrix);
+                state.update(instance);
+                initial.routes.add(state);
+            }
+        }
+        RouteState.chainTrips(initial.routes, instance);
+        // Незапланированные жадным алгоритмом заказы
+        initial.unassigned.addAll(Visit.split(instance, maxCapacity, planned));
+        initial.evaluate(matrix);
+        return initial;
+    }
+
+    /**
+     * Решение: маршруты и непоставленные посещения
+     * Маршруты разделяются между решениями и не изменяются после принятия;
+     * изменяемый маршрут предварительно копируется (см. Search.own).
+     */
+    static class Solution {
+        final List<RouteState> routes = new ArrayList<>();
+        final List<Visit> unassigned = new ArrayList<>();
+        double objective;
+
+        Solution copy() {
+            Solution copy = new Solution();
+            copy.routes.addAll(routes);
+            copy.unassigned.addAll(unassigned);
+            copy.objective = objective;
+            return copy;
+        }
+
+        void evaluate(DistanceMatrix matrix) {
+            double total = unassigned.size() * UNASSIGNED_PENALTY;
+            for (RouteState route : routes) {
+                total += route.cost(matrix) + route.timeWarp * TIME_WARP_PENALTY;
+            }
+            objective = total;
+        }
+    }
+
+    /**
+     * Один запуск поиска
+     */
+    static class Search {
+        private final ProblemInstance instance;
+        private final DistanceMatrix matrix;
+        private final Random random;
+
+        private final double[] destroyWeights = {1, 1, 1};
+        private final double[] repairWeights = {1, 1};
+        private final double[] destroyScores = new double[3];
+        private final double[] repairScores = new double[2];
+        private final int[] destroyUses = new int[3];
+        private final int[] repairUses = new int[2];
+
+        // Маршруты, скопированные в текущем разрушении/восстановлении
+        private final Set<RouteState> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        // Вызывается при каждом новом лучшем решении (может быть null)
+        private final Consumer<Solution> onBest;
+        // Стоимость, достаточная для остановки (0 - без досрочной остановки)
+        private final double targetCost;
+
+        Search(ProblemInstance instance, Random random, Consumer<Solution> onBest) {
+            this(instance, random, onBest, 0);
+        }
+
+        Search(ProblemInstance instance, Random random, Consumer<Solution> onBest, double targetGap) {
+            this.instance = instance;
+            this.matrix = instance.matrix;
+            this.random = random;
+            this.onBest = onBest;
+            this.targetCost = targetGap > 0 && targetGap < 1
+                    ? LowerBound.fullServiceCostBound(instance) / (1 - targetGap) : 0;
+        }
+
+        Solution run(Solution initial, long deadline) {
+            Solution current = initial;
+            Solution best = initial;
+            long startTime = System.nanoTime();
+            double startTemperature = START_WORSENING * Math.max(initial.objective, 1) / Math.log(2);
+            boolean closeEnough = closeEnough(initial);
+            int lastImprovement = 0;
+
+            for (int iteration = 1; ; iteration++) {
+                long now = System.nanoTime();
+                if (now >= deadline || Thread.currentThread().isInterrupted() || closeEnough
+                        || iteration - lastImprovement > IDLE_ITERATIONS) {
+                    break;
+                }
+                double progress = (double) (now - startTime) / Math.max(1, deadline - startTime);
+                double temperature = startTemperature * Math.pow(FINAL_TEMPERATURE_RATIO, progress);
+
+                int destroy = select(destroyWeights);
+                int repair = select(repairWeights);
+                Solution candidate = current.copy();
+                owned.clear();
+                destroy(destroy, candidate);
+                repair(repair, candidate);
+                candidate.evaluate(matrix);
+
+                double score = 0;
+                if (candidate.objective < best.objective - 1e-9) {
+                    best = candidate;
+                    current = candidate;
+                    score = SCORE_BEST;
+                    lastImprovement = iteration;
+                    if (onBest != null) {
+                        onBest.accept(best);
+                    }
+                    closeEnough = closeEnough(best);
+                } else if (candidate.objective < current.objective - 1e-9) {
+                    current = candidate;
+                    score = SCORE_BETTER;
+                } else if (random.nextDouble() < Math.exp((current.objective - candidate.objective) / temperature)) {
+                    current = candidate;
+                    score = SCORE_ACCEPTED;
+                }
+                destroyScores[destroy] += score;
+                repairScores[repair] += score;
+                destroyUses[destroy]++;
+                repairUses[repair]++;
+
+                if (iteration % SEGMENT_LENGTH == 0) {
+                    adapt(destroyWeights, destroyScores, destroyUses);
+                    adapt(repairWeights, repairScores, repairUses);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * План без опозданий и незапланированных строк уже не дальше допустимого разрыва от оценки
+         */
+        private boolean closeEnough(Solution solution) {
+            if (targetCost <= 0 || !solution.unassigned.isEmpty()) {
+                return false;
+            }
+            double cost = 0;
+            for (RouteState route : solution.routes) {
+                if (route.timeWarp > 0) {
+                    return false;
+                }
+                cost += route.cost(matrix);
+            }
+            return cost <= targetCost;
+        }
+
+        /**
+         * Выбор оператора рулеткой по весам
+         */
+        private int select(double[] weights) {
+            double total = 0;
+            for (double weight : weights) {
+                total += weight;
+            }
+            double r = random.nextDouble() * total;
+            for (int i = 0; i < weights.length; i++) {
+                r -= weights[i];
+                if (r <= 0) {
+                    return i;
+                }
+            }
+            return weights.length - 1;
+        }
+
+        private static void adapt(double[] weights, double[] scores, int[] uses) {
+            for (int i = 0; i < weights.length; i++) {
+                if (uses[i] > 0) {
+                    weights[i] = weights[i] * (1 - REACTION) + REACTION * scores[i] / uses[i];
+                    weights[i] = Math.max(weights[i], 0.01);
+                }
+                scores[i] = 0;
+                uses[i] = 0;
+            }
+        }
+
+        /**
+         * Маршрут решения с индексом r, который можно изменять (копия при первом изменении)
+         */
+        private RouteState own(Solution solution, int r) {
+            RouteState route = solution.routes.get(r);
+            if (!owned.contains(route)) {
+                route = route.copy(instance);
+                solution.routes.set(r, route);
+                owned.add(route);
+            }
+            return route;
+        }
+
+        // ---------- Удаление ----------
+
+        private void destroy(int operator, Solution solution) {
+            List<int[]> positions = new ArrayList<>();
+            for (int r = 0; r < solution.routes.size(); r++) {
+                for (int i = 0; i < solution.routes.get(r).size; i++) {
+                    positions.add(new int[]{r, i});
+                }
+            }
+            if (positions.isEmpty()) {
+                return;
+            }
+            int maxRemoved = Math.max(1, Math.min(MAX_REMOVED, (int) (positions.size() * REMOVAL_SHARE)));
+            int minRemoved = Math.max(1, maxRemoved / 4);
+            int count = minRemoved + random.nextInt(maxRemoved - minRemoved + 1);
+
+            List<int[]> removed;
+            switch (operator) {
+                case DESTROY_WORST:
+                    removed = worstRemoval(solution, positions, count);
+                    break;
+                case DESTROY_SHAW:
+                    removed = shawRemoval(solution, positions, count);
+                    break;
+                case DESTROY_RANDOM:
+                default:
+                    Collections.shuffle(positions, random);
+                    removed = positions.subList(0, count);
+                    break;
+            }
+            remove(solution, removed);
+        }
+
+        /**
+         * Посещения с наибольшей экономией при удалении (с рандомизацией)
+         */
+        private List<int[]> worstRemoval(Solution solution, List<int[]> positions, int count) {
+            double[] savings = new double[positions.size()];
+            for (int p = 0; p < positions.size(); p++) {
+                int[] position = positions.get(p);
+                RouteState route = solution.routes.get(position[0]);
+                savings[p] = -route.removalDelta(position[1], matrix);
+            }
+            Integer[] order = sortedIndices(savings, true);
+            return pickRandomized(positions, order, count);
+        }
+
+        /**
+         * Посещения, связанные со случайно выбранным: близкие по расстоянию, окну и весу
+         */
+        private List<int[]> shawRemoval(Solution solution, List<int[]> positions, int count) {
+            int[] seedPosition = positions.get(random.nextInt(positions.size()));
+            Visit seedVisit = solution.routes.get(seedPosition[0]).visits.get(seedPosition[1]);
+
+            double maxDistance = 1e-9;
+            double maxWindow = 1e-9;
+            double maxWeight = 1e-9;
+            for (int[] position : positions) {
+                Visit visit = solution.routes.get(position[0]).visits.get(position[1]);
+                maxDistance = Math.max(maxDistance, matrix.distance(seedVisit.node, visit.node));
+                maxWindow = Math.max(maxWindow, Math.abs(instance.windowStart[seedVisit.node] - instance.windowStart[visit.node]));
+                maxWeight = Math.max(maxWeight, Math.abs(seedVisit.weight - visit.weight));
+            }
+
+            double[] relatedness = new double[positions.size()];
+            for (int p = 0; p < positions.size(); p++) {
+                Visit visit = solution.routes.get(positions.get(p)[0]).visits.get(positions.get(p)[1]);
+                relatedness[p] = 9 * matrix.distance(seedVisit.node, visit.node) / maxDistance
+                        + 3 * Math.abs(instance.windowStart[seedVisit.node] - instance.windowStart[visit.node]) / maxWindow
+                        + 2 * Math.abs(seedVisit.weight - visit.weight) / maxWeight;
+            }
+            Integer[] order = sortedIndices(relatedness, false);
+            return pickRandomized(positions, order, count);
+        }
+
+        private static Integer[] sortedIndices(double[] values, boolean descending) {
+            Integer[] order = new Integer[values.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Comparator<Integer> comparator = Comparator.comparingDouble(i -> values[i]);
+            Arrays.sort(order, descending ? comparator.reversed() : comparator);
+            return order;
+        }
+
+        /**
+         * Выбирает count позиций из упорядоченного списка, смещаясь к его началу
+         */
+        private List<int[]> pickRandomized(List<int[]> positions, Integer[] order, int count) {
+            List<Integer> remaining = new ArrayList<>(Arrays.asList(order));
+            List<int[]> picked = new ArrayList<>();
+            while (picked.size() < count && !remaining.isEmpty()) {
+                int index = (int) (Math.pow(random.nextDouble(), RANDOMIZATION) * remaining.size());
+                picked.add(positions.get(remaining.remove(index)));
+            }
+            return picked;
+        }
+
+        private void remove(Solution solution, List<int[]> removed) {
+            Map<Integer, List<Visit>> byRoute = new HashMap<>();
+            for (int[] position : removed) {
+                Visit visit = solution.routes.get(position[0]).visits.get(position[1]);
+                byRoute.computeIfAbsent(position[0], key -> new ArrayList<>()).add(visit);
+            }
+            for (Map.Entry<Integer, List<Visit>> entry : byRoute.entrySet()) {
+                RouteState route = own(solution, entry.getKey());
+                Set<Visit> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+                toRemove.addAll(entry.getValue());
+                route.visits.removeIf(toRemove::contains);
+                route.update(instance);
+                solution.unassigned.addAll(entry.getValue());
+            }
+        }
+
+        // ---------- Вставка ----------
+
+        /**
+         * Вставляет непоставленные посещения, пока это возможно.
+         * Жадная вставка выбирает самую дешёвую вставку, regret-2 - посещение
+         * с наибольшей разницей между лучшим и вторым по стоимости маршрутом.
+         * Стоимости вставки кэшируются и пересчитываются только для изменённого маршрута.
+         */
+        private void repair(int operator, Solution solution) {
+            List<Visit> pending = new ArrayList<>(solution.unassigned);
+            Collections.shuffle(pending, random);
+            solution.unassigned.clear();
+
+            int routeCount = solution.routes.size();
+            double[][] costs = new double[pending.size()][routeCount];
+            int[][] positions = new int[pending.size()][routeCount];
+            int[] position = new int[1];
+            for (int v = 0; v < pending.size(); v++) {
+                for (int r = 0; r < routeCount; r++) {
+                    costs[v][r] = solution.routes.get(r).bestInsertion(pending.get(v), instance, position);
+                    positions[v][r] = position[0];
+                }
+            }
+
+            boolean[] done = new boolean[pending.size()];
+            for (int step = 0; step < pending.size(); step++) {
+                int chosenVisit = -1;
+                int chosenRoute = -1;
+                double chosenValue = Double.NEGATIVE_INFINITY;
+                for (int v = 0; v < pending.size(); v++) {
+                    if (done[v]) continue;
+                    int bestRoute = -1;
+                    double best = Double.POSITIVE_INFINITY;
+                    double second = Double.POSITIVE_INFINITY;
+                    for (int r = 0; r < routeCount; r++) {
+                        double cost = costs[v][r];
+                        if (cost < best) {
+                            second = best;
+                            best = cost;
+                            bestRoute = r;
+                        } else if (cost < second) {
+                            second = cost;
+                        }
+                    }
+                    if (bestRoute < 0) continue;
+                    double value;
+                    if (operator == REPAIR_REGRET) {
+                        // Посещение, которое можно вставить только в один маршрут, вставляем первым
+                        value = second == Double.POSITIVE_INFINITY ? Double.MAX_VALUE - best : second - best;
+                    } else {
+                        value = -best;
+                    }
+                    if (value > chosenValue) {
+                        chosenValue = value;
+                        chosenVisit = v;
+                        chosenRoute = bestRoute;
+                    }
+                }
+                if (chosenVisit < 0) {
+                    break;  // Оставшиеся посещения никуда не помещаются
+                }
+
+                RouteState route = own(solution, chosenRoute);
+                route.visits.add(positions[chosenVisit][chosenRoute], pending.get(chosenVisit));
+                route.update(instance);
+                done[chosenVisit] = true;
+
+                for (int v = 0; v < pending.size(); v++) {
+                    if (done[v]) continue;
+                    costs[v][chosenRoute] = route.bestInsertion(pending.get(v), instance, position);
+                    positions[v][chosenRoute] = position[0];
+                }
+            }
+
+            for (int v = 0; v < pending.size(); v++) {
+                if (!done[v]) {
+                    solution.unassigned.add(pending.get(v));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Планирование "в любой момент": ALNS в фоновом потоке с доступом к лучшему плану
+ * start() сразу возвращает PlanningHandle. Первым лучшим планом становится жадный план
+ * с локальным поиском, дальше слушатель получает уведомление о каждом улучшении.
+ * Поиск идёт до истечения бюджета, до PlanningHandle.cancel(), до AlnsSolver.IDLE_ITERATIONS
+ * итераций без улучшения или, если задан допустимый разрыв, до плана, достаточно близкого
+ * к нижней оценке стоимости (см. AlnsSolver).
+ *
+ * Пример: начать загрузку через 2 секунды, не останавливая оптимизацию
+ *   PlanningHandle handle = new AnytimePlanner().start(trucks, stores, products, demands, listener);
+ *   Thread.sleep(2000);
+ *   List<DeliveryRoute> plan = handle.getBestRoutes();
+ */
+public class AnytimePlanner implements RoutePlanner {
+
+    private final long budgetMillis;
+    private final long seed;
+    private final double targetGap;
+
+    public AnytimePlanner() {
+        this(AlnsSolver.DEFAULT_BUDGET_MILLIS, 42);
+    }
+
+    public AnytimePlanner(long budgetMillis, long seed) {
+        this(budgetMillis, seed, 0);
+    }
+
+    /**
+     * @param targetGap допустимый разрыв до нижней оценки стоимости (0.05 = 5%), 0 - искать весь бюджет
+     */
+    public AnytimePlanner(long budgetMillis, long seed, double targetGap) {
+        this.budgetMillis = budgetMillis;
+        this.seed = seed;
+        this.targetGap = targetGap;
+    }
+
+    /**
+     * Запускает планирование в фоне
+     * @param listener получает уведомления о новых лучших планах (может быть null)
+     */
+    public PlanningHandle start(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands,
+            PlanningListener listener) {
+
+        PlanningHandle handle = new PlanningHandle();
+        handle.start(() -> {
+            try {
+                long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+                ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+                AlnsSolver.Solution initial = AlnsSolver.initialSolution(instance);
+                handle.publish(instance, initial.routes, listener);
+
+                AlnsSolver.Solution best = new AlnsSolver.Search(instance, new Random(seed),
+                        solution -> handle.publish(instance, solution.routes, listener), targetGap).run(initial, deadline);
+
+                List<DeliveryRoute> routes = instance.snapshot(best.routes);
+                instance.markDelivered(best.routes);
+                handle.complete(routes);
+            } catch (Throwable e) {
+                handle.fail(e);
+            }
+        });
+        return handle;
+    }
+
+    @Override
+    public String cacheKey() {
+        return getClass().getName() + "(budget=" + budgetMillis + " мс, seed=" + seed + ", gap=" + targetGap + ")";
+    }
+
+    /**
+     * Синхронный вариант: ждёт окончания поиска
+     */
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+        PlanningHandle handle = start(trucks, storesMap, productsMap, demands, null);
+        try {
+            return handle.await();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Планирование прервано", e);
+        }
+    }
+}
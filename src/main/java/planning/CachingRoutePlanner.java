@@ -0,0 +1,136 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Стратегия планирования с дисковым кэшем результатов (PlanCache)
+ * Если входные данные не изменились, план читается из кэша без пересчёта.
+ * При тёплом старте, если изменилось не больше WARM_START_FRACTION строк заказов, берётся ближайший
+ * прошлый план: из него убираются исчезнувшие строки, новые вставляются IncrementalInserter,
+ * после чего маршруты улучшаются локальным поиском.
+ * Как и другие стратегии, помечает доставленные заказы статусом DELIVERED.
+ */
+public class CachingRoutePlanner implements RoutePlanner {
+
+    // Доля изменённых строк заказов, при которой ещё выгоден тёплый старт
+    static final double WARM_START_FRACTION = 0.05;
+
+    private final RoutePlanner delegate;
+    private final String plannerName;
+    private final PlanCache cache;
+    private final boolean warmStart;
+
+    public CachingRoutePlanner(RoutePlanner delegate) {
+        this(delegate, new PlanCache(new File("output", "plan-cache")), true);
+    }
+
+    public CachingRoutePlanner(RoutePlanner delegate, PlanCache cache, boolean warmStart) {
+        this.delegate = delegate;
+        this.plannerName = delegate.cacheKey();
+        this.cache = cache;
+        this.warmStart = warmStart;
+    }
+
+    @Override
+    public String cacheKey() {
+        return plannerName;
+    }
+
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+
+        PlanCache.Fingerprint fingerprint = PlanCache.fingerprint(plannerName, trucks, storesMap, productsMap, demands);
+        List<DeliveryRoute> cached = cache.get(fingerprint);
+        if (cached != null) {
+            System.out.println("Кэш планов: план взят из кэша (" + fingerprint.getKey().substring(0, 12) + ")");
+            markDelivered(cached, demands);
+            return cached;
+        }
+
+        List<DeliveryRoute> routes = null;
+        if (warmStart) {
+            int maxChanged = (int) (fingerprint.lines.length * WARM_START_FRACTION);
+            PlanCache.Match match = cache.closest(fingerprint, maxChanged);
+            if (match != null) {
+                System.out.println("Кэш планов: тёплый старт, изменено строк заказов: " + match.changedLines);
+                routes = warmStart(match.routes, trucks, storesMap, demands);
+            }
+        }
+        if (routes == null) {
+            routes = delegate.planRoutes(trucks, storesMap, productsMap, demands);
+        }
+        cache.put(fingerprint, routes);
+        return routes;
+    }
+
+    /**
+     * Достраивает прошлый план до текущих заказов
+     */
+    private static List<DeliveryRoute> warmStart(List<DeliveryRoute> previous, List<Truck> trucks,
+                                                 Map<String, Store> storesMap,
+                                                 Map<String, List<DeliveryRequest>> demands) {
+        // Позиции плана, которым нашлись заказы; остальные позиции убираются
+        Set<DeliveryRequest> matched = markDelivered(previous, demands);
+        List<DeliveryRoute> routes = new ArrayList<>();
+        for (DeliveryRoute route : previous) {
+            route.getStops().removeIf(stop -> stop.getItems().isEmpty());
+            if (!route.getStops().isEmpty()) {
+                routes.add(route);
+            }
+        }
+
+        IncrementalInserter inserter = new IncrementalInserter(trucks, storesMap);
+        for (List<DeliveryRequest> requests : new TreeMap<>(demands).values()) {
+            for (DeliveryRequest request : requests) {
+                if (!matched.contains(request)) {
+                    inserter.insert(request, routes);
+                }
+            }
+        }
+        return LocalSearch.improve(routes, trucks, storesMap).getRoutes();
+    }
+
+    /**
+     * Сопоставляет позиции плана заказам (магазин, товар, количество, вес) и помечает их доставленными
+     * Позиции без подходящего заказа удаляются из остановок.
+     * @return сопоставленные заказы
+     */
+    private static Set<DeliveryRequest> markDelivered(List<DeliveryRoute> routes,
+                                                      Map<String, List<DeliveryRequest>> demands) {
+        Map<Long, Deque<DeliveryRequest>> byLine = new HashMap<>();
+        for (List<DeliveryRequest> requests : demands.values()) {
+            for (DeliveryRequest request : requests) {
+                byLine.computeIfAbsent(PlanCache.lineHash(request.getStoreId(), request.getProductId(),
+                        request.getQuantity(), request.getTotalWeight()), key -> new ArrayDeque<>()).add(request);
+            }
+        }
+        Set<DeliveryRequest> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DeliveryRoute route : routes) {
+            for (DeliveryRoute.RouteStop stop : route.getStops()) {
+                stop.getItems().removeIf(item -> {
+                    Deque<DeliveryRequest> candidates = byLine.get(PlanCache.lineHash(
+                            stop.getStoreId(), item.getProductId(), item.getQuantity(), item.getWeight()));
+                    DeliveryRequest request = candidates != null ? candidates.poll() : null;
+                    if (request == null) {
+                        return true;
+                    }
+                    request.setStatus(DeliveryRequest.DeliveryStatus.DELIVERED);
+                    matched.add(request);
+                    return false;
+                });
+            }
+        }
+        return matched;
+    }
+}
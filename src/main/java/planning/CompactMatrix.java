@@ -0,0 +1,73 @@
+package planning;
+
+import util.DistanceCalculator;
+import util.DistanceProvider;
+
+import java.util.stream.IntStream;
+
+/**
+ * Компактное хранение матрицы для больших задач (режим DistanceMatrix.Layout.COMPACT)
+ * Расстояние - float (4 байта вместо 8), время в пути - беззнаковые 16 бит секунд (char, до 65535 с,
+ * около 18 ч; большее значение насыщается). Для симметричного источника хранится только верхний
+ * треугольник без диагонали: строка i содержит расстояния до узлов i+1..size-1. Вместо 12 байт
+ * на пару полной матрицы - 6 байт, в треугольном виде - 3. Строки - отдельные массивы, поэтому
+ * число ячеек не ограничено 2^31, а короткие методы доступа встраиваются в циклы планировщика.
+ */
+final class CompactMatrix {
+
+    private static final int MAX_TRAVEL_TIME = Character.MAX_VALUE;
+
+    private final boolean triangular;
+    private final float[][] distances;
+    private final char[][] travelTimes;
+
+    private CompactMatrix(boolean triangular, float[][] distances, char[][] travelTimes) {
+        this.triangular = triangular;
+        this.distances = distances;
+        this.travelTimes = travelTimes;
+    }
+
+    /**
+     * Строки считаются параллельно: источники расстояний потокобезопасны
+     */
+    static CompactMatrix build(double[] xs, double[] ys, DistanceProvider provider, boolean triangular) {
+        int size = xs.length;
+        float[][] distances = new float[size][];
+        char[][] travelTimes = new char[size][];
+        ThreadLocal<double[]> rows = ThreadLocal.withInitial(() -> new double[size]);
+        IntStream.range(0, size).parallel().forEach(i -> {
+            double[] row = rows.get();
+            provider.distancesFrom(xs[i], ys[i], xs, ys, row);
+            int from = triangular ? i + 1 : 0;
+            float[] distanceRow = new float[size - from];
+            char[] timeRow = new char[size - from];
+            for (int j = from; j < size; j++) {
+                distanceRow[j - from] = (float) row[j];
+                timeRow[j - from] = (char) Math.min(DistanceCalculator.calculateTravelTime(row[j]), MAX_TRAVEL_TIME);
+            }
+            distances[i] = distanceRow;
+            travelTimes[i] = timeRow;
+        });
+        return new CompactMatrix(triangular, distances, travelTimes);
+    }
+
+    double distance(int from, int to) {
+        if (!triangular) {
+            return distances[from][to];
+        }
+        if (from < to) {
+            return distances[from][to - from - 1];
+        }
+        return from > to ? distances[to][from - to - 1] : 0;
+    }
+
+    int travelTime(int from, int to) {
+        if (!triangular) {
+            return travelTimes[from][to];
+        }
+        if (from < to) {
+            return travelTimes[from][to - from - 1];
+        }
+        return from > to ? travelTimes[to][from - to - 1] : 0;
+    }
+}
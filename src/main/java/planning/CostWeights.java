@@ -0,0 +1,43 @@
+package planning;
+
+/**
+ * Вес стоимости в оценке маршрутов и заказов (вес времени = 1 - вес стоимости) на весь запуск
+ * Задаётся системным свойством delivery.costWeight (число от 0 до 1, например вес плана,
+ * выбранного по фронту ParetoSweep) и действует одинаково в центральном планировщике
+ * (RoutePlanningEngine), агентах магазинов и грузовиков (TruckOrderPlanner). Без настройки каждый
+ * использует свой вес по умолчанию.
+ */
+public final class CostWeights {
+
+    public static final String PROPERTY = "delivery.costWeight";
+
+    private CostWeights() {
+    }
+
+    /**
+     * Вес по настройке PROPERTY или defaultWeight, если она не задана
+     */
+    public static double current(double defaultWeight) {
+        return fromSetting(System.getProperty(PROPERTY), defaultWeight);
+    }
+
+    /**
+     * Вес по значению настройки; null или пустая строка - defaultWeight
+     */
+    public static double fromSetting(String setting, double defaultWeight) {
+        String value = setting != null ? setting.trim() : "";
+        if (value.isEmpty()) {
+            return defaultWeight;
+        }
+        double weight;
+        try {
+            weight = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Вес стоимости не число: " + PROPERTY + "=" + setting, e);
+        }
+        if (!(weight >= 0 && weight <= 1)) {
+            throw new IllegalArgumentException("Вес стоимости вне [0, 1]: " + PROPERTY + "=" + setting);
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,535 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Планирование с декомпозицией "сначала кластеры, потом маршруты"
+ * Магазины делятся k-means по координатам и середине временного окна, грузовики распределяются
+ * по кластерам пропорционально весу спроса (ближайшие к центру кластера склады - первыми).
+ * Каждый кластер решается независимо на ForkJoinPool жадным алгоритмом и локальным поиском.
+ * Затем границы исправляются локальным поиском по парам соседних кластеров (переносы и обмены
+ * между их маршрутами), а оставшиеся заказы вставляются в самое дешёвое место любого маршрута.
+ * Все кластеры работают с одной скомпилированной задачей: строки чужих кластеров заранее
+ * отмечены как запланированные.
+ */
+public class DecompositionPlanner implements RoutePlanner {
+
+    // Целевое число магазинов в кластере; локальный поиск внутри кластера растёт квадратично
+    static final int CLUSTER_SIZE = 250;
+    // С каким числом ближайших кластеров каждый кластер проходит исправление границ
+    private static final int NEIGHBOUR_COUNT = 2;
+    // Вес середины окна относительно координат при кластеризации
+    private static final double WINDOW_WEIGHT = 0.5;
+    private static final int MAX_KMEANS_ITERATIONS = 20;
+
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    public DecompositionPlanner() {
+        this(42, ForkJoinPool.commonPool());
+    }
+
+    public DecompositionPlanner(long seed, ForkJoinPool pool) {
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    @Override
+    public String cacheKey() {
+        return getClass().getName() + "(seed=" + seed + ")";
+    }
+
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+        return instance.toRoutes(plan(instance));
+    }
+
+    List<RouteState> plan(ProblemInstance instance) {
+        Clustering clustering = cluster(instance, seed);
+        if (clustering.count == 0 || instance.truckCount() == 0) {
+            return new ArrayList<>();
+        }
+        return solve(instance, clustering, assignTrucks(instance, clustering,
+                RoutePlanningEngine.identityOrder(instance.truckCount())));
+    }
+
+    /**
+     * Решает кластеры параллельно, исправляет границы соседних кластеров и вставляет оставшиеся строки
+     * @param clusterTrucks индексы грузовиков каждого кластера (не пересекаются)
+     */
+    List<RouteState> solve(ProblemInstance instance, Clustering clustering, int[][] clusterTrucks) {
+        int clusterCount = clustering.count;
+
+        // Кластеры решаются параллельно; у каждого свой массив запланированных строк
+        boolean[][] planned = new boolean[clusterCount][];
+        List<Callable<List<RouteState>>> tasks = new ArrayList<>();
+        for (int c = 0; c < clusterCount; c++) {
+            final int cluster = c;
+            planned[c] = new boolean[instance.lineCount()];
+            for (int node = 0; node < instance.matrix.storeCount(); node++) {
+                if (clustering.of[node] != cluster) {
+                    Arrays.fill(planned[c], instance.lineStart[node], instance.lineStart[node + 1], true);
+                }
+            }
+            tasks.add(() -> {
+                List<RouteState> routes = RoutePlanningEngine.plan(instance, clusterTrucks[cluster],
+                        RoutePlanningEngine.COST_WEIGHT, null, planned[cluster]);
+                LocalSearch.improve(routes, instance);
+                return routes;
+            });
+        }
+        List<List<RouteState>> clusterRoutes = invokeAll(tasks);
+
+        repairBoundaries(instance, clustering, clusterRoutes);
+
+        List<RouteState> routes = new ArrayList<>();
+        for (List<RouteState> list : clusterRoutes) {
+            for (RouteState route : list) {
+                if (route.size > 0) {
+                    routes.add(route);
+                }
+            }
+        }
+
+        // Строки, которые не взяли грузовики своего кластера, пробуем вставить в любой маршрут
+        boolean[] plannedLines = new boolean[instance.lineCount()];
+        for (int node = 0; node < instance.matrix.storeCount(); node++) {
+            int cluster = clustering.of[node];
+            for (int line = instance.lineStart[node]; line < instance.lineStart[node + 1]; line++) {
+                plannedLines[line] = cluster < 0 || planned[cluster][line];
+            }
+        }
+        insertRemaining(instance, routes, plannedLines);
+
+        int routeCounter = 0;
+        for (RouteState route : routes) {
+            route.routeId = "ROUTE_" + (++routeCounter);
+        }
+        return routes;
+    }
+
+    /**
+     * Исправление границ: локальный поиск по маршрутам пар соседних кластеров
+     * Пары разбиваются на раунды без общих кластеров; пары одного раунда идут параллельно.
+     */
+    private void repairBoundaries(ProblemInstance instance, Clustering clustering, List<List<RouteState>> clusterRoutes) {
+        List<int[]> rounds = new ArrayList<>();
+        List<List<Callable<List<RouteState>>>> roundTasks = new ArrayList<>();
+        for (int[] pair : clustering.neighbourPairs(NEIGHBOUR_COUNT)) {
+            int round = 0;
+            while (round < rounds.size()
+                    && (rounds.get(round)[pair[0]] != 0 || rounds.get(round)[pair[1]] != 0)) {
+                round++;
+            }
+            if (round == rounds.size()) {
+                rounds.add(new int[clustering.count]);
+                roundTasks.add(new ArrayList<>());
+            }
+            rounds.get(round)[pair[0]] = 1;
+            rounds.get(round)[pair[1]] = 1;
+            roundTasks.get(round).add(() -> {
+                List<RouteState> routes = new ArrayList<>(clusterRoutes.get(pair[0]));
+                routes.addAll(clusterRoutes.get(pair[1]));
+                new LocalSearch.Search(instance, routes).run();
+                return routes;
+            });
+        }
+        for (List<Callable<List<RouteState>>> tasks : roundTasks) {
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Вставка оставшихся строк по одной, в самое дешёвое место без роста опоздания
+     * Сначала рассматриваются маршруты, которые уже заезжают в этот или соседний магазин (Neighbours),
+     * остальные - только если туда вставить не удалось.
+     */
+    private static void insertRemaining(ProblemInstance instance, List<RouteState> routes, boolean[] planned) {
+        if (routes.isEmpty()) {
+            return;
+        }
+        double maxCapacity = 0;
+        for (double capacity : instance.capacity) {
+            maxCapacity = Math.max(maxCapacity, capacity);
+        }
+        List<List<RouteState>> routesAt = new ArrayList<>();
+        for (int node = 0; node < instance.matrix.storeCount(); node++) {
+            routesAt.add(new ArrayList<>());
+        }
+        for (RouteState route : routes) {
+            for (int i = 0; i < route.size; i++) {
+                routesAt.get(route.node(i)).add(route);
+            }
+        }
+
+        Neighbours neighbours = instance.neighbours();
+        List<RouteState> candidates = new ArrayList<>();
+        Set<RouteState> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        int[] position = new int[1];
+        for (Visit visit : Visit.split(instance, maxCapacity, planned)) {
+            candidates.clear();
+            seen.clear();
+            for (int n = neighbours.start[visit.node]; n < neighbours.start[visit.node + 1]; n++) {
+                for (RouteState route : routesAt.get(neighbours.list[n])) {
+                    if (seen.add(route)) {
+                        candidates.add(route);
+                    }
+                }
+            }
+            RouteState best = bestRoute(instance, candidates, visit, position);
+            if (best == null) {
+                best = bestRoute(instance, routes, visit, position);
+            }
+            if (best != null) {
+                best.visits.add(position[0], visit);
+                best.update(instance);
+                routesAt.get(visit.node).add(best);
+            }
+        }
+    }
+
+    /**
+     * Маршрут с самой дешёвой вставкой; позиция пишется в position
+     */
+    private static RouteState bestRoute(ProblemInstance instance, Collection<RouteState> routes,
+                                        Visit visit, int[] position) {
+        RouteState best = null;
+        int bestPosition = 0;
+        double bestDelta = Double.POSITIVE_INFINITY;
+        for (RouteState route : routes) {
+            double delta = route.bestInsertion(visit, instance, position);
+            if (delta < bestDelta) {
+                bestDelta = delta;
+                best = route;
+                bestPosition = position[0];
+            }
+        }
+        position[0] = bestPosition;
+        return best;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Планирование по кластерам прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка при планировании кластера", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Распределяет грузовики trucks: каждому кластеру один, остальные пропорционально весу спроса
+     * (метод наибольших остатков). Кластеры с большим спросом выбирают первыми,
+     * из оставшихся грузовиков берутся те, чей склад ближе к центру кластера.
+     * Кластеров должно быть не больше, чем грузовиков.
+     * @return индексы грузовиков по кластерам
+     */
+    static int[][] assignTrucks(ProblemInstance instance, Clustering clustering, int[] trucks) {
+        int clusterCount = clustering.count;
+        int truckCount = trucks.length;
+        double totalWeight = 0;
+        for (double weight : clustering.weight) {
+            totalWeight += weight;
+        }
+
+        int[] quota = new int[clusterCount];
+        double[] remainder = new double[clusterCount];
+        int spare = truckCount - clusterCount;
+        int assigned = 0;
+        for (int c = 0; c < clusterCount; c++) {
+            double share = totalWeight > 0 ? spare * clustering.weight[c] / totalWeight : (double) spare / clusterCount;
+            quota[c] = 1 + (int) share;
+            remainder[c] = share - (int) share;
+            assigned += quota[c];
+        }
+        Integer[] byRemainder = clustering.sortedBy(remainder);
+        for (int i = 0; assigned < truckCount; i++) {
+            quota[byRemainder[i % clusterCount]]++;
+            assigned++;
+        }
+
+        DistanceMatrix matrix = instance.matrix;
+        boolean[] taken = new boolean[instance.truckCount()];
+        int[][] result = new int[clusterCount][];
+        for (int c : clustering.sortedBy(clustering.weight)) {
+            Integer[] byDistance = new Integer[truckCount];
+            for (int t = 0; t < truckCount; t++) {
+                byDistance[t] = trucks[t];
+            }
+            double cx = clustering.centerX[c];
+            double cy = clustering.centerY[c];
+            Arrays.sort(byDistance, Comparator.comparingDouble(t -> squaredDistance(
+                    matrix.x(instance.depot[t]), matrix.y(instance.depot[t]), cx, cy)));
+            result[c] = new int[quota[c]];
+            int count = 0;
+            for (int i = 0; i < truckCount && count < quota[c]; i++) {
+                if (!taken[byDistance[i]]) {
+                    taken[byDistance[i]] = true;
+                    result[c][count++] = byDistance[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Кластеры по CLUSTER_SIZE магазинов со спросом, не больше числа грузовиков
+     */
+    static Clustering cluster(ProblemInstance instance, long seed) {
+        int storeCount = instance.matrix.storeCount();
+        int[] points = new int[storeCount];
+        int n = 0;
+        for (int node = 0; node < storeCount; node++) {
+            if (instance.lineStart[node + 1] > instance.lineStart[node]) {
+                points[n++] = node;
+            }
+        }
+        return cluster(instance, Arrays.copyOf(points, n), clusterCount(n, instance.truckCount()), seed);
+    }
+
+    /**
+     * Число кластеров для n магазинов и truckCount грузовиков
+     */
+    static int clusterCount(int n, int truckCount) {
+        return Math.min(truckCount, (n + CLUSTER_SIZE - 1) / CLUSTER_SIZE);
+    }
+
+    /**
+     * k-means (начальные центры по k-means++) по магазинам points на k кластеров
+     * Признаки: x, y и середина временного окна, приведённая к разбросу координат с весом WINDOW_WEIGHT.
+     */
+    static Clustering cluster(ProblemInstance instance, int[] points, int k, long seed) {
+        DistanceMatrix matrix = instance.matrix;
+        int storeCount = matrix.storeCount();
+        int n = points.length;
+        int[] of = new int[storeCount];
+        Arrays.fill(of, -1);
+        if (n == 0 || k == 0) {
+            return new Clustering(0, of, new double[0], new double[0], new double[0]);
+        }
+
+        // Признаки точек; окно нормируется к среднеквадратичному разбросу координат
+        double[] fx = new double[n];
+        double[] fy = new double[n];
+        double[] ft = new double[n];
+        double meanX = 0, meanY = 0, meanT = 0;
+        for (int i = 0; i < n; i++) {
+            int node = points[i];
+            fx[i] = matrix.x(node);
+            fy[i] = matrix.y(node);
+            ft[i] = (instance.windowStart[node] + instance.windowEnd[node]) / 2.0;
+            meanX += fx[i];
+            meanY += fy[i];
+            meanT += ft[i];
+        }
+        meanX /= n;
+        meanY /= n;
+        meanT /= n;
+        double spreadXY = 0, spreadT = 0;
+        for (int i = 0; i < n; i++) {
+            spreadXY += (fx[i] - meanX) * (fx[i] - meanX) + (fy[i] - meanY) * (fy[i] - meanY);
+            spreadT += (ft[i] - meanT) * (ft[i] - meanT);
+        }
+        double scale = spreadT > 0 ? WINDOW_WEIGHT * Math.sqrt(spreadXY / 2 / spreadT) : 0;
+        for (int i = 0; i < n; i++) {
+            ft[i] = (ft[i] - meanT) * scale;
+        }
+
+        // k-means++: следующий центр выбирается с вероятностью, пропорциональной квадрату расстояния
+        Random random = new Random(seed);
+        double[] cx = new double[k];
+        double[] cy = new double[k];
+        double[] ct = new double[k];
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.MAX_VALUE);
+        int first = random.nextInt(n);
+        cx[0] = fx[first];
+        cy[0] = fy[first];
+        ct[0] = ft[first];
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                nearest[i] = Math.min(nearest[i], squaredDistance(fx[i], fy[i], ft[i], cx[c - 1], cy[c - 1], ct[c - 1]));
+                total += nearest[i];
+            }
+            double target = random.nextDouble() * total;
+            int chosen = n - 1;
+            for (int i = 0; i < n; i++) {
+                target -= nearest[i];
+                if (target <= 0) {
+                    chosen = i;
+                    break;
+                }
+            }
+            cx[c] = fx[chosen];
+            cy[c] = fy[chosen];
+            ct[c] = ft[chosen];
+        }
+
+        int[] assignment = new int[n];
+        Arrays.fill(assignment, -1);
+        double[] sumX = new double[k];
+        double[] sumY = new double[k];
+        double[] sumT = new double[k];
+        int[] size = new int[k];
+        for (int iteration = 0; iteration < MAX_KMEANS_ITERATIONS; iteration++) {
+            boolean changed = false;
+            for (int i = 0; i < n; i++) {
+                int best = 0;
+                double bestDistance = Double.MAX_VALUE;
+                for (int c = 0; c < k; c++) {
+                    double distance = squaredDistance(fx[i], fy[i], ft[i], cx[c], cy[c], ct[c]);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = c;
+                    }
+                }
+                if (assignment[i] != best) {
+                    assignment[i] = best;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+            Arrays.fill(sumX, 0);
+            Arrays.fill(sumY, 0);
+            Arrays.fill(sumT, 0);
+            Arrays.fill(size, 0);
+            for (int i = 0; i < n; i++) {
+                int c = assignment[i];
+                sumX[c] += fx[i];
+                sumY[c] += fy[i];
+                sumT[c] += ft[i];
+                size[c]++;
+            }
+            for (int c = 0; c < k; c++) {
+                // Пустой кластер сохраняет прежний центр
+                if (size[c] > 0) {
+                    cx[c] = sumX[c] / size[c];
+                    cy[c] = sumY[c] / size[c];
+                    ct[c] = sumT[c] / size[c];
+                }
+            }
+        }
+
+        // Пустые кластеры отбрасываются, номера уплотняются
+        int[] renumber = new int[k];
+        Arrays.fill(renumber, -1);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (renumber[assignment[i]] < 0) {
+                renumber[assignment[i]] = count++;
+            }
+        }
+        double[] centerX = new double[count];
+        double[] centerY = new double[count];
+        double[] weight = new double[count];
+        int[] members = new int[count];
+        for (int i = 0; i < n; i++) {
+            int c = renumber[assignment[i]];
+            of[points[i]] = c;
+            centerX[c] += fx[i];
+            centerY[c] += fy[i];
+            weight[c] += instance.demandWeight[points[i]];
+            members[c]++;
+        }
+        for (int c = 0; c < count; c++) {
+            centerX[c] /= members[c];
+            centerY[c] /= members[c];
+        }
+        return new Clustering(count, of, centerX, centerY, weight);
+    }
+
+    private static double squaredDistance(double x1, double y1, double x2, double y2) {
+        return (x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2);
+    }
+
+    private static double squaredDistance(double x1, double y1, double t1, double x2, double y2, double t2) {
+        return squaredDistance(x1, y1, x2, y2) + (t1 - t2) * (t1 - t2);
+    }
+
+    /**
+     * Разбиение магазинов на кластеры
+     */
+    static class Clustering {
+        final int count;
+        // Кластер магазина по индексу матрицы; -1 для магазинов без спроса
+        final int[] of;
+        // Центр кластера на плоскости и суммарный вес спроса
+        final double[] centerX;
+        final double[] centerY;
+        final double[] weight;
+
+        Clustering(int count, int[] of, double[] centerX, double[] centerY, double[] weight) {
+            this.count = count;
+            this.of = of;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.weight = weight;
+        }
+
+        /**
+         * Номера кластеров по убыванию значения
+         */
+        Integer[] sortedBy(double[] values) {
+            Integer[] order = new Integer[count];
+            for (int c = 0; c < count; c++) {
+                order[c] = c;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(values[b], values[a]));
+            return order;
+        }
+
+        /**
+         * Пары (a < b), где b - один из neighbours ближайших по центру кластеров a или наоборот
+         */
+        List<int[]> neighbourPairs(int neighbours) {
+            Set<Long> seen = new HashSet<>();
+            List<int[]> pairs = new ArrayList<>();
+            for (int a = 0; a < count; a++) {
+                final int from = a;
+                Integer[] byDistance = new Integer[count];
+                for (int c = 0; c < count; c++) {
+                    byDistance[c] = c;
+                }
+                Arrays.sort(byDistance, Comparator.comparingDouble(c -> squaredDistance(
+                        centerX[from], centerY[from], centerX[c], centerY[c])));
+                int taken = 0;
+                for (int i = 0; i < count && taken < neighbours; i++) {
+                    int b = byDistance[i];
+                    if (b == a) continue;
+                    taken++;
+                    int low = Math.min(a, b);
+                    int high = Math.max(a, b);
+                    if (seen.add((long) low * count + high)) {
+                        pairs.add(new int[]{low, high});
+                    }
+                }
+            }
+            return pairs;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package planning;
+
+import model.Store;
+import model.Truck;
+import util.DistanceCalculator;
+import util.DistanceProvider;
+import util.DistanceProviders;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Предрассчитанная матрица расстояний и времени в пути
+ * Строится один раз на запуск планирования. Узлы пронумерованы плотно:
+ * сначала магазины (0..storeCount-1, по возрастанию storeId), затем склады
+ * (уникальные точки старта грузовиков). Данные лежат в плоских массивах size*size
+ * или, если задан каталог DistanceMatrixFile.PROPERTY, в отображённом в память файле матрицы,
+ * общем для всех запусков и JVM. Для больших задач матрица хранится компактно (CompactMatrix);
+ * компактная матрица строится в куче и в файл не пишется.
+ */
+public class DistanceMatrix {
+
+    // Хранение: full | compact | auto (по умолчанию: компактно, если узлов больше COMPACT_THRESHOLD)
+    public static final String LAYOUT_PROPERTY = "delivery.matrixLayout";
+    // 10 000 узлов - 1.2 ГБ в полном виде
+    static final int COMPACT_THRESHOLD = 10_000;
+
+    /**
+     * Способ хранения матрицы
+     */
+    public enum Layout {
+        // double и int на пару узлов (в куче или в файле)
+        FULL,
+        // float и 16 бит на пару, для симметричного источника - только верхний треугольник
+        COMPACT;
+
+        /**
+         * Способ по настройке LAYOUT_PROPERTY для матрицы на size узлов
+         */
+        static Layout forSize(int size) {
+            String value = System.getProperty(LAYOUT_PROPERTY, "auto").trim();
+            if (value.equalsIgnoreCase("full")) {
+                return FULL;
+            }
+            if (value.equalsIgnoreCase("compact")) {
+                return COMPACT;
+            }
+            if (!value.equalsIgnoreCase("auto")) {
+                throw new IllegalArgumentException("Неизвестный способ хранения матрицы " + LAYOUT_PROPERTY + "=" + value);
+            }
+            return size > COMPACT_THRESHOLD ? COMPACT : FULL;
+        }
+    }
+
+    private final int size;
+    private final int storeCount;
+    private final String[] storeIds;
+    private final Map<String, Integer> storeIndex;
+    private final Map<String, Integer> depotIndex;
+    private final double[] xs;
+    private final double[] ys;
+    // Данные в куче; null, если матрица отображена из файла
+    private final double[] distances;
+    private final int[] travelTimes;
+    // Данные в файле (DistanceMatrixFile); null для матрицы в куче
+    private final DoubleBuffer mappedDistances;
+    private final IntBuffer mappedTravelTimes;
+    // Компактные данные; null для полной матрицы
+    private final CompactMatrix compact;
+
+    private DistanceMatrix(String[] storeIds, Map<String, Integer> storeIndex, Map<String, Integer> depotIndex,
+                           double[] xs, double[] ys, double[] distances, int[] travelTimes,
+                           DoubleBuffer mappedDistances, IntBuffer mappedTravelTimes, CompactMatrix compact) {
+        this.size = xs.length;
+        this.storeCount = storeIds.length;
+        this.storeIds = storeIds;
+        this.storeIndex = storeIndex;
+        this.depotIndex = depotIndex;
+        this.xs = xs;
+        this.ys = ys;
+        this.distances = distances;
+        this.travelTimes = travelTimes;
+        this.mappedDistances = mappedDistances;
+        this.mappedTravelTimes = mappedTravelTimes;
+        this.compact = compact;
+    }
+
+    /**
+     * Строит матрицу для всех магазинов и складов (точек старта) грузовиков
+     * по текущему источнику расстояний (DistanceProviders)
+     */
+    public static DistanceMatrix build(Map<String, Store> storesMap, List<Truck> trucks) {
+        return build(storesMap, trucks, DistanceProviders.current());
+    }
+
+    public static DistanceMatrix build(Map<String, Store> storesMap, List<Truck> trucks, DistanceProvider provider) {
+        String[] storeIds = storesMap.keySet().toArray(new String[0]);
+        Arrays.sort(storeIds);
+
+        Map<String, Integer> storeIndex = new HashMap<>();
+        Map<String, Integer> depotIndex = new LinkedHashMap<>();
+        List<double[]> depots = new ArrayList<>();
+        for (Truck truck : trucks) {
+            String key = depotKey(truck.getStartX(), truck.getStartY());
+            if (!depotIndex.containsKey(key)) {
+                depotIndex.put(key, storeIds.length + depots.size());
+                depots.add(new double[]{truck.getStartX(), truck.getStartY()});
+            }
+        }
+
+        int size = storeIds.length + depots.size();
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int i = 0; i < storeIds.length; i++) {
+            Store store = storesMap.get(storeIds[i]);
+            storeIndex.put(storeIds[i], i);
+            xs[i] = store.getX();
+            ys[i] = store.getY();
+        }
+        for (int d = 0; d < depots.size(); d++) {
+            xs[storeIds.length + d] = depots.get(d)[0];
+            ys[storeIds.length + d] = depots.get(d)[1];
+        }
+
+        if (Layout.forSize(size) == Layout.COMPACT) {
+            CompactMatrix compact = CompactMatrix.build(xs, ys, provider, provider.isSymmetric());
+            return new DistanceMatrix(storeIds, storeIndex, depotIndex, xs, ys, null, null, null, null, compact);
+        }
+        if ((long) size * size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Полная матрица на " + size + " узлов не помещается в массив, нужен "
+                    + LAYOUT_PROPERTY + "=compact");
+        }
+        Path directory = DistanceMatrixFile.directory();
+        if (directory != null) {
+            DistanceMatrixFile file = DistanceMatrixFile.open(directory, storeIds, xs, ys, provider);
+            return new DistanceMatrix(storeIds, storeIndex, depotIndex, xs, ys, null, null,
+                    file.distances().asDoubleBuffer(), file.travelTimes().asIntBuffer(), null);
+        }
+
+        // Строка матрицы - один запрос один-ко-многим (расстояния по дорогам могут быть несимметричны)
+        double[] distances = new double[size * size];
+        int[] travelTimes = new int[size * size];
+        double[] row = new double[size];
+        for (int i = 0; i < size; i++) {
+            provider.distancesFrom(xs[i], ys[i], xs, ys, row);
+            System.arraycopy(row, 0, distances, i * size, size);
+            for (int j = 0; j < size; j++) {
+                travelTimes[i * size + j] = DistanceCalculator.calculateTravelTime(row[j]);
+            }
+        }
+        return new DistanceMatrix(storeIds, storeIndex, depotIndex, xs, ys, distances, travelTimes, null, null, null);
+    }
+
+    /**
+     * Способ хранения, который выберет build для этих магазинов и грузовиков
+     */
+    static Layout layoutFor(Map<String, Store> storesMap, List<Truck> trucks) {
+        Set<String> depots = new HashSet<>();
+        for (Truck truck : trucks) {
+            depots.add(depotKey(truck.getStartX(), truck.getStartY()));
+        }
+        return Layout.forSize(storesMap.size() + depots.size());
+    }
+
+    private static String depotKey(double x, double y) {
+        return x + ";" + y;
+    }
+
+    public int size() { return size; }
+    public int storeCount() { return storeCount; }
+    public String storeId(int index) { return storeIds[index]; }
+    public double x(int index) { return xs[index]; }
+    public double y(int index) { return ys[index]; }
+
+    /**
+     * Индекс магазина или -1, если магазин не входит в матрицу
+     */
+    public int indexOf(String storeId) {
+        Integer index = storeIndex.get(storeId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Индекс склада (точки старта) грузовика
+     */
+    public int depotIndex(Truck truck) {
+        Integer index = depotIndex.get(depotKey(truck.getStartX(), truck.getStartY()));
+        if (index == null) {
+            throw new IllegalArgumentException("Склад грузовика не входит в матрицу: " + truck.getTruckId());
+        }
+        return index;
+    }
+
+    /**
+     * Матрица читается из отображённого файла, а не из кучи
+     */
+    public boolean isMapped() {
+        return mappedDistances != null;
+    }
+
+    public Layout layout() {
+        return compact != null ? Layout.COMPACT : Layout.FULL;
+    }
+
+    public double distance(int from, int to) {
+        if (distances != null) {
+            return distances[from * size + to];
+        }
+        return compact != null ? compact.distance(from, to) : mappedDistances.get(from * size + to);
+    }
+
+    /**
+     * Время в пути в секундах (как DistanceCalculator.calculateTravelTime)
+     */
+    public int travelTime(int from, int to) {
+        if (travelTimes != null) {
+            return travelTimes[from * size + to];
+        }
+        return compact != null ? compact.travelTime(from, to) : mappedTravelTimes.get(from * size + to);
+    }
+}
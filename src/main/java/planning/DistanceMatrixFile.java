@@ -0,0 +1,195 @@
+package planning;
+
+import util.DistanceCalculator;
+import util.DistanceProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Файл матрицы расстояний и времени в пути, общий для запусков планирования и JVM
+ * Файл пишется один раз на набор узлов и источник расстояний: имя содержит хэш идентификаторов
+ * и координат узлов и отпечатка данных источника (DistanceProvider.fingerprint), поэтому изменение магазинов или складов даёт новый файл.
+ * Формат (little-endian): заголовок HEADER_BYTES (MAGIC, VERSION, size, storeCount, хэш),
+ * затем size*size расстояний double и size*size времён в пути int по строкам.
+ * Файл отображается в память только для чтения (FileChannel.map): данные лежат вне кучи,
+ * страницы разделяются всеми процессами машины через кэш ОС, а внутри JVM одно отображение
+ * на хэш используется всеми матрицами и агентами.
+ * Каталог задаётся системным свойством PROPERTY; без него матрица строится в куче, как раньше.
+ */
+public final class DistanceMatrixFile {
+
+    public static final String PROPERTY = "delivery.matrixDir";
+
+    private static final int MAGIC = 0x444D5458; // "DMTX"
+    // 2: источник входит в хэш отпечатком данных (DistanceProvider.fingerprint), а не описанием
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    // Одно отображение - не больше 2 ГБ
+    private static final long MAX_SECTION_BYTES = Integer.MAX_VALUE;
+
+    // Открытые файлы по хэшу
+    private static final Map<Long, DistanceMatrixFile> OPENED = new ConcurrentHashMap<>();
+
+    private final ByteBuffer distances;
+    private final ByteBuffer travelTimes;
+
+    private DistanceMatrixFile(ByteBuffer distances, ByteBuffer travelTimes) {
+        this.distances = distances;
+        this.travelTimes = travelTimes;
+    }
+
+    ByteBuffer distances() { return distances; }
+    ByteBuffer travelTimes() { return travelTimes; }
+
+    /**
+     * Каталог файлов матриц или null, если хранение в файлах не включено
+     */
+    static Path directory() {
+        String value = System.getProperty(PROPERTY);
+        return value != null && !value.trim().isEmpty() ? Paths.get(value.trim()) : null;
+    }
+
+    /**
+     * Открывает файл матрицы для узлов (xs, ys); если файла нет или он не подходит - считает и пишет его
+     */
+    static DistanceMatrixFile open(Path directory, String[] storeIds, double[] xs, double[] ys,
+                                   DistanceProvider provider) {
+        long hash = hash(storeIds, xs, ys, provider);
+        return OPENED.computeIfAbsent(hash, h -> {
+            Path path = directory.resolve(String.format("matrix-%016x.bin", h));
+            try {
+                DistanceMatrixFile file = map(path, xs.length, storeIds.length, h);
+                if (file == null) {
+                    write(directory, path, storeIds.length, h, xs, ys, provider);
+                    file = map(path, xs.length, storeIds.length, h);
+                    if (file == null) {
+                        throw new IllegalStateException("Файл матрицы повреждён после записи: " + path);
+                    }
+                }
+                return file;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка файла матрицы " + path, e);
+            }
+        });
+    }
+
+    /**
+     * Хэш FNV-1a идентификаторов магазинов, координат узлов и отпечатка источника расстояний
+     */
+    static long hash(String[] storeIds, double[] xs, double[] ys, DistanceProvider provider) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, VERSION);
+        hash = mix(hash, xs.length);
+        for (String storeId : storeIds) {
+            for (byte b : storeId.getBytes(StandardCharsets.UTF_8)) {
+                hash = mix(hash, b);
+            }
+            hash = mix(hash, 0);
+        }
+        for (int i = 0; i < xs.length; i++) {
+            hash = mix(hash, Double.doubleToLongBits(xs[i]));
+            hash = mix(hash, Double.doubleToLongBits(ys[i]));
+        }
+        return mix(hash, provider.fingerprint());
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Отображение существующего файла или null, если файла нет или заголовок не совпадает
+     */
+    private static DistanceMatrixFile map(Path path, int size, int storeCount, long hash) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        long cells = (long) size * size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER_BYTES + cells * (Double.BYTES + Integer.BYTES)) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != size
+                    || header.getInt() != storeCount || header.getLong() != hash) {
+                return null;
+            }
+            ByteBuffer distances = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, cells * Double.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer travelTimes = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + cells * Double.BYTES, cells * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            return new DistanceMatrixFile(distances, travelTimes);
+        }
+    }
+
+    /**
+     * Запись по строкам во временный файл и атомарное переименование: другой процесс
+     * видит либо полный файл, либо никакого
+     */
+    private static void write(Path directory, Path path, int storeCount, long hash,
+                              double[] xs, double[] ys, DistanceProvider provider) throws IOException {
+        int size = xs.length;
+        long cells = (long) size * size;
+        if (cells * Double.BYTES > MAX_SECTION_BYTES) {
+            throw new IllegalStateException("Матрица на " + size + " узлов не помещается в одно отображение файла");
+        }
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "matrix-", ".tmp");
+        long start = System.nanoTime();
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(storeCount).putLong(hash);
+                header.rewind();
+                writeFully(channel, header, 0);
+
+                double[] row = new double[size];
+                ByteBuffer distanceRow = ByteBuffer.allocate(size * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer timeRow = ByteBuffer.allocate(size * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < size; i++) {
+                    provider.distancesFrom(xs[i], ys[i], xs, ys, row);
+                    distanceRow.clear();
+                    timeRow.clear();
+                    for (int j = 0; j < size; j++) {
+                        distanceRow.putDouble(row[j]);
+                        timeRow.putInt(DistanceCalculator.calculateTravelTime(row[j]));
+                    }
+                    distanceRow.flip();
+                    timeRow.flip();
+                    writeFully(channel, distanceRow, HEADER_BYTES + (long) i * size * Double.BYTES);
+                    writeFully(channel, timeRow, HEADER_BYTES + cells * Double.BYTES + (long) i * size * Integer.BYTES);
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        System.out.println("Матрица расстояний " + path + ": узлов " + size + " ("
+                + (System.nanoTime() - start) / 1_000_000 + " мс)");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
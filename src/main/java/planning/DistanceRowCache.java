@@ -0,0 +1,228 @@
+package planning;
+
+import model.Store;
+import model.Truck;
+import util.DistanceProvider;
+
+import java.util.*;
+
+/**
+ * Ленивый кэш строк расстояний для агента грузовика
+ * Узлы пронумерованы плотно: магазины по возрастанию storeId, затем склад грузовика.
+ * Строка узла (расстояния до всех узлов) считается одним запросом один-ко-многим при первом
+ * обращении и хранится в массиве double. Строки вытесняются по LRU, когда их объём превышает
+ * бюджет в байтах (BUDGET_PROPERTY). Агенту нужны строки только текущей позиции, склада и
+ * магазинов своих маршрутов, поэтому память ограничена бюджетом при любом числе магазинов.
+ * Горячие циклы (TruckOrderPlanner) обращаются по индексам (indexOf, row); запросы по координатам
+ * находят узел в открытой хэш-таблице по битам координат без создания объектов.
+ * Точки вне узлов считаются исходным источником. Не потокобезопасен: один кэш на агента.
+ */
+public final class DistanceRowCache implements DistanceProvider {
+
+    // Бюджет строк в байтах на агента
+    public static final String BUDGET_PROPERTY = "delivery.rowCacheBytes";
+    public static final long DEFAULT_BUDGET_BYTES = 8L << 20;
+
+    private static final int NONE = -1;
+
+    private final DistanceProvider base;
+    private final double[] xs;
+    private final double[] ys;
+    private final Map<String, Integer> storeIndex = new HashMap<>();
+    // Узел по точке: открытая адресация, slots[h] - узел + 1 (0 - пусто)
+    private final int[] slots;
+    private final int maxRows;
+
+    // Строки по узлам (null - не в кэше) и двусвязный список LRU по номерам узлов
+    private final double[][] rows;
+    private final int[] newer;
+    private final int[] older;
+    private int newest = NONE;
+    private int oldest = NONE;
+    private int cachedRows;
+
+    private long hits;
+    private long misses;
+
+    public DistanceRowCache(Map<String, Store> stores, Truck truck, DistanceProvider base, long budgetBytes) {
+        String[] storeIds = stores.keySet().toArray(new String[0]);
+        Arrays.sort(storeIds);
+        int size = storeIds.length + 1;
+        this.base = base;
+        this.xs = new double[size];
+        this.ys = new double[size];
+        for (int i = 0; i < storeIds.length; i++) {
+            Store store = stores.get(storeIds[i]);
+            storeIndex.put(storeIds[i], i);
+            xs[i] = store.getX();
+            ys[i] = store.getY();
+        }
+        xs[size - 1] = truck.getStartX();
+        ys[size - 1] = truck.getStartY();
+        // Склад перекрывает магазин в той же точке: склад нужен чаще
+        this.slots = new int[Integer.highestOneBit(size) << 2];
+        for (int node = 0; node < size; node++) {
+            int slot = slot(xs[node], ys[node]);
+            slots[slot] = node + 1;
+        }
+        this.maxRows = (int) Math.max(1, Math.min(size, budgetBytes / ((long) size * Double.BYTES)));
+        this.rows = new double[size][];
+        this.newer = new int[size];
+        this.older = new int[size];
+    }
+
+    /**
+     * Кэш с бюджетом из BUDGET_PROPERTY (по умолчанию DEFAULT_BUDGET_BYTES)
+     */
+    public DistanceRowCache(Map<String, Store> stores, Truck truck, DistanceProvider base) {
+        this(stores, truck, base, Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_BYTES));
+    }
+
+    public int size() { return xs.length; }
+    public int depot() { return xs.length - 1; }
+    public long hits() { return hits; }
+    public long misses() { return misses; }
+
+    /**
+     * Индекс магазина или -1, если магазин не входит в кэш
+     */
+    public int indexOf(String storeId) {
+        Integer index = storeIndex.get(storeId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Узел в точке (x, y) или -1
+     */
+    public int nodeAt(double x, double y) {
+        return slots[slot(x, y)] - 1;
+    }
+
+    /**
+     * Слот точки: занятый этой точкой или первый свободный
+     */
+    private int slot(double x, double y) {
+        long bitsX = Double.doubleToLongBits(x);
+        long bitsY = Double.doubleToLongBits(y);
+        long hash = (bitsX * 0x9E3779B97F4A7C15L) ^ Long.rotateLeft(bitsY * 0xC2B2AE3D27D4EB4FL, 31);
+        int mask = slots.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (slots[slot] != 0) {
+            int node = slots[slot] - 1;
+            if (Double.doubleToLongBits(xs[node]) == bitsX && Double.doubleToLongBits(ys[node]) == bitsY) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Для симметричного источника берётся уже посчитанная строка любого из двух узлов
+     */
+    public double distance(int from, int to) {
+        if (rows[from] == null && rows[to] != null && base.isSymmetric()) {
+            return row(to)[from];
+        }
+        return row(from)[to];
+    }
+
+    /**
+     * Строка расстояний от узла; массив принадлежит кэшу и может быть вытеснен следующим вызовом
+     */
+    public double[] row(int node) {
+        double[] row = rows[node];
+        if (row != null) {
+            hits++;
+            if (node != newest) {
+                unlink(node);
+                pushNewest(node);
+            }
+            return row;
+        }
+        misses++;
+        if (cachedRows == maxRows) {
+            int evicted = oldest;
+            unlink(evicted);
+            row = rows[evicted];
+            rows[evicted] = null;
+            cachedRows--;
+        } else {
+            row = new double[xs.length];
+        }
+        base.distancesFrom(xs[node], ys[node], xs, ys, row);
+        rows[node] = row;
+        cachedRows++;
+        pushNewest(node);
+        return row;
+    }
+
+    private void unlink(int node) {
+        if (newer[node] != NONE) {
+            older[newer[node]] = older[node];
+        } else {
+            newest = older[node];
+        }
+        if (older[node] != NONE) {
+            newer[older[node]] = newer[node];
+        } else {
+            oldest = newer[node];
+        }
+    }
+
+    private void pushNewest(int node) {
+        newer[node] = NONE;
+        older[node] = newest;
+        if (newest != NONE) {
+            newer[newest] = node;
+        } else {
+            oldest = node;
+        }
+        newest = node;
+    }
+
+    @Override
+    public double distance(double x1, double y1, double x2, double y2) {
+        int from = nodeAt(x1, y1);
+        int to = from >= 0 ? nodeAt(x2, y2) : -1;
+        return to >= 0 ? distance(from, to) : base.distance(x1, y1, x2, y2);
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        return base.isSymmetric();
+    }
+
+    @Override
+    public long fingerprint() {
+        return base.fingerprint();
+    }
+
+    @Override
+    public void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+        int from = nodeAt(x, y);
+        if (from < 0) {
+            base.distancesFrom(x, y, xs, ys, out);
+            return;
+        }
+        double[] row = row(from);
+        for (int i = 0; i < xs.length; i++) {
+            int to = nodeAt(xs[i], ys[i]);
+            out[i] = to >= 0 ? row[to] : base.distance(x, y, xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Статистика для журнала: попадания, промахи, строки в кэше
+     */
+    public String stats() {
+        long total = hits + misses;
+        return String.format(Locale.US, "строки расстояний: попаданий %d, промахов %d (%.1f%%), в кэше %d из %d",
+                hits, misses, total > 0 ? 100.0 * hits / total : 0.0, cachedRows, maxRows);
+    }
+
+    @Override
+    public String toString() {
+        return base.toString();
+    }
+}
@@ -0,0 +1,183 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.Store;
+import model.Truck;
+import util.DistanceCalculator;
+import util.DistanceProvider;
+import util.DistanceProviders;
+
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Битовая матрица допустимых пар магазин x грузовик
+ * Пара недопустима, если грузовик, выехав со склада в начале своего окна доступности, не успевает
+ * в окно магазина, не успевает разгрузиться до конца своего окна или не может взять ни одной строки
+ * заказа магазина по грузоподъёмности. Недопустимая пара не станет допустимой ни в одном маршруте,
+ * поэтому планировщики и агенты не рассматривают её вовсе.
+ * Строка матрицы - грузовик, бит - магазин (индексы ProblemInstance или порядок списков в forAgents).
+ */
+public final class Feasibility {
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final int words;
+    private final long[] bits;
+    // Индексы по идентификаторам (только для forAgents)
+    private final Map<String, Integer> storeIndex;
+    private final Map<String, Integer> truckIndex;
+
+    private Feasibility(int storeCount, int truckCount,
+                        Map<String, Integer> storeIndex, Map<String, Integer> truckIndex) {
+        this.words = (storeCount + 63) >>> 6;
+        this.bits = new long[words * truckCount];
+        this.storeIndex = storeIndex;
+        this.truckIndex = truckIndex;
+    }
+
+    /**
+     * Матрица для скомпилированной задачи: учитываются погрузка перед выездом
+     * и возврат на склад до конца окна доступности (как в RoutePlanningEngine)
+     */
+    static Feasibility of(ProblemInstance instance) {
+        DistanceMatrix matrix = instance.matrix;
+        int storeCount = matrix.storeCount();
+        Feasibility feasibility = new Feasibility(storeCount, instance.truckCount(), null, null);
+
+        // Самая лёгкая строка и самая короткая разгрузка магазина. Магазин без строк (задача без заказов,
+        // как у IncrementalInserter и LocalSearch) проверяется только по времени: вес 0, разгрузка 0
+        double[] minWeight = new double[storeCount];
+        int[] minService = new int[storeCount];
+        for (int node = 0; node < storeCount; node++) {
+            if (instance.lineStart[node] == instance.lineStart[node + 1]) {
+                continue;
+            }
+            minWeight[node] = Double.POSITIVE_INFINITY;
+            int minQuantity = Integer.MAX_VALUE;
+            for (int line = instance.lineStart[node]; line < instance.lineStart[node + 1]; line++) {
+                minWeight[node] = Math.min(minWeight[node], instance.lineWeight[line]);
+                minQuantity = Math.min(minQuantity, instance.lineQuantity[line]);
+            }
+            minService[node] = DistanceCalculator.calculateServiceTime(minQuantity);
+        }
+
+        int loading = DistanceCalculator.calculateLoadingTime();
+        for (int t = 0; t < instance.truckCount(); t++) {
+            int depot = instance.depot[t];
+            int departure = instance.availableFrom[t] + loading;
+            for (int node = 0; node < storeCount; node++) {
+                if (minWeight[node] > instance.capacity[t]) {
+                    continue;
+                }
+                int arrival = departure + matrix.travelTime(depot, node);
+                if (arrival > instance.windowEnd[node]) {
+                    continue;
+                }
+                int back = Math.max(arrival, instance.windowStart[node]) + minService[node] + matrix.travelTime(node, depot);
+                if (back <= instance.availableUntil[t]) {
+                    feasibility.set(node, t);
+                }
+            }
+        }
+        return feasibility;
+    }
+
+    /**
+     * Матрица для переговоров агентов (логика TruckAgent.handleCFP): грузовик выезжает в начале окна
+     * доступности без погрузки, разгрузка должна закончиться до конца окон магазина и грузовика,
+     * допускается частичная доставка (одна единица товара).
+     * @param minUnitWeight вес самой лёгкой единицы товара по магазинам; если null или магазина нет - не проверяется
+     */
+    public static Feasibility forAgents(List<Truck> trucks, Collection<Store> stores, Map<String, Double> minUnitWeight) {
+        Map<String, Integer> storeIndex = new HashMap<>();
+        List<Store> storeList = new ArrayList<>(stores);
+        for (int s = 0; s < storeList.size(); s++) {
+            storeIndex.put(storeList.get(s).getStoreId(), s);
+        }
+        Map<String, Integer> truckIndex = new HashMap<>();
+        for (int t = 0; t < trucks.size(); t++) {
+            truckIndex.put(trucks.get(t).getTruckId(), t);
+        }
+        Feasibility feasibility = new Feasibility(storeList.size(), trucks.size(), storeIndex, truckIndex);
+
+        DistanceProvider distances = DistanceProviders.current();
+        int minService = DistanceCalculator.calculateServiceTime(1);
+        for (int t = 0; t < trucks.size(); t++) {
+            Truck truck = trucks.get(t);
+            int departure = secondOfDay(truck.getAvailabilityStart(), 0);
+            int availableUntil = secondOfDay(truck.getAvailabilityEnd(), SECONDS_PER_DAY);
+            for (int s = 0; s < storeList.size(); s++) {
+                Store store = storeList.get(s);
+                Double weight = minUnitWeight != null ? minUnitWeight.get(store.getStoreId()) : null;
+                if (weight != null && weight > truck.getCapacity()) {
+                    continue;
+                }
+                int windowEnd = secondOfDay(store.getTimeWindowEnd(), SECONDS_PER_DAY);
+                int arrival = departure + DistanceCalculator.calculateTravelTime(distances.distance(
+                        truck.getStartX(), truck.getStartY(), store.getX(), store.getY()));
+                if (arrival > windowEnd) {
+                    continue;
+                }
+                int finish = Math.max(arrival, secondOfDay(store.getTimeWindowStart(), 0)) + minService;
+                if (finish <= windowEnd && finish <= availableUntil) {
+                    feasibility.set(s, t);
+                }
+            }
+        }
+        return feasibility;
+    }
+
+    /**
+     * Вес самой лёгкой единицы товара в строках заказов каждого магазина (для forAgents)
+     * Агенты допускают частичную доставку строки, поэтому наименьший груз - одна единица товара.
+     * Магазины без строк с положительным количеством в результат не попадают.
+     */
+    public static Map<String, Double> minUnitWeights(Map<String, List<DeliveryRequest>> demands) {
+        Map<String, Double> weights = new HashMap<>();
+        for (Map.Entry<String, List<DeliveryRequest>> entry : demands.entrySet()) {
+            for (DeliveryRequest request : entry.getValue()) {
+                if (request.getQuantity() > 0) {
+                    weights.merge(entry.getKey(), request.getTotalWeight() / request.getQuantity(), Math::min);
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Может ли грузовик с индексом truck обслужить магазин store
+     * Отрицательный индекс грузовика (неизвестный грузовик) ничего не запрещает.
+     */
+    boolean allows(int store, int truck) {
+        return truck < 0 || (bits[truck * words + (store >>> 6)] & (1L << store)) != 0;
+    }
+
+    /**
+     * Проверка по идентификаторам (матрица forAgents); неизвестные магазины и грузовики допускаются
+     */
+    public boolean allows(String storeId, String truckId) {
+        Integer store = storeIndex != null ? storeIndex.get(storeId) : null;
+        Integer truck = truckIndex != null ? truckIndex.get(truckId) : null;
+        return store == null || truck == null || allows(store, truck);
+    }
+
+    /**
+     * Число допустимых пар
+     */
+    public int count() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private void set(int store, int truck) {
+        bits[truck * words + (store >>> 6)] |= 1L << store;
+    }
+
+    private static int secondOfDay(LocalTime time, int fallback) {
+        return time != null ? time.toSecondOfDay() : fallback;
+    }
+}
@@ -0,0 +1,25 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Жадная стратегия: ближайший магазин первым (RoutePlanningEngine)
+ */
+public class GreedyRoutePlanner implements RoutePlanner {
+
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+        return RoutePlanningEngine.planRoutes(trucks, storesMap, productsMap, demands);
+    }
+}
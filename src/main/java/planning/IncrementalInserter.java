@@ -0,0 +1,165 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Store;
+import model.Truck;
+
+import java.util.*;
+
+/**
+ * Вставка поздних заказов в уже построенные маршруты без полного перепланирования
+ * Для каждого маршрута кэшируется RouteState с префиксами и суффиксами, поэтому
+ * одна вставка стоит O(маршруты × остановки). Заказ либо добавляется к уже
+ * существующей остановке в этом магазине, либо становится новой остановкой.
+ * Сначала рассматриваются маршруты, заезжающие в этот или соседний магазин (Neighbours),
+ * остальные - только если в них заказ не поместился.
+ */
+public class IncrementalInserter {
+
+    private final ProblemInstance instance;
+    private final Map<String, Truck> trucksById = new HashMap<>();
+    // Кэш: маршрут -> рабочее состояние, построенное по этому экземпляру маршрута
+    private final Map<DeliveryRoute, RouteState> cache = new IdentityHashMap<>();
+    // Отметки соседей магазина текущего заказа
+    private final boolean[] near;
+
+    public IncrementalInserter(List<Truck> trucks, Map<String, Store> storesMap) {
+        this(trucks, storesMap, DistanceMatrix.build(storesMap, trucks));
+    }
+
+    public IncrementalInserter(List<Truck> trucks, Map<String, Store> storesMap, DistanceMatrix matrix) {
+        this.instance = ProblemInstance.compile(trucks, storesMap, Collections.emptyMap(), matrix);
+        this.near = new boolean[matrix.storeCount()];
+        for (Truck truck : trucks) {
+            trucksById.put(truck.getTruckId(), truck);
+        }
+    }
+
+    /**
+     * Вставляет заказ в самое дешёвое допустимое место среди маршрутов routes
+     * Изменённый маршрут заменяется в списке новым объектом DeliveryRoute.
+     * @return изменённый маршрут или null, если заказ никуда не помещается
+     */
+    public DeliveryRoute insert(DeliveryRequest request, List<DeliveryRoute> routes) {
+        int node = instance.matrix.indexOf(request.getStoreId());
+        if (node < 0) {
+            return null;
+        }
+        Visit visit = Visit.fromRequests(node, Collections.singletonList(request));
+
+        int bestRoute = -1;
+        int bestPosition = -1;
+        boolean bestMerge = false;
+        double bestDelta = Double.POSITIVE_INFINITY;
+        int[] position = new int[1];
+        TimeWindowSegment segment = new TimeWindowSegment();
+
+        Neighbours neighbours = instance.neighbours();
+        for (int n = neighbours.start[node]; n < neighbours.start[node + 1]; n++) {
+            near[neighbours.list[n]] = true;
+        }
+        for (int pass = 0; pass < 2 && bestRoute < 0; pass++) {
+            for (int r = 0; r < routes.size(); r++) {
+                RouteState state = stateOf(routes.get(r), routes);
+                if (state == null || visitsNear(state) != (pass == 0)) continue;
+
+                // Добавление к существующей остановке в этом магазине: пробег не меняется
+                if (state.load + visit.weight <= state.capacity && bestDelta > 0) {
+                    for (int i = 0; i < state.size; i++) {
+                        Visit existing = state.visits.get(i);
+                        if (existing.node != node) continue;
+                        if (mergedTimeWarp(state, i, merge(existing, visit), segment) <= state.timeWarp) {
+                            bestDelta = 0;
+                            bestRoute = r;
+                            bestPosition = i;
+                            bestMerge = true;
+                            break;
+                        }
+                    }
+                }
+
+                double delta = state.bestInsertion(visit, instance, position);
+                if (delta < bestDelta) {
+                    bestDelta = delta;
+                    bestRoute = r;
+                    bestPosition = position[0];
+                    bestMerge = false;
+                }
+            }
+        }
+        for (int n = neighbours.start[node]; n < neighbours.start[node + 1]; n++) {
+            near[neighbours.list[n]] = false;
+        }
+
+        if (bestRoute < 0) {
+            return null;
+        }
+
+        RouteState state = stateOf(routes.get(bestRoute), routes);
+        cache.remove(routes.get(bestRoute));
+        if (bestMerge) {
+            state.visits.set(bestPosition, merge(state.visits.get(bestPosition), visit));
+        } else {
+            state.visits.add(bestPosition, visit);
+        }
+        state.update(instance);
+
+        DeliveryRoute updated = state.toRoute(instance);
+        routes.set(bestRoute, updated);
+        cache.put(updated, state);
+        request.setStatus(DeliveryRequest.DeliveryStatus.DELIVERED);
+        return updated;
+    }
+
+    private RouteState stateOf(DeliveryRoute route, List<DeliveryRoute> routes) {
+        RouteState state = cache.get(route);
+        if (state == null) {
+            Truck truck = trucksById.get(route.getTruckId());
+            if (truck == null) {
+                return null;
+            }
+            state = RouteState.of(route, truck, instance);
+            // Рейс должен вернуться до выезда следующего рейса того же грузовика
+            for (DeliveryRoute other : routes) {
+                if (other != route && other.getTruckId().equals(route.getTruckId())
+                        && other.getDepartureTime().isAfter(route.getDepartureTime())) {
+                    state.limitEnd(other.getDepartureTime().toSecondOfDay(), instance);
+                }
+            }
+            cache.put(route, state);
+        }
+        return state;
+    }
+
+    /**
+     * Заезжает ли маршрут в магазин, отмеченный в near
+     */
+    private boolean visitsNear(RouteState state) {
+        for (int i = 0; i < state.size; i++) {
+            if (near[state.node(i)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Visit merge(Visit existing, Visit added) {
+        List<DeliveryRoute.DeliveryItem> items = new ArrayList<>(existing.items);
+        items.addAll(added.items);
+        List<DeliveryRequest> requests = new ArrayList<>(existing.requests);
+        requests.addAll(added.requests);
+        return new Visit(existing.node, items, requests);
+    }
+
+    /**
+     * Опоздание маршрута, если посещение на позиции i заменить на visit (O(1))
+     */
+    private int mergedTimeWarp(RouteState state, int i, Visit visit, TimeWindowSegment segment) {
+        DistanceMatrix matrix = instance.matrix;
+        TimeWindowSegment node = state.nodeSegment(visit, instance, new TimeWindowSegment());
+        TimeWindowSegment.concat(state.pre[i], matrix.travelTime(state.node(i - 1), visit.node), node, segment);
+        TimeWindowSegment.concat(segment, matrix.travelTime(visit.node, state.node(i + 1)), state.suf[i + 1], segment);
+        return segment.getTimeWarp();
+    }
+}
@@ -0,0 +1,413 @@
+package planning;
+
+import model.DeliveryRoute;
+import model.Store;
+import model.Truck;
+
+import java.util.*;
+
+/**
+ * Улучшение готовых маршрутов локальным поиском
+ * Внутри маршрута: 2-opt и Or-opt (перенос участка из 1-3 магазинов),
+ * между маршрутами: перенос (relocate) и обмен (exchange) посещений.
+ * Ход оценивается по изменению стоимости; временные окна и грузоподъёмность
+ * проверяются за O(1) по префиксам/суффиксам RouteState.
+ * Межмаршрутные ходы гранулярные: посещение переносится только рядом с посещениями
+ * соседних по Neighbours магазинов и обменивается только с ними.
+ * Ход принимается, только если стоимость уменьшается, а опоздание на маршрутах не растёт.
+ */
+public class LocalSearch {
+
+    private static final double EPSILON = 1e-6;
+    private static final int MAX_PASSES = 50;
+    private static final int MAX_SEGMENT_LENGTH = 3;
+
+    /**
+     * Результат улучшения: новые маршруты и сэкономленный пробег/стоимость
+     */
+    public static class Result {
+        private final List<DeliveryRoute> routes;
+        private final double distanceSaved;
+        private final double costSaved;
+
+        public Result(List<DeliveryRoute> routes, double distanceSaved, double costSaved) {
+            this.routes = routes;
+            this.distanceSaved = distanceSaved;
+            this.costSaved = costSaved;
+        }
+
+        public List<DeliveryRoute> getRoutes() { return routes; }
+        public double getDistanceSaved() { return distanceSaved; }
+        public double getCostSaved() { return costSaved; }
+    }
+
+    /**
+     * Улучшает маршруты; матрица расстояний строится по магазинам и грузовикам
+     */
+    public static Result improve(List<DeliveryRoute> routes, List<Truck> trucks, Map<String, Store> storesMap) {
+        return improve(routes, trucks, storesMap, DistanceMatrix.build(storesMap, trucks));
+    }
+
+    public static Result improve(List<DeliveryRoute> routes, List<Truck> trucks,
+                                 Map<String, Store> storesMap, DistanceMatrix matrix) {
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, Collections.emptyMap(), matrix);
+        Map<String, Truck> trucksById = new HashMap<>();
+        for (Truck truck : trucks) {
+            trucksById.put(truck.getTruckId(), truck);
+        }
+
+        List<RouteState> states = new ArrayList<>();
+        double distanceBefore = 0;
+        double costBefore = 0;
+        for (DeliveryRoute route : routes) {
+            RouteState state = RouteState.of(route, trucksById.get(route.getTruckId()), instance);
+            states.add(state);
+            distanceBefore += state.totalDistance(matrix);
+            costBefore += state.cost(matrix);
+        }
+
+        improve(states, instance);
+
+        List<DeliveryRoute> improved = new ArrayList<>();
+        double distanceAfter = 0;
+        double costAfter = 0;
+        for (RouteState state : states) {
+            improved.add(state.toRoute(instance));
+            distanceAfter += state.totalDistance(matrix);
+            costAfter += state.cost(matrix);
+        }
+        return new Result(improved, distanceBefore - distanceAfter, costBefore - costAfter);
+    }
+
+    /**
+     * Улучшает рабочие маршруты на месте; опустевшие после переносов маршруты удаляются из списка
+     */
+    static void improve(List<RouteState> states, ProblemInstance instance) {
+        RouteState.chainTrips(states, instance);
+        new Search(instance, states).run();
+        states.removeIf(state -> state.size == 0);
+    }
+
+    /**
+     * Состояние одного запуска поиска (буферы переиспользуются между ходами)
+     */
+    static class Search {
+        private final ProblemInstance instance;
+        private final DistanceMatrix matrix;
+        private final List<RouteState> states;
+        private final Neighbours neighbours;
+        private final Feasibility feasibility;
+
+        // Где стоят посещения магазина: односвязный список по firstAt[node] и nextAt
+        private final int[] firstAt;
+        private int[] nextAt = new int[0];
+        private int[] routeAt = new int[0];
+        private int[] positionAt = new int[0];
+
+        private final TimeWindowSegment node = new TimeWindowSegment();
+        private final TimeWindowSegment block = new TimeWindowSegment();
+        private final TimeWindowSegment middle = new TimeWindowSegment();
+        // После принятого хода: left и right - предсказанные сводки изменённых маршрутов
+        // (для межмаршрутного хода - маршрута-источника и маршрута-приёмника), lastDelta - изменение стоимости
+        final TimeWindowSegment left = new TimeWindowSegment();
+        final TimeWindowSegment right = new TimeWindowSegment();
+        double lastDelta;
+
+        Search(ProblemInstance instance, List<RouteState> states) {
+            this.instance = instance;
+            this.matrix = instance.matrix;
+            this.states = states;
+            this.neighbours = instance.neighbours();
+            this.feasibility = instance.feasibility();
+            this.firstAt = new int[matrix.storeCount()];
+        }
+
+        void run() {
+            boolean improved = true;
+            for (int pass = 0; pass < MAX_PASSES && improved; pass++) {
+                improved = false;
+                for (RouteState route : states) {
+                    while (twoOpt(route) || orOpt(route)) {
+                        improved = true;
+                    }
+                }
+                while (relocate() || exchange()) {
+                    improved = true;
+                }
+            }
+        }
+
+        private int travel(int from, int to) {
+            return matrix.travelTime(from, to);
+        }
+
+        private double distance(int from, int to) {
+            return matrix.distance(from, to);
+        }
+
+        private TimeWindowSegment segmentOf(RouteState route, int pos, TimeWindowSegment out) {
+            return route.nodeSegment(route.visits.get(pos), instance, out);
+        }
+
+        private boolean accepts(double delta, int timeWarp, RouteState route) {
+            return delta < -EPSILON && timeWarp <= route.timeWarp;
+        }
+
+        /**
+         * 2-opt: разворот участка i..j
+         */
+        boolean twoOpt(RouteState route) {
+            int n = route.size;
+            double oldCost = route.cost(matrix);
+            for (int i = 0; i < n - 1; i++) {
+                segmentOf(route, i, block);
+                double reversedDistance = 0;
+                for (int j = i + 1; j < n; j++) {
+                    // Развёрнутый участок j, j-1, ..., i наращиваем слева
+                    segmentOf(route, j, node);
+                    TimeWindowSegment.concat(node, travel(route.node(j), route.node(j - 1)), block, block);
+                    reversedDistance += distance(route.node(j), route.node(j - 1));
+
+                    double forward = route.cum[i] + distance(route.node(i - 1), route.node(j)) + reversedDistance;
+                    if (j < n - 1) {
+                        forward += distance(route.node(i), route.node(j + 1)) + route.cum[n] - route.cum[j + 2];
+                    }
+                    int last = j == n - 1 ? route.node(i) : route.node(n - 1);
+                    double delta = route.cost(matrix, forward, last, n) - oldCost;
+                    if (delta >= -EPSILON) continue;
+
+                    TimeWindowSegment.concat(route.pre[i], travel(route.node(i - 1), route.node(j)), block, left);
+                    TimeWindowSegment.concat(left, travel(route.node(i), route.node(j + 1)), route.suf[j + 1], left);
+                    if (accepts(delta, left.timeWarp, route)) {
+                        lastDelta = delta;
+                        Collections.reverse(route.visits.subList(i, j + 1));
+                        route.update(instance);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Or-opt: перенос участка s..e (до MAX_SEGMENT_LENGTH магазинов) на другое место маршрута
+         */
+        boolean orOpt(RouteState route) {
+            int n = route.size;
+            double oldCost = route.cost(matrix);
+            for (int length = 1; length <= MAX_SEGMENT_LENGTH && length < n; length++) {
+                for (int s = 0; s + length <= n; s++) {
+                    int e = s + length - 1;
+                    segmentOf(route, s, block);
+                    for (int k = s + 1; k <= e; k++) {
+                        TimeWindowSegment.concat(block, travel(route.node(k - 1), route.node(k)), segmentOf(route, k, node), block);
+                    }
+                    double blockDistance = route.distanceBetween(s, e);
+
+                    // Перенос вперёд: 0..s-1, e+1..p, s..e, p+1..n-1
+                    for (int p = e + 1; p < n; p++) {
+                        if (p == e + 1) {
+                            segmentOf(route, p, middle);
+                        } else {
+                            TimeWindowSegment.concat(middle, travel(route.node(p - 1), route.node(p)), segmentOf(route, p, node), middle);
+                        }
+                        double forward = route.cum[s] + distance(route.node(s - 1), route.node(e + 1))
+                                + route.distanceBetween(e + 1, p) + distance(route.node(p), route.node(s)) + blockDistance;
+                        if (p < n - 1) {
+                            forward += distance(route.node(e), route.node(p + 1)) + route.cum[n] - route.cum[p + 2];
+                        }
+                        int last = p == n - 1 ? route.node(e) : route.node(n - 1);
+                        double delta = route.cost(matrix, forward, last, n) - oldCost;
+                        if (delta >= -EPSILON) continue;
+
+                        TimeWindowSegment.concat(route.pre[s], travel(route.node(s - 1), route.node(e + 1)), middle, left);
+                        TimeWindowSegment.concat(left, travel(route.node(p), route.node(s)), block, left);
+                        TimeWindowSegment.concat(left, travel(route.node(e), route.node(p + 1)), route.suf[p + 1], left);
+                        if (accepts(delta, left.timeWarp, route)) {
+                            lastDelta = delta;
+                            List<Visit> moved = new ArrayList<>(route.visits.subList(s, e + 1));
+                            route.visits.subList(s, e + 1).clear();
+                            route.visits.addAll(p - length + 1, moved);
+                            route.update(instance);
+                            return true;
+                        }
+                    }
+
+                    // Перенос назад: 0..p-1, s..e, p..s-1, e+1..n-1
+                    for (int p = s - 1; p >= 0; p--) {
+                        if (p == s - 1) {
+                            segmentOf(route, p, middle);
+                        } else {
+                            TimeWindowSegment.concat(segmentOf(route, p, node), travel(route.node(p), route.node(p + 1)), middle, middle);
+                        }
+                        double forward = route.cum[p] + distance(route.node(p - 1), route.node(s)) + blockDistance
+                                + distance(route.node(e), route.node(p)) + route.distanceBetween(p, s - 1);
+                        if (e < n - 1) {
+                            forward += distance(route.node(s - 1), route.node(e + 1)) + route.cum[n] - route.cum[e + 2];
+                        }
+                        int last = e == n - 1 ? route.node(s - 1) : route.node(n - 1);
+                        double delta = route.cost(matrix, forward, last, n) - oldCost;
+                        if (delta >= -EPSILON) continue;
+
+                        TimeWindowSegment.concat(route.pre[p], travel(route.node(p - 1), route.node(s)), block, left);
+                        TimeWindowSegment.concat(left, travel(route.node(e), route.node(p)), middle, left);
+                        TimeWindowSegment.concat(left, travel(route.node(s - 1), route.node(e + 1)), route.suf[e + 1], left);
+                        if (accepts(delta, left.timeWarp, route)) {
+                            lastDelta = delta;
+                            List<Visit> moved = new ArrayList<>(route.visits.subList(s, e + 1));
+                            route.visits.subList(s, e + 1).clear();
+                            route.visits.addAll(p, moved);
+                            route.update(instance);
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Маршрут без посещения i: пишет сводку в out и возвращает новый пробег до последнего магазина
+         */
+        private double removal(RouteState route, int i, TimeWindowSegment out) {
+            int n = route.size;
+            TimeWindowSegment.concat(route.pre[i], travel(route.node(i - 1), route.node(i + 1)), route.suf[i + 1], out);
+            double forward = route.cum[i];
+            if (i < n - 1) {
+                forward += distance(route.node(i - 1), route.node(i + 1)) + route.cum[n] - route.cum[i + 2];
+            }
+            return forward;
+        }
+
+        private int lastAfterRemoval(RouteState route, int i) {
+            return i == route.size - 1 ? route.node(i - 1) : route.node(route.size - 1);
+        }
+
+        /**
+         * Маршрут, где посещение на позиции p заменено (replace) или перед ним вставлено (insert) посещение visit
+         */
+        private double placement(RouteState route, int p, Visit visit, boolean replace, TimeWindowSegment out) {
+            int n = route.size;
+            int next = replace ? p + 1 : p;
+            route.nodeSegment(visit, instance, node);
+            TimeWindowSegment.concat(route.pre[p], travel(route.node(p - 1), visit.node), node, out);
+            TimeWindowSegment.concat(out, travel(visit.node, route.node(next)), route.suf[next], out);
+            double forward = route.cum[p] + distance(route.node(p - 1), visit.node);
+            if (next < n) {
+                forward += distance(visit.node, route.node(next)) + route.cum[n] - route.cum[next + 1];
+            }
+            return forward;
+        }
+
+        private int lastAfterPlacement(RouteState route, int p, Visit visit, boolean replace) {
+            int next = replace ? p + 1 : p;
+            return next >= route.size ? visit.node : route.node(route.size - 1);
+        }
+
+        /**
+         * Перестраивает индекс посещений по магазинам (после каждого принятого хода)
+         */
+        private void indexVisits() {
+            int total = 0;
+            for (RouteState route : states) {
+                total += route.size;
+            }
+            if (nextAt.length < total) {
+                nextAt = new int[total];
+                routeAt = new int[total];
+                positionAt = new int[total];
+            }
+            Arrays.fill(firstAt, -1);
+            int at = 0;
+            for (int r = 0; r < states.size(); r++) {
+                RouteState route = states.get(r);
+                for (int p = 0; p < route.size; p++) {
+                    int store = route.node(p);
+                    routeAt[at] = r;
+                    positionAt[at] = p;
+                    nextAt[at] = firstAt[store];
+                    firstAt[store] = at++;
+                }
+            }
+        }
+
+        /**
+         * Перенос одного посещения в другой маршрут, перед или после посещения соседнего магазина
+         */
+        boolean relocate() {
+            indexVisits();
+            for (RouteState from : states) {
+                for (int i = 0; i < from.size; i++) {
+                    Visit visit = from.visits.get(i);
+                    double fromForward = removal(from, i, left);
+                    double fromDelta = from.cost(matrix, fromForward, lastAfterRemoval(from, i), from.size - 1)
+                            - from.cost(matrix);
+                    if (left.timeWarp > from.timeWarp) continue;
+
+                    for (int n = neighbours.start[visit.node]; n < neighbours.start[visit.node + 1]; n++) {
+                        for (int at = firstAt[neighbours.list[n]]; at >= 0; at = nextAt[at]) {
+                            RouteState to = states.get(routeAt[at]);
+                            if (to == from || to.load + visit.weight > to.capacity
+                                    || !feasibility.allows(visit.node, instance.truckIndex(to.truck))) continue;
+                            double toCost = to.cost(matrix);
+                            for (int p = positionAt[at]; p <= positionAt[at] + 1; p++) {
+                                double toForward = placement(to, p, visit, false, right);
+                                double delta = fromDelta + to.cost(matrix, toForward,
+                                        lastAfterPlacement(to, p, visit, false), to.size + 1) - toCost;
+                                if (delta < -EPSILON && right.timeWarp <= to.timeWarp) {
+                                    lastDelta = delta;
+                                    from.visits.remove(i);
+                                    to.visits.add(p, visit);
+                                    from.update(instance);
+                                    to.update(instance);
+                                    return true;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Обмен посещениями соседних магазинов между двумя маршрутами
+         */
+        boolean exchange() {
+            indexVisits();
+            for (RouteState first : states) {
+                double firstCost = first.cost(matrix);
+                for (int i = 0; i < first.size; i++) {
+                    Visit u = first.visits.get(i);
+                    for (int n = neighbours.start[u.node]; n < neighbours.start[u.node + 1]; n++) {
+                        for (int at = firstAt[neighbours.list[n]]; at >= 0; at = nextAt[at]) {
+                            RouteState second = states.get(routeAt[at]);
+                            if (second == first) continue;
+                            int j = positionAt[at];
+                            Visit v = second.visits.get(j);
+                            if (first.load - u.weight + v.weight > first.capacity
+                                    || second.load - v.weight + u.weight > second.capacity
+                                    || !feasibility.allows(v.node, instance.truckIndex(first.truck))
+                                    || !feasibility.allows(u.node, instance.truckIndex(second.truck))) {
+                                continue;
+                            }
+                            double firstForward = placement(first, i, v, true, left);
+                            double secondForward = placement(second, j, u, true, right);
+                            double delta = first.cost(matrix, firstForward, lastAfterPlacement(first, i, v, true), first.size) - firstCost
+                                    + second.cost(matrix, secondForward, lastAfterPlacement(second, j, u, true), second.size) - second.cost(matrix);
+                            if (delta < -EPSILON && left.timeWarp <= first.timeWarp && right.timeWarp <= second.timeWarp) {
+                                lastDelta = delta;
+                                first.visits.set(i, v);
+                                second.visits.set(j, u);
+                                first.update(instance);
+                                second.update(instance);
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package planning;
+
+import model.DeliveryRoute;
+import model.Truck;
+import util.DistanceCalculator;
+
+import java.util.*;
+
+/**
+ * Нижние оценки пробега и стоимости плана и разрыв до оптимума
+ * Оценки считаются для того же набора обслуженных магазинов и отгруженного веса, что и в плане:
+ * - остовная: прямые пути рейсов вместе связывают все магазины со складами, поэтому их сумма
+ *   не меньше минимального остовного дерева (склады сжаты в одну вершину); к ней добавляются
+ *   возвраты - не меньше ceil(вес / макс. грузоподъёмность) рейсов до ближайшего к складу магазина;
+ * - радиальная (по грузоподъёмности): рейс длиннее двух расстояний до самого дальнего своего магазина,
+ *   поэтому пробег >= 2 * sum(w_i * d_i) / Q, стоимость (путь + возврат * 0.7) >= 1.7 * c * sum(w_i * d_i) / Q.
+ * Стоимость километра берётся минимальной по парку. Минимальное дерево строится за O(n^2).
+ * Расстояния евклидовы и при дорожной сети (DistanceProviders): путь по дорогам не короче прямой,
+ * если длины рёбер графа не меньше расстояний между их концами.
+ */
+public class LowerBound {
+
+    // Доля стоимости возврата на склад (как в DistanceCalculator.calculateCostWithReturn)
+    private static final double RETURN_SHARE = 0.7;
+
+    /**
+     * Итоги плана рядом с нижними оценками
+     */
+    public static class Report {
+        private final double distance;
+        private final double cost;
+        private final double distanceBound;
+        private final double costBound;
+
+        public Report(double distance, double cost, double distanceBound, double costBound) {
+            this.distance = distance;
+            this.cost = cost;
+            this.distanceBound = distanceBound;
+            this.costBound = costBound;
+        }
+
+        public double getDistance() { return distance; }
+        public double getCost() { return cost; }
+        public double getDistanceBound() { return distanceBound; }
+        public double getCostBound() { return costBound; }
+
+        /**
+         * Разрыв по стоимости: (стоимость - оценка) / стоимость, от 0 до 1
+         */
+        public double getGap() {
+            return gap(cost, costBound);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "стоимость %.2f (оценка %.2f, разрыв %.1f%%), пробег %.2f (оценка %.2f)",
+                    cost, costBound, getGap() * 100, distance, distanceBound);
+        }
+    }
+
+    /**
+     * Оценки для готового плана; склады - стартовые точки грузовиков
+     */
+    public static Report evaluate(List<DeliveryRoute> routes, List<Truck> trucks) {
+        // Отгруженный вес по магазинам (магазин может посещаться несколькими рейсами)
+        Map<String, double[]> served = new TreeMap<>();
+        double distance = 0;
+        double cost = 0;
+        for (DeliveryRoute route : routes) {
+            distance += route.getTotalDistance();
+            cost += route.getTotalCost();
+            for (DeliveryRoute.RouteStop stop : route.getStops()) {
+                double[] point = served.computeIfAbsent(stop.getStoreId(),
+                        id -> new double[]{stop.getX(), stop.getY(), 0});
+                for (DeliveryRoute.DeliveryItem item : stop.getItems()) {
+                    point[2] += item.getWeight();
+                }
+            }
+        }
+
+        int count = served.size();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] weights = new double[count];
+        int i = 0;
+        for (double[] point : served.values()) {
+            xs[i] = point[0];
+            ys[i] = point[1];
+            weights[i++] = point[2];
+        }
+        double[] depotXs = new double[trucks.size()];
+        double[] depotYs = new double[trucks.size()];
+        double minCostPerKm = Double.MAX_VALUE;
+        double maxCapacity = 0;
+        for (int t = 0; t < trucks.size(); t++) {
+            depotXs[t] = trucks.get(t).getStartX();
+            depotYs[t] = trucks.get(t).getStartY();
+            minCostPerKm = Math.min(minCostPerKm, trucks.get(t).getCostPerKm());
+            maxCapacity = Math.max(maxCapacity, trucks.get(t).getCapacity());
+        }
+        double[] bounds = bounds(xs, ys, weights, depotXs, depotYs, minCostPerKm, maxCapacity);
+        return new Report(distance, cost, bounds[0], bounds[1]);
+    }
+
+    /**
+     * Оценка стоимости плана, обслуживающего все строки заказов, которые помещаются в грузовик
+     * (тот же набор, что даёт Visit.split)
+     */
+    static double fullServiceCostBound(ProblemInstance instance) {
+        DistanceMatrix matrix = instance.matrix;
+        double maxCapacity = 0;
+        double minCostPerKm = Double.MAX_VALUE;
+        for (int t = 0; t < instance.truckCount(); t++) {
+            maxCapacity = Math.max(maxCapacity, instance.capacity[t]);
+            minCostPerKm = Math.min(minCostPerKm, instance.costPerKm[t]);
+        }
+        int storeCount = matrix.storeCount();
+        double[] xs = new double[storeCount];
+        double[] ys = new double[storeCount];
+        double[] weights = new double[storeCount];
+        int count = 0;
+        for (int node = 0; node < storeCount; node++) {
+            double weight = 0;
+            for (int line = instance.lineStart[node]; line < instance.lineStart[node + 1]; line++) {
+                if (instance.lineWeight[line] <= maxCapacity) {
+                    weight += instance.lineWeight[line];
+                }
+            }
+            if (weight > 0) {
+                xs[count] = matrix.x(node);
+                ys[count] = matrix.y(node);
+                weights[count++] = weight;
+            }
+        }
+        int depotCount = matrix.size() - storeCount;
+        double[] depotXs = new double[depotCount];
+        double[] depotYs = new double[depotCount];
+        for (int d = 0; d < depotCount; d++) {
+            depotXs[d] = matrix.x(storeCount + d);
+            depotYs[d] = matrix.y(storeCount + d);
+        }
+        return bounds(Arrays.copyOf(xs, count), Arrays.copyOf(ys, count), Arrays.copyOf(weights, count),
+                depotXs, depotYs, minCostPerKm, maxCapacity)[1];
+    }
+
+    static double gap(double cost, double bound) {
+        return cost > 0 ? Math.max(0, (cost - bound) / cost) : 0;
+    }
+
+    /**
+     * @return {оценка пробега, оценка стоимости}
+     */
+    private static double[] bounds(double[] xs, double[] ys, double[] weights,
+                                   double[] depotXs, double[] depotYs, double minCostPerKm, double maxCapacity) {
+        int n = xs.length;
+        if (n == 0 || depotXs.length == 0 || maxCapacity <= 0) {
+            return new double[]{0, 0};
+        }
+
+        // Расстояние до ближайшего склада
+        double[] depotDistance = new double[n];
+        double nearestDepot = Double.MAX_VALUE;
+        double totalWeight = 0;
+        double radial = 0;
+        for (int i = 0; i < n; i++) {
+            depotDistance[i] = Double.MAX_VALUE;
+            for (int d = 0; d < depotXs.length; d++) {
+                depotDistance[i] = Math.min(depotDistance[i],
+                        DistanceCalculator.calculateDistance(xs[i], ys[i], depotXs[d], depotYs[d]));
+            }
+            nearestDepot = Math.min(nearestDepot, depotDistance[i]);
+            totalWeight += weights[i];
+            radial += weights[i] * depotDistance[i];
+        }
+        radial /= maxCapacity;
+        int minTrips = (int) Math.ceil(totalWeight / maxCapacity - 1e-9);
+
+        // Алгоритм Прима от сжатой вершины складов
+        double[] key = Arrays.copyOf(depotDistance, n);
+        boolean[] inTree = new boolean[n];
+        double tree = 0;
+        for (int step = 0; step < n; step++) {
+            int next = -1;
+            for (int i = 0; i < n; i++) {
+                if (!inTree[i] && (next < 0 || key[i] < key[next])) {
+                    next = i;
+                }
+            }
+            inTree[next] = true;
+            tree += key[next];
+            for (int i = 0; i < n; i++) {
+                if (!inTree[i]) {
+                    double distance = DistanceCalculator.calculateDistance(xs[next], ys[next], xs[i], ys[i]);
+                    if (distance < key[i]) {
+                        key[i] = distance;
+                    }
+                }
+            }
+        }
+
+        double returns = minTrips * nearestDepot;
+        double distanceBound = Math.max(tree + returns, 2 * radial);
+        double costBound = minCostPerKm * Math.max(tree + RETURN_SHARE * returns, (1 + RETURN_SHARE) * radial);
+        return new double[]{distanceBound, costBound};
+    }
+}
@@ -0,0 +1,85 @@
+package planning;
+
+import model.Store;
+import model.Truck;
+import util.DistanceProvider;
+import util.DistanceProviders;
+
+import java.util.*;
+
+/**
+ * Расстояния из матрицы для точек, совпадающих с узлами (магазины и склады); остальные точки
+ * считаются исходным источником. Ставится текущим источником при запуске контейнера (install),
+ * чтобы агенты и планировщик JVM читали одну отображённую матрицу вместо повторных расчётов.
+ * Отпечаток (fingerprint) и описание (toString) совпадают с исходным источником: от отпечатка зависит хэш файла матрицы.
+ */
+public final class MatrixDistanceProvider implements DistanceProvider {
+
+    private final DistanceMatrix matrix;
+    private final DistanceProvider base;
+    // Узел матрицы по точке "x;y"
+    private final Map<String, Integer> nodes = new HashMap<>();
+
+    public MatrixDistanceProvider(DistanceMatrix matrix, DistanceProvider base) {
+        this.matrix = matrix;
+        this.base = base;
+        for (int node = matrix.size() - 1; node >= 0; node--) {
+            nodes.put(key(matrix.x(node), matrix.y(node)), node);
+        }
+    }
+
+    /**
+     * Если задан каталог файлов матриц (DistanceMatrixFile.PROPERTY), открывает или строит матрицу
+     * магазинов и складов и делает её текущим источником расстояний
+     */
+    public static void install(Map<String, Store> stores, List<Truck> trucks) {
+        if (DistanceMatrixFile.directory() == null) {
+            return;
+        }
+        DistanceProvider base = DistanceProviders.current();
+        if (base instanceof MatrixDistanceProvider) {
+            base = ((MatrixDistanceProvider) base).base;
+        }
+        DistanceMatrix matrix = DistanceMatrix.build(stores, trucks, base);
+        DistanceProviders.use(new MatrixDistanceProvider(matrix, base));
+    }
+
+    @Override
+    public double distance(double x1, double y1, double x2, double y2) {
+        Integer from = nodes.get(key(x1, y1));
+        Integer to = from != null ? nodes.get(key(x2, y2)) : null;
+        return to != null ? matrix.distance(from, to) : base.distance(x1, y1, x2, y2);
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        return base.isSymmetric();
+    }
+
+    @Override
+    public long fingerprint() {
+        return base.fingerprint();
+    }
+
+    @Override
+    public void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+        Integer from = nodes.get(key(x, y));
+        if (from == null) {
+            base.distancesFrom(x, y, xs, ys, out);
+            return;
+        }
+        for (int i = 0; i < xs.length; i++) {
+            Integer to = nodes.get(key(xs[i], ys[i]));
+            out[i] = to != null ? matrix.distance(from, to) : base.distance(x, y, xs[i], ys[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return base.toString();
+    }
+
+    private static String key(double x, double y) {
+        return x + ";" + y;
+    }
+}
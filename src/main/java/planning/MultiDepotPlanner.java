@@ -0,0 +1,214 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Планирование с несколькими складами: складом грузовика считается его точка старта
+ * Магазины делятся между складами: сначала магазины с наибольшей разницей расстояний до ближайшего
+ * и второго склада, каждый - на ближайший склад, у которого есть допустимый грузовик (Feasibility)
+ * и ещё не исчерпана квота. Квота склада - его доля грузоподъёмности парка от всего спроса с запасом QUOTA_SLACK.
+ * Магазины склада делятся на кластеры (DecompositionPlanner), кластеры решаются его грузовиками
+ * параллельно. Исправление границ между соседними кластерами переносит и обменивает посещения
+ * и между маршрутами разных складов, а оставшиеся строки вставляются в маршрут любого склада.
+ */
+public class MultiDepotPlanner implements RoutePlanner {
+
+    // Запас квоты склада сверх его доли грузоподъёмности парка
+    private static final double QUOTA_SLACK = 1.1;
+
+    private final long seed;
+    private final DecompositionPlanner decomposition;
+
+    public MultiDepotPlanner() {
+        this(42, ForkJoinPool.commonPool());
+    }
+
+    public MultiDepotPlanner(long seed, ForkJoinPool pool) {
+        this.seed = seed;
+        this.decomposition = new DecompositionPlanner(seed, pool);
+    }
+
+    @Override
+    public String cacheKey() {
+        return getClass().getName() + "(seed=" + seed + ")";
+    }
+
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+        return instance.toRoutes(plan(instance));
+    }
+
+    List<RouteState> plan(ProblemInstance instance) {
+        int[] depots = depots(instance);
+        int[] depotOf = partition(instance, depots);
+
+        // Кластеры всех складов нумеруются подряд; грузовики кластера - только со своего склада
+        int storeCount = instance.matrix.storeCount();
+        int[] of = new int[storeCount];
+        Arrays.fill(of, -1);
+        List<double[]> centers = new ArrayList<>();
+        List<int[]> clusterTrucks = new ArrayList<>();
+        for (int d = 0; d < depots.length; d++) {
+            int[] trucks = trucksAt(instance, depots[d]);
+            int[] points = new int[storeCount];
+            int n = 0;
+            for (int node = 0; node < storeCount; node++) {
+                if (depotOf[node] == d) {
+                    points[n++] = node;
+                }
+            }
+            DecompositionPlanner.Clustering clustering = DecompositionPlanner.cluster(instance,
+                    Arrays.copyOf(points, n), DecompositionPlanner.clusterCount(n, trucks.length), seed + d);
+            if (clustering.count == 0) {
+                continue;
+            }
+            int offset = centers.size();
+            for (int i = 0; i < n; i++) {
+                of[points[i]] = offset + clustering.of[points[i]];
+            }
+            for (int c = 0; c < clustering.count; c++) {
+                centers.add(new double[]{clustering.centerX[c], clustering.centerY[c], clustering.weight[c]});
+            }
+            clusterTrucks.addAll(Arrays.asList(DecompositionPlanner.assignTrucks(instance, clustering, trucks)));
+        }
+        if (centers.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int count = centers.size();
+        double[] centerX = new double[count];
+        double[] centerY = new double[count];
+        double[] weight = new double[count];
+        for (int c = 0; c < count; c++) {
+            centerX[c] = centers.get(c)[0];
+            centerY[c] = centers.get(c)[1];
+            weight[c] = centers.get(c)[2];
+        }
+        return decomposition.solve(instance, new DecompositionPlanner.Clustering(count, of, centerX, centerY, weight),
+                clusterTrucks.toArray(new int[0][]));
+    }
+
+    /**
+     * Распределение магазинов со спросом по складам
+     * @return номер склада в depots по индексу магазина; -1 для магазинов без спроса
+     */
+    static int[] partition(ProblemInstance instance, int[] depots) {
+        DistanceMatrix matrix = instance.matrix;
+        int storeCount = matrix.storeCount();
+        int depotCount = depots.length;
+        int[] depotOf = new int[storeCount];
+        Arrays.fill(depotOf, -1);
+        if (depotCount == 0) {
+            return depotOf;
+        }
+
+        // Квоты складов по грузоподъёмности их грузовиков
+        double[] capacity = new double[depotCount];
+        double totalCapacity = 0;
+        for (int t = 0; t < instance.truckCount(); t++) {
+            capacity[position(depots, instance.depot[t])] += instance.capacity[t];
+            totalCapacity += instance.capacity[t];
+        }
+        double totalWeight = 0;
+        for (int node = 0; node < storeCount; node++) {
+            totalWeight += instance.demandWeight[node];
+        }
+        double[] quota = new double[depotCount];
+        for (int d = 0; d < depotCount; d++) {
+            quota[d] = totalCapacity > 0 ? QUOTA_SLACK * totalWeight * capacity[d] / totalCapacity : 0;
+        }
+
+        // Склады, у которых есть хотя бы один допустимый для магазина грузовик
+        Feasibility feasibility = instance.feasibility();
+        boolean[][] served = new boolean[storeCount][depotCount];
+        List<Integer> stores = new ArrayList<>();
+        double[] regret = new double[storeCount];
+        for (int node = 0; node < storeCount; node++) {
+            if (instance.lineStart[node + 1] == instance.lineStart[node]) {
+                continue;
+            }
+            for (int t = 0; t < instance.truckCount(); t++) {
+                if (feasibility.allows(node, t)) {
+                    served[node][position(depots, instance.depot[t])] = true;
+                }
+            }
+            double nearest = Double.MAX_VALUE;
+            double second = Double.MAX_VALUE;
+            for (int d = 0; d < depotCount; d++) {
+                double distance = matrix.distance(node, depots[d]);
+                if (distance < nearest) {
+                    second = nearest;
+                    nearest = distance;
+                } else if (distance < second) {
+                    second = distance;
+                }
+            }
+            regret[node] = depotCount > 1 ? second - nearest : 0;
+            stores.add(node);
+        }
+        stores.sort((a, b) -> Double.compare(regret[b], regret[a]));
+
+        double[] load = new double[depotCount];
+        for (int node : stores) {
+            // Ближайший допустимый склад с остатком квоты, иначе ближайший допустимый, иначе просто ближайший
+            int withQuota = -1;
+            int feasible = -1;
+            int any = -1;
+            for (int d = 0; d < depotCount; d++) {
+                double distance = matrix.distance(node, depots[d]);
+                if (any < 0 || distance < matrix.distance(node, depots[any])) {
+                    any = d;
+                }
+                if (!served[node][d]) {
+                    continue;
+                }
+                if (feasible < 0 || distance < matrix.distance(node, depots[feasible])) {
+                    feasible = d;
+                }
+                if (load[d] + instance.demandWeight[node] <= quota[d]
+                        && (withQuota < 0 || distance < matrix.distance(node, depots[withQuota]))) {
+                    withQuota = d;
+                }
+            }
+            int depot = withQuota >= 0 ? withQuota : feasible >= 0 ? feasible : any;
+            depotOf[node] = depot;
+            load[depot] += instance.demandWeight[node];
+        }
+        return depotOf;
+    }
+
+    /**
+     * Индексы складов (узлов матрицы), с которых стартует хотя бы один грузовик, по возрастанию
+     */
+    static int[] depots(ProblemInstance instance) {
+        return Arrays.stream(instance.depot).distinct().sorted().toArray();
+    }
+
+    private static int[] trucksAt(ProblemInstance instance, int depot) {
+        int[] trucks = new int[instance.truckCount()];
+        int count = 0;
+        for (int t = 0; t < instance.truckCount(); t++) {
+            if (instance.depot[t] == depot) {
+                trucks[count++] = t;
+            }
+        }
+        return Arrays.copyOf(trucks, count);
+    }
+
+    private static int position(int[] depots, int depot) {
+        return Arrays.binarySearch(depots, depot);
+    }
+}
@@ -0,0 +1,155 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Параллельный мультистарт жадного алгоритма
+ * Запускает несколько вариантов RoutePlanningEngine на ForkJoinPool и оставляет лучший план.
+ * Варианты отличаются порядком грузовиков, случайным выбором среди равноценных магазинов
+ * и весом стоимости/времени. Вариант 0 - обычный детерминированный запуск, варианты 1 и 2 -
+ * детерминированные с грузовиками по возрастанию цены километра и по убыванию грузоподъёмности,
+ * остальные - случайные. Число вариантов не меньше DEFAULT_STARTS и не зависит от числа ядер
+ * меньше этого: на одном ядре варианты просто выполняются по очереди.
+ * Задача компилируется один раз (ProblemInstance) и разделяется между вариантами только на чтение;
+ * статусы заказов обновляются только по выбранному плану.
+ */
+public class MultiStartPlanner implements RoutePlanner {
+
+    // Наименьшее число вариантов по умолчанию
+    static final int DEFAULT_STARTS = 16;
+    // Разброс веса стоимости вокруг RoutePlanningEngine.COST_WEIGHT
+    private static final double COST_WEIGHT_SPREAD = 0.15;
+
+    private final int starts;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    public MultiStartPlanner() {
+        this(Math.max(DEFAULT_STARTS, Runtime.getRuntime().availableProcessors() * 2), 42, ForkJoinPool.commonPool());
+    }
+
+    public MultiStartPlanner(int starts, long seed, ForkJoinPool pool) {
+        this.starts = Math.max(1, starts);
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    @Override
+    public String cacheKey() {
+        return getClass().getName() + "(starts=" + starts + ", seed=" + seed + ")";
+    }
+
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+        List<Callable<Variant>> tasks = new ArrayList<>();
+        for (int i = 0; i < starts; i++) {
+            final int variant = i;
+            tasks.add(() -> runVariant(variant, instance));
+        }
+
+        Variant best = null;
+        try {
+            for (Future<Variant> future : pool.invokeAll(tasks)) {
+                Variant variant = future.get();
+                if (best == null || variant.isBetterThan(best)) {
+                    best = variant;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Мультистарт прерван", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка в варианте мультистарта", e.getCause());
+        }
+
+        return instance.toRoutes(best.routes);
+    }
+
+    private Variant runVariant(int index, ProblemInstance instance) {
+        int[] order = RoutePlanningEngine.identityOrder(instance.truckCount());
+        double costWeight = RoutePlanningEngine.COST_WEIGHT;
+        Random random = null;
+        if (index == 1) {
+            sortOrder(order, Comparator.comparingDouble((Integer t) -> instance.costPerKm[t]));
+        } else if (index == 2) {
+            sortOrder(order, Comparator.comparingDouble((Integer t) -> -instance.capacity[t]));
+        } else if (index > 2) {
+            random = new Random(seed + index);
+            // Перемешивание Фишера-Йейтса порядка грузовиков
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            costWeight += (random.nextDouble() * 2 - 1) * COST_WEIGHT_SPREAD;
+            costWeight = Math.min(1.0, Math.max(0.0, costWeight));
+        }
+
+        List<RouteState> routes = RoutePlanningEngine.plan(
+                instance, order, costWeight, random, new boolean[instance.lineCount()]);
+        LocalSearch.improve(routes, instance);
+        return new Variant(routes, instance.matrix);
+    }
+
+    /**
+     * Устойчивая сортировка порядка грузовиков (при равенстве - исходный порядок)
+     */
+    private static void sortOrder(int[] order, Comparator<Integer> comparator) {
+        Integer[] boxed = new Integer[order.length];
+        for (int i = 0; i < order.length; i++) {
+            boxed[i] = order[i];
+        }
+        Arrays.sort(boxed, comparator);
+        for (int i = 0; i < order.length; i++) {
+            order[i] = boxed[i];
+        }
+    }
+
+    /**
+     * Результат одного варианта
+     */
+    private static class Variant {
+        final List<RouteState> routes;
+        final double deliveredWeight;
+        final double cost;
+
+        Variant(List<RouteState> routes, DistanceMatrix matrix) {
+            this.routes = routes;
+            double weight = 0;
+            double totalCost = 0;
+            for (RouteState route : routes) {
+                weight += route.load;
+                totalCost += route.cost(matrix);
+            }
+            this.deliveredWeight = weight;
+            this.cost = totalCost;
+        }
+
+        /**
+         * Сначала больше доставленного веса, затем меньше стоимость
+         */
+        boolean isBetterThan(Variant other) {
+            if (Math.abs(deliveredWeight - other.deliveredWeight) > 1e-6) {
+                return deliveredWeight > other.deliveredWeight;
+            }
+            return cost < other.cost - 1e-6;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package planning;
+
+import util.DistanceCalculator;
+
+import java.util.Arrays;
+
+/**
+ * Гранулярные окрестности: для каждого магазина - ближайшие магазины, совместимые по времени
+ * Магазин b совместим с a, если из одного из них можно успеть в окно другого: начало окна,
+ * минимальная разгрузка и переезд укладываются до конца окна второго магазина.
+ * Список магазина a начинается с самого a, остальные идут по возрастанию расстояния.
+ * Локальный поиск и вставки рассматривают только позиции рядом с магазинами из этого списка,
+ * поэтому их стоимость растёт линейно, а не квадратично от числа магазинов.
+ */
+final class Neighbours {
+
+    // Сколько соседей хранится для магазина (не считая его самого)
+    static final int DEFAULT_SIZE = 20;
+    // Ограничение просмотра кандидатов, если совместимых по времени соседей мало
+    private static final int MAX_SCAN_FACTOR = 16;
+
+    // Соседи магазина node: list[start[node]..start[node + 1])
+    final int[] start;
+    final int[] list;
+
+    private Neighbours(int[] start, int[] list) {
+        this.start = start;
+        this.list = list;
+    }
+
+    static Neighbours build(ProblemInstance instance, int size) {
+        DistanceMatrix matrix = instance.matrix;
+        int storeCount = matrix.storeCount();
+        int[] nodes = new int[storeCount];
+        for (int node = 0; node < storeCount; node++) {
+            nodes[node] = node;
+        }
+        SpatialGrid grid = new SpatialGrid(matrix, nodes);
+
+        int[] start = new int[storeCount + 1];
+        int[] list = new int[storeCount * (size + 1)];
+        int[] nearest = new int[0];
+        int count = 0;
+        for (int node = 0; node < storeCount; node++) {
+            start[node] = count;
+            list[count++] = node;
+            int found = 0;
+            // Совместимых по времени может не оказаться среди ближайших - расширяем поиск
+            for (int k = 2 * size + 1; found < size; k *= 2) {
+                if (nearest.length < k) {
+                    nearest = new int[k];
+                }
+                int returned = grid.nearest(matrix.x(node), matrix.y(node), k, nearest);
+                found = 0;
+                int end = start[node] + 1;
+                for (int i = 0; i < returned && found < size; i++) {
+                    int other = nearest[i];
+                    if (other != node && compatible(instance, node, other)) {
+                        list[end + found++] = other;
+                    }
+                }
+                if (returned < k || k >= MAX_SCAN_FACTOR * size) {
+                    break;
+                }
+            }
+            count += found;
+        }
+        start[storeCount] = count;
+        return new Neighbours(start, Arrays.copyOf(list, count));
+    }
+
+    private static boolean compatible(ProblemInstance instance, int a, int b) {
+        return reachable(instance, a, b) || reachable(instance, b, a);
+    }
+
+    /**
+     * Можно ли после разгрузки в from (не раньше начала его окна) успеть в окно to
+     */
+    private static boolean reachable(ProblemInstance instance, int from, int to) {
+        int earliest = instance.windowStart[from] + DistanceCalculator.calculateServiceTime()
+                + instance.matrix.travelTime(from, to);
+        return earliest <= instance.windowEnd[to];
+    }
+}
@@ -0,0 +1,211 @@
+package planning;
+
+import io.DataLoader;
+import io.ScheduleWriter;
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Перебор веса стоимости (COST_WEIGHT, вес времени = 1 - COST_WEIGHT) с фронтом Парето
+ * Задача компилируется один раз, жадный план с локальным поиском строится для каждого веса сетки
+ * параллельно. Во фронт попадают планы, которые не хуже другого плана сразу по трём критериям:
+ * доставлено больше товара, стоимость ниже, суммарное ожидание магазинов (время от начала окна
+ * до прибытия) меньше - и хотя бы по одному строго лучше. Опоздания (прибытие после конца окна)
+ * в критерии не входят и только выводятся рядом.
+ * Статусы заказов не изменяются: выбранный план применяется вызывающим кодом. Вес выбранного плана
+ * переносится на запуск агентов настройкой CostWeights.PROPERTY: с ней магазины и грузовики
+ * оценивают предложения тем же весом, что и центральный планировщик.
+ *
+ * Запуск: ParetoSweep [каталог данных] [число весов] [каталог результатов]
+ * пишет фронт в pareto.xlsx (сводка и лист на каждый план) и pareto.csv (сводка).
+ */
+public class ParetoSweep {
+
+    // Сетка 0.0, 0.1, ..., 1.0
+    public static final int DEFAULT_STEPS = 11;
+
+    /**
+     * План для одного веса стоимости и его критерии
+     */
+    public static class Plan {
+        private final double costWeight;
+        private final List<DeliveryRoute> routes;
+        private final double cost;
+        private final double distance;
+        private final int quantity;
+        private final long waitSeconds;
+        private final long lateSeconds;
+
+        Plan(double costWeight, List<DeliveryRoute> routes, double cost, double distance,
+             int quantity, long waitSeconds, long lateSeconds) {
+            this.costWeight = costWeight;
+            this.routes = routes;
+            this.cost = cost;
+            this.distance = distance;
+            this.quantity = quantity;
+            this.waitSeconds = waitSeconds;
+            this.lateSeconds = lateSeconds;
+        }
+
+        public double getCostWeight() { return costWeight; }
+        public List<DeliveryRoute> getRoutes() { return routes; }
+        public double getCost() { return cost; }
+        public double getDistance() { return distance; }
+        public int getQuantity() { return quantity; }
+        // Суммарное время от начала окна магазина до прибытия
+        public long getWaitSeconds() { return waitSeconds; }
+        // Суммарное опоздание после конца окна
+        public long getLateSeconds() { return lateSeconds; }
+
+        /**
+         * Не хуже other по всем критериям и лучше хотя бы по одному
+         */
+        boolean dominates(Plan other) {
+            boolean notWorse = quantity >= other.quantity && cost <= other.cost && waitSeconds <= other.waitSeconds;
+            boolean better = quantity > other.quantity || cost < other.cost || waitSeconds < other.waitSeconds;
+            return notWorse && better;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String dataDir = args.length > 0 ? args[0] : "data";
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+        File outDir = new File(args.length > 2 ? args[2] : "output");
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Не удалось создать каталог " + outDir);
+        }
+
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : DataLoader.loadProducts(dataDir + "/products.csv")) {
+            products.put(product.getProductId(), product);
+        }
+        Map<String, Store> stores = new HashMap<>();
+        for (Store store : DataLoader.loadStores(dataDir + "/stores.csv")) {
+            stores.put(store.getStoreId(), store);
+        }
+        List<Truck> trucks = DataLoader.loadTrucks(dataDir + "/trucks.csv");
+        Map<String, List<DeliveryRequest>> demands = DataLoader.loadDemands(dataDir + "/stores.csv", products);
+
+        long start = System.nanoTime();
+        List<Plan> plans = sweep(trucks, stores, demands, grid(steps), ForkJoinPool.commonPool());
+        List<Plan> front = front(plans);
+        System.out.println("Перебор весов: планов " + plans.size() + ", во фронте Парето " + front.size()
+                + " (" + (System.nanoTime() - start) / 1_000_000 + " мс)");
+        for (Plan plan : front) {
+            System.out.println(String.format(Locale.US, "  вес стоимости %.2f: стоимость %.2f, ожидание %d мин, доставлено %d шт",
+                    plan.getCostWeight(), plan.getCost(), plan.getWaitSeconds() / 60, plan.getQuantity()));
+        }
+        System.out.println("Вес выбранного плана задаётся запуску агентов: -D" + CostWeights.PROPERTY + "=<вес>");
+        ScheduleWriter.writeParetoToCSV(new File(outDir, "pareto.csv").getPath(), front);
+        ScheduleWriter.writeParetoToExcel(new File(outDir, "pareto.xlsx").getPath(), front);
+    }
+
+    /**
+     * Равномерная сетка весов от 0 до 1 из steps точек
+     */
+    public static double[] grid(int steps) {
+        if (steps < 2) {
+            return new double[]{RoutePlanningEngine.COST_WEIGHT};
+        }
+        double[] weights = new double[steps];
+        for (int i = 0; i < steps; i++) {
+            weights[i] = (double) i / (steps - 1);
+        }
+        return weights;
+    }
+
+    /**
+     * Планы для всех весов в порядке weights; планы строятся параллельно на pool
+     */
+    public static List<Plan> sweep(List<Truck> trucks, Map<String, Store> storesMap,
+                                   Map<String, List<DeliveryRequest>> demands,
+                                   double[] weights, ForkJoinPool pool) {
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+        List<Callable<Plan>> tasks = new ArrayList<>();
+        for (double weight : weights) {
+            tasks.add(() -> {
+                List<RouteState> states = RoutePlanningEngine.plan(instance,
+                        RoutePlanningEngine.identityOrder(instance.truckCount()), weight, null,
+                        new boolean[instance.lineCount()]);
+                LocalSearch.improve(states, instance);
+                return evaluate(weight, instance.snapshot(states), storesMap);
+            });
+        }
+        List<Plan> plans = new ArrayList<>();
+        try {
+            for (Future<Plan> future : pool.invokeAll(tasks)) {
+                plans.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Перебор весов прерван", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка при планировании с весом стоимости", e.getCause());
+        }
+        return plans;
+    }
+
+    /**
+     * Недоминируемые планы, по возрастанию стоимости; из одинаковых по критериям остаётся первый
+     */
+    public static List<Plan> front(List<Plan> plans) {
+        List<Plan> front = new ArrayList<>();
+        for (Plan plan : plans) {
+            boolean dominated = false;
+            for (Plan other : plans) {
+                if (other.dominates(plan)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            boolean duplicate = false;
+            for (Plan kept : front) {
+                if (kept.quantity == plan.quantity && kept.cost == plan.cost && kept.waitSeconds == plan.waitSeconds) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!dominated && !duplicate) {
+                front.add(plan);
+            }
+        }
+        front.sort(Comparator.comparingDouble(Plan::getCost));
+        return front;
+    }
+
+    private static Plan evaluate(double weight, List<DeliveryRoute> routes, Map<String, Store> storesMap) {
+        double cost = 0;
+        double distance = 0;
+        int quantity = 0;
+        long wait = 0;
+        long late = 0;
+        for (DeliveryRoute route : routes) {
+            cost += route.getTotalCost();
+            distance += route.getTotalDistance();
+            for (DeliveryRoute.RouteStop stop : route.getStops()) {
+                for (DeliveryRoute.DeliveryItem item : stop.getItems()) {
+                    quantity += item.getQuantity();
+                }
+                Store store = storesMap.get(stop.getStoreId());
+                if (store == null || stop.getArrivalTime() == null) {
+                    continue;
+                }
+                int arrival = stop.getArrivalTime().toSecondOfDay();
+                wait += Math.max(0, arrival - store.getTimeWindowStart().toSecondOfDay());
+                late += Math.max(0, arrival - store.getTimeWindowEnd().toSecondOfDay());
+            }
+        }
+        return new Plan(weight, routes, cost, distance, quantity, wait, late);
+    }
+}
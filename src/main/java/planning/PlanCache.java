@@ -0,0 +1,335 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+import util.DistanceProviders;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Дисковый кэш готовых планов
+ * Ключ - SHA-256 по всем входным данным, которые влияют на план (грузовики, магазины, товары, заказы),
+ * по ключу стратегии с её настройками (RoutePlanner.cacheKey), отпечатку источника расстояний
+ * (DistanceProviders) и способу хранения матрицы: компактная матрица округляет расстояния и времена. Для каждого плана хранятся два файла:
+ * key.plan (сериализованный список DeliveryRoute) и key.meta (ключ без заказов и отсортированные хэши строк заказов) - по ним
+ * находится ближайший прошлый план для тёплого старта.
+ * Вытеснение LRU: время последнего обращения - время изменения файла .plan.
+ * Ошибки чтения и записи кэша не прерывают планирование: запись просто считается отсутствующей.
+ */
+public class PlanCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private static final String PLAN_SUFFIX = ".plan";
+    private static final String META_SUFFIX = ".meta";
+
+    private final File dir;
+    private final int maxEntries;
+
+    public PlanCache(File dir) {
+        this(dir, DEFAULT_MAX_ENTRIES);
+    }
+
+    public PlanCache(File dir, int maxEntries) {
+        this.dir = dir;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Отпечаток входных данных
+     */
+    public static class Fingerprint {
+        // Хэш всех входных данных
+        final String key;
+        // Хэш без заказов: планы с одинаковым baseKey отличаются только строками заказов
+        final String baseKey;
+        // Отсортированные хэши строк заказов (с повторами)
+        final long[] lines;
+
+        Fingerprint(String key, String baseKey, long[] lines) {
+            this.key = key;
+            this.baseKey = baseKey;
+            this.lines = lines;
+        }
+
+        public String getKey() { return key; }
+    }
+
+    /**
+     * Ближайший прошлый план и число строк заказов, которыми он отличается
+     */
+    static class Match {
+        final List<DeliveryRoute> routes;
+        final int changedLines;
+
+        Match(List<DeliveryRoute> routes, int changedLines) {
+            this.routes = routes;
+            this.changedLines = changedLines;
+        }
+    }
+
+    /**
+     * Считает отпечаток; порядок грузовиков, магазинов и товаров не важен,
+     * порядок строк заказа внутри магазина учитывается (он влияет на план)
+     * @param planner ключ стратегии (RoutePlanner.cacheKey)
+     */
+    public static Fingerprint fingerprint(String planner, List<Truck> trucks, Map<String, Store> storesMap,
+                                          Map<String, Product> productsMap,
+                                          Map<String, List<DeliveryRequest>> demands) {
+        MessageDigest digest = sha256();
+        DataOutputStream out = new DataOutputStream(new DigestStream(digest));
+        List<Long> lines = new ArrayList<>();
+        try {
+            out.writeUTF(planner);
+            out.writeLong(DistanceProviders.current().fingerprint());
+            out.writeUTF(DistanceMatrix.layoutFor(storesMap, trucks).name());
+            List<Truck> sortedTrucks = new ArrayList<>(trucks);
+            sortedTrucks.sort(Comparator.comparing(Truck::getTruckId));
+            out.writeInt(sortedTrucks.size());
+            for (Truck truck : sortedTrucks) {
+                out.writeUTF(truck.getTruckId());
+                out.writeDouble(truck.getCapacity());
+                out.writeDouble(truck.getCostPerKm());
+                out.writeDouble(truck.getStartX());
+                out.writeDouble(truck.getStartY());
+                writeTime(out, truck.getAvailabilityStart());
+                writeTime(out, truck.getAvailabilityEnd());
+                writeTime(out, truck.getNextFreeTime());
+            }
+            out.writeInt(storesMap.size());
+            for (Store store : new TreeMap<>(storesMap).values()) {
+                out.writeUTF(store.getStoreId());
+                out.writeDouble(store.getX());
+                out.writeDouble(store.getY());
+                writeTime(out, store.getTimeWindowStart());
+                writeTime(out, store.getTimeWindowEnd());
+            }
+            out.writeInt(productsMap.size());
+            for (Product product : new TreeMap<>(productsMap).values()) {
+                out.writeUTF(product.getProductId());
+                out.writeDouble(product.getUnitWeight());
+            }
+            out.flush();
+            String baseKey = hex(((MessageDigest) digest.clone()).digest());
+
+            for (Map.Entry<String, List<DeliveryRequest>> entry : new TreeMap<>(demands).entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (DeliveryRequest request : entry.getValue()) {
+                    out.writeUTF(request.getProductId());
+                    out.writeInt(request.getQuantity());
+                    out.writeDouble(request.getTotalWeight());
+                    lines.add(lineHash(request.getStoreId(), request.getProductId(),
+                            request.getQuantity(), request.getTotalWeight()));
+                }
+            }
+            out.flush();
+            long[] sorted = new long[lines.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = lines.get(i);
+            }
+            Arrays.sort(sorted);
+            return new Fingerprint(hex(digest.digest()), baseKey, sorted);
+        } catch (IOException | CloneNotSupportedException e) {
+            throw new IllegalStateException("Не удалось посчитать отпечаток данных", e);
+        }
+    }
+
+    /**
+     * 64-битный хэш строки заказа (FNV-1a); тот же хэш считается по позициям готового плана
+     */
+    static long lineHash(String storeId, String productId, int quantity, double weight) {
+        long hash = 0xcbf29ce484222325L;
+        String text = storeId + '|' + productId + '|' + quantity + '|' + Double.doubleToLongBits(weight);
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * План по точному ключу или null; обращение продлевает жизнь записи
+     */
+    public List<DeliveryRoute> get(Fingerprint fingerprint) {
+        File plan = new File(dir, fingerprint.key + PLAN_SUFFIX);
+        if (!plan.isFile()) {
+            return null;
+        }
+        List<DeliveryRoute> routes = readPlan(plan);
+        if (routes != null) {
+            plan.setLastModified(System.currentTimeMillis());
+        }
+        return routes;
+    }
+
+    /**
+     * Ближайший план с теми же грузовиками, магазинами и товарами,
+     * отличающийся не более чем на maxChangedLines строк заказов
+     */
+    Match closest(Fingerprint fingerprint, int maxChangedLines) {
+        File[] metas = dir.listFiles((d, name) -> name.endsWith(META_SUFFIX));
+        if (metas == null) {
+            return null;
+        }
+        Arrays.sort(metas);
+        String bestKey = null;
+        int bestChanged = maxChangedLines + 1;
+        for (File meta : metas) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)))) {
+                if (!in.readUTF().equals(fingerprint.baseKey)) {
+                    continue;
+                }
+                long[] lines = new long[in.readInt()];
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = in.readLong();
+                }
+                int changed = changedLines(lines, fingerprint.lines);
+                if (changed < bestChanged) {
+                    bestChanged = changed;
+                    bestKey = meta.getName().substring(0, meta.getName().length() - META_SUFFIX.length());
+                }
+            } catch (IOException e) {
+                System.err.println("Кэш планов: не удалось прочитать " + meta + ": " + e.getMessage());
+            }
+        }
+        if (bestKey == null) {
+            return null;
+        }
+        File plan = new File(dir, bestKey + PLAN_SUFFIX);
+        List<DeliveryRoute> routes = readPlan(plan);
+        if (routes == null) {
+            return null;
+        }
+        plan.setLastModified(System.currentTimeMillis());
+        return new Match(routes, bestChanged);
+    }
+
+    /**
+     * Сохраняет план и вытесняет самые давние записи сверх maxEntries
+     */
+    public void put(Fingerprint fingerprint, List<DeliveryRoute> routes) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Кэш планов: не удалось создать каталог " + dir);
+            return;
+        }
+        try {
+            File meta = new File(dir, fingerprint.key + META_SUFFIX);
+            File metaTemp = new File(dir, fingerprint.key + META_SUFFIX + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metaTemp)))) {
+                out.writeUTF(fingerprint.baseKey);
+                out.writeInt(fingerprint.lines.length);
+                for (long line : fingerprint.lines) {
+                    out.writeLong(line);
+                }
+            }
+            File plan = new File(dir, fingerprint.key + PLAN_SUFFIX);
+            File planTemp = new File(dir, fingerprint.key + PLAN_SUFFIX + ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(planTemp)))) {
+                out.writeObject(new ArrayList<>(routes));
+            }
+            // Сначала meta, затем plan: запись без .plan при поиске пропускается
+            Files.move(metaTemp.toPath(), meta.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(planTemp.toPath(), plan.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Кэш планов: не удалось сохранить план: " + e.getMessage());
+            return;
+        }
+        evict();
+    }
+
+    private void evict() {
+        File[] plans = dir.listFiles((d, name) -> name.endsWith(PLAN_SUFFIX));
+        if (plans == null || plans.length <= maxEntries) {
+            return;
+        }
+        Arrays.sort(plans, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = maxEntries; i < plans.length; i++) {
+            String name = plans[i].getName();
+            String key = name.substring(0, name.length() - PLAN_SUFFIX.length());
+            plans[i].delete();
+            new File(dir, key + META_SUFFIX).delete();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<DeliveryRoute> readPlan(File plan) {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(plan)))) {
+            return (List<DeliveryRoute>) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("Кэш планов: повреждённая запись " + plan + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Размер симметрической разности двух отсортированных мультимножеств
+     */
+    static int changedLines(long[] a, long[] b) {
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return a.length + b.length - 2 * common;
+    }
+
+    private static void writeTime(DataOutputStream out, LocalTime time) throws IOException {
+        out.writeInt(time != null ? time.toSecondOfDay() : -1);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b & 0xff));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Поток, который только обновляет дайджест
+     */
+    private static class DigestStream extends OutputStream {
+        private final MessageDigest digest;
+
+        DigestStream(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            digest.update(bytes, offset, length);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package planning;
+
+import model.DeliveryRoute;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Управление фоновым планированием, запущенным AnytimePlanner
+ * Лучший план доступен в любой момент (getBestRoutes); cancel() останавливает поиск,
+ * и итогом становится лучший план на момент остановки.
+ */
+public class PlanningHandle {
+
+    private final long startNanos = System.nanoTime();
+    private Thread worker;
+    private final CompletableFuture<List<DeliveryRoute>> result = new CompletableFuture<>();
+
+    // Лучшее решение; маршруты принятого решения больше не изменяются, поэтому их можно читать из другого потока
+    private volatile ProblemInstance instance;
+    private volatile List<RouteState> best;
+    private volatile double bestCost = Double.NaN;
+    private volatile double bestDistance = Double.NaN;
+
+    /**
+     * Запускает задачу планирования в отдельном потоке-демоне
+     */
+    void start(Runnable task) {
+        worker = new Thread(task, "anytime-planner");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Публикует новое лучшее решение; вызывается потоком планирования
+     * Исключение обработчика не перехватывается: планирование завершается через fail(), и await() его бросит.
+     */
+    void publish(ProblemInstance instance, List<RouteState> routes, PlanningListener listener) {
+        double cost = 0;
+        double distance = 0;
+        for (RouteState route : routes) {
+            cost += route.cost(instance.matrix);
+            distance += route.totalDistance(instance.matrix);
+        }
+        this.instance = instance;
+        this.bestCost = cost;
+        this.bestDistance = distance;
+        this.best = routes;
+        if (listener != null) {
+            listener.onImprovement(cost, distance, getElapsedMillis());
+        }
+    }
+
+    void complete(List<DeliveryRoute> routes) {
+        result.complete(routes);
+    }
+
+    void fail(Throwable error) {
+        result.completeExceptionally(error);
+    }
+
+    /**
+     * Останавливает поиск; итог (await) - лучший найденный план
+     */
+    public void cancel() {
+        worker.interrupt();
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    /**
+     * Копия лучшего на данный момент плана или null, если начальный план ещё не построен
+     * Статусы заказов не изменяются.
+     */
+    public List<DeliveryRoute> getBestRoutes() {
+        List<RouteState> routes = best;
+        return routes != null ? instance.snapshot(routes) : null;
+    }
+
+    public double getBestCost() { return bestCost; }
+    public double getBestDistance() { return bestDistance; }
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Ждёт окончания планирования; доставленные заказы помечаются статусом DELIVERED
+     */
+    public List<DeliveryRoute> await() throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка фонового планирования", e.getCause());
+        }
+    }
+
+    /**
+     * Как await(), но не дольше timeout
+     * @throws TimeoutException если планирование ещё идёт
+     */
+    public List<DeliveryRoute> await(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        try {
+            return result.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка фонового планирования", e.getCause());
+        }
+    }
+}
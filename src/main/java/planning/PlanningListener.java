@@ -0,0 +1,16 @@
+package planning;
+
+/**
+ * Уведомления фонового планирования (AnytimePlanner) о новом лучшем плане
+ * Вызывается в потоке планирования; сам план можно взять через PlanningHandle.getBestRoutes().
+ * Исключение из обработчика прерывает планирование и передаётся вызывающему PlanningHandle.await().
+ */
+public interface PlanningListener {
+
+    /**
+     * @param cost стоимость нового лучшего плана
+     * @param distance суммарный пробег, включая возврат на склад
+     * @param elapsedMillis время с начала планирования
+     */
+    void onImprovement(double cost, double distance, long elapsedMillis);
+}
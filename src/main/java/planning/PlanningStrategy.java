@@ -0,0 +1,65 @@
+package planning;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Доступные стратегии планирования; выбираются на каждый запуск
+ * системным свойством delivery.strategy (имя стратегии без учёта регистра, по умолчанию greedy)
+ */
+public enum PlanningStrategy {
+    GREEDY,
+    SAVINGS,
+    // Адаптивный поиск с большой окрестностью, бюджет AlnsSolver.DEFAULT_BUDGET_MILLIS
+    ALNS,
+    // Параллельный мультистарт жадного алгоритма
+    MULTI_START,
+    // Кластеры магазинов решаются параллельно, затем исправляются границы
+    DECOMPOSITION,
+    // Магазины делятся между складами (точками старта грузовиков), склады решаются параллельно
+    MULTI_DEPOT;
+
+    public static final String PROPERTY = "delivery.strategy";
+
+    public RoutePlanner createPlanner() {
+        switch (this) {
+            case SAVINGS:
+                return new SavingsRoutePlanner();
+            case ALNS:
+                return new AlnsSolver();
+            case MULTI_START:
+                return new MultiStartPlanner();
+            case DECOMPOSITION:
+                return new DecompositionPlanner();
+            case MULTI_DEPOT:
+                return new MultiDepotPlanner();
+            case GREEDY:
+            default:
+                return new GreedyRoutePlanner();
+        }
+    }
+
+    /**
+     * Стратегия запуска по настройке PROPERTY
+     */
+    public static PlanningStrategy current() {
+        return fromName(System.getProperty(PROPERTY));
+    }
+
+    /**
+     * Стратегия по имени (без учёта регистра); null или пустая строка - жадная стратегия
+     */
+    public static PlanningStrategy fromName(String name) {
+        String value = name != null ? name.trim() : "";
+        if (value.isEmpty()) {
+            return GREEDY;
+        }
+        for (PlanningStrategy strategy : values()) {
+            if (strategy.name().equalsIgnoreCase(value)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная стратегия планирования " + PROPERTY + "=" + name
+                + ", доступны: " + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,235 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Store;
+import model.Truck;
+
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Задача планирования, скомпилированная в плотные массивы
+ * Магазины и склады нумеруются индексами матрицы расстояний, время хранится
+ * в секундах от начала суток, заказы магазинов - непрерывными строками (CSR).
+ * Экземпляр не изменяется после компиляции, поэтому его можно разделять между потоками
+ * (списки соседей и матрица допустимых пар строятся один раз при первом обращении).
+ * Алгоритмы работают только с массивами; объекты DeliveryRoute собираются в конце (toRoutes).
+ */
+final class ProblemInstance {
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    // Последняя секунда суток: рейсы не переходят через полночь
+    private static final int LAST_SECOND_OF_DAY = SECONDS_PER_DAY - 1;
+
+    final DistanceMatrix matrix;
+    // Временные окна по узлам матрицы
+    final int[] windowStart;
+    final int[] windowEnd;
+
+    // Строки заказов узла node: lineStart[node]..lineStart[node + 1] - 1
+    final int[] lineStart;
+    final DeliveryRequest[] lineRequest;
+    final double[] lineWeight;
+    final int[] lineQuantity;
+    // Суммарный спрос магазина
+    final double[] demandWeight;
+    final int[] demandQuantity;
+
+    final Truck[] trucks;
+    final double[] capacity;
+    final double[] costPerKm;
+    final int[] depot;
+    // Первый выезд грузовика и крайнее время его возврата на склад
+    final int[] availableFrom;
+    final int[] availableUntil;
+
+    // Индекс грузовика по объекту (маршруты хранят сам Truck)
+    private final Map<Truck, Integer> truckIndex = new IdentityHashMap<>();
+
+    private volatile Neighbours neighbours;
+    private volatile Feasibility feasibility;
+
+    private ProblemInstance(DistanceMatrix matrix, Map<String, Store> storesMap,
+                            Map<String, List<DeliveryRequest>> demands, List<Truck> trucks) {
+        this.matrix = matrix;
+        int size = matrix.size();
+        int storeCount = matrix.storeCount();
+
+        this.windowStart = new int[size];
+        this.windowEnd = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (i < storeCount) {
+                Store store = storesMap.get(matrix.storeId(i));
+                int start = store.getTimeWindowStart().toSecondOfDay();
+                int end = store.getTimeWindowEnd().toSecondOfDay();
+                // Окно через полночь продлеваем на следующие сутки
+                windowStart[i] = start;
+                windowEnd[i] = end >= start ? end : end + SECONDS_PER_DAY;
+            } else {
+                // Склад не ограничивает время
+                windowStart[i] = 0;
+                windowEnd[i] = 2 * SECONDS_PER_DAY;
+            }
+        }
+
+        int lineCount = 0;
+        for (int node = 0; node < storeCount; node++) {
+            List<DeliveryRequest> requests = demands.get(matrix.storeId(node));
+            lineCount += requests == null ? 0 : requests.size();
+        }
+        this.lineStart = new int[storeCount + 1];
+        this.lineRequest = new DeliveryRequest[lineCount];
+        this.lineWeight = new double[lineCount];
+        this.lineQuantity = new int[lineCount];
+        this.demandWeight = new double[storeCount];
+        this.demandQuantity = new int[storeCount];
+        int line = 0;
+        for (int node = 0; node < storeCount; node++) {
+            lineStart[node] = line;
+            List<DeliveryRequest> requests = demands.get(matrix.storeId(node));
+            if (requests == null) {
+                continue;
+            }
+            for (DeliveryRequest request : requests) {
+                lineRequest[line] = request;
+                lineWeight[line] = request.getTotalWeight();
+                lineQuantity[line] = request.getQuantity();
+                demandWeight[node] += request.getTotalWeight();
+                demandQuantity[node] += request.getQuantity();
+                line++;
+            }
+        }
+        lineStart[storeCount] = line;
+
+        int truckCount = trucks.size();
+        this.trucks = trucks.toArray(new Truck[0]);
+        this.capacity = new double[truckCount];
+        this.costPerKm = new double[truckCount];
+        this.depot = new int[truckCount];
+        this.availableFrom = new int[truckCount];
+        this.availableUntil = new int[truckCount];
+        for (int t = 0; t < truckCount; t++) {
+            Truck truck = trucks.get(t);
+            truckIndex.put(truck, t);
+            capacity[t] = truck.getCapacity();
+            costPerKm[t] = truck.getCostPerKm();
+            depot[t] = matrix.depotIndex(truck);
+            availableFrom[t] = departureTime(truck).toSecondOfDay();
+            LocalTime end = truck.getAvailabilityEnd();
+            availableUntil[t] = end != null ? Math.min(end.toSecondOfDay(), LAST_SECOND_OF_DAY) : LAST_SECOND_OF_DAY;
+        }
+    }
+
+    /**
+     * Компилирует модель; матрица расстояний строится по магазинам и грузовикам
+     */
+    static ProblemInstance compile(List<Truck> trucks, Map<String, Store> storesMap,
+                                   Map<String, List<DeliveryRequest>> demands) {
+        return compile(trucks, storesMap, demands, DistanceMatrix.build(storesMap, trucks));
+    }
+
+    static ProblemInstance compile(List<Truck> trucks, Map<String, Store> storesMap,
+                                   Map<String, List<DeliveryRequest>> demands, DistanceMatrix matrix) {
+        return new ProblemInstance(matrix, storesMap, demands, trucks);
+    }
+
+    /**
+     * Время первого выезда грузовика: начало окна доступности или nextFreeTime, если он позже
+     */
+    static LocalTime departureTime(Truck truck) {
+        LocalTime departure = truck.getAvailabilityStart() != null
+                ? truck.getAvailabilityStart() : RoutePlanningEngine.DEPARTURE_TIME;
+        if (truck.getNextFreeTime() != null && truck.getNextFreeTime().isAfter(departure)) {
+            departure = truck.getNextFreeTime();
+        }
+        return departure;
+    }
+
+    /**
+     * Гранулярные окрестности магазинов (строятся при первом обращении)
+     */
+    Neighbours neighbours() {
+        Neighbours result = neighbours;
+        if (result == null) {
+            synchronized (this) {
+                result = neighbours;
+                if (result == null) {
+                    result = Neighbours.build(this, Neighbours.DEFAULT_SIZE);
+                    neighbours = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Допустимые пары магазин x грузовик (строится при первом обращении)
+     */
+    Feasibility feasibility() {
+        Feasibility result = feasibility;
+        if (result == null) {
+            synchronized (this) {
+                result = feasibility;
+                if (result == null) {
+                    result = Feasibility.of(this);
+                    feasibility = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Индекс грузовика в trucks или -1, если грузовик не из этой задачи
+     */
+    int truckIndex(Truck truck) {
+        Integer index = truckIndex.get(truck);
+        return index != null ? index : -1;
+    }
+
+    int lineCount() {
+        return lineRequest.length;
+    }
+
+    int truckCount() {
+        return trucks.length;
+    }
+
+    /**
+     * Собирает DeliveryRoute по непустым маршрутам и помечает их заказы доставленными
+     */
+    List<DeliveryRoute> toRoutes(List<RouteState> states) {
+        List<DeliveryRoute> routes = new ArrayList<>();
+        for (RouteState state : states) {
+            if (state.size > 0) {
+                routes.add(state.toRoute(this));
+            }
+        }
+        markDelivered(states);
+        return routes;
+    }
+
+    /**
+     * Копия плана в виде DeliveryRoute с номерами ROUTE_1..ROUTE_n; маршруты и статусы заказов не изменяются
+     */
+    List<DeliveryRoute> snapshot(List<RouteState> states) {
+        List<DeliveryRoute> routes = new ArrayList<>();
+        for (RouteState state : states) {
+            if (state.size > 0) {
+                routes.add(state.toRoute(this, "ROUTE_" + (routes.size() + 1)));
+            }
+        }
+        return routes;
+    }
+
+    void markDelivered(List<RouteState> states) {
+        for (RouteState state : states) {
+            for (Visit visit : state.visits) {
+                for (DeliveryRequest request : visit.requests) {
+                    request.setStatus(DeliveryRequest.DeliveryStatus.DELIVERED);
+                }
+            }
+        }
+    }
+}
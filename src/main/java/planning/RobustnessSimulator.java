@@ -0,0 +1,377 @@
+package planning;
+
+import io.DataLoader;
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+import util.DistanceCalculator;
+import util.DistanceProvider;
+import util.DistanceProviders;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Проверка устойчивости плана к разбросу времени в пути и разгрузки (метод Монте-Карло)
+ * План проигрывается scenarios раз: каждое плечо и каждая разгрузка умножаются на случайный
+ * логнормальный множитель со средним 1 (разброс TRAVEL_SIGMA и SERVICE_SIGMA). Ранний приезд ждёт
+ * начала окна, задержка переносится на следующие остановки и следующие рейсы того же грузовика
+ * (рейс выезжает не раньше плана и не раньше возвращения предыдущего рейса).
+ * Для каждой остановки считаются вероятность приехать после конца окна и среднее опоздание.
+ * Сценарии делятся на блоки, блоки считаются параллельно; внутри блока память не выделяется.
+ *
+ * Запуск: RobustnessSimulator [каталог данных] [число сценариев]
+ * строит план стратегией запуска (PlanningStrategy.PROPERTY) и печатает итоги и самые рискованные остановки.
+ */
+public class RobustnessSimulator {
+
+    // Разброс (сигма логарифма) множителей времени в пути и разгрузки
+    public static final double TRAVEL_SIGMA = 0.2;
+    public static final double SERVICE_SIGMA = 0.15;
+    public static final int DEFAULT_SCENARIOS = 10_000;
+
+    // Сколько рискованных остановок печатать в main
+    private static final int REPORT_STOPS = 10;
+
+    // Блоков на поток: выравнивает нагрузку, если потоки работают с разной скоростью
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final double travelSigma;
+    private final double serviceSigma;
+    private final ForkJoinPool pool;
+
+    public RobustnessSimulator() {
+        this(TRAVEL_SIGMA, SERVICE_SIGMA, ForkJoinPool.commonPool());
+    }
+
+    public RobustnessSimulator(double travelSigma, double serviceSigma, ForkJoinPool pool) {
+        this.travelSigma = travelSigma;
+        this.serviceSigma = serviceSigma;
+        this.pool = pool;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String dataDir = args.length > 0 ? args[0] : "data";
+        int scenarios = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SCENARIOS;
+
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : DataLoader.loadProducts(dataDir + "/products.csv")) {
+            products.put(product.getProductId(), product);
+        }
+        Map<String, Store> stores = new HashMap<>();
+        for (Store store : DataLoader.loadStores(dataDir + "/stores.csv")) {
+            stores.put(store.getStoreId(), store);
+        }
+        List<Truck> trucks = DataLoader.loadTrucks(dataDir + "/trucks.csv");
+        Map<String, List<DeliveryRequest>> demands = DataLoader.loadDemands(dataDir + "/stores.csv", products);
+        List<DeliveryRoute> routes = PlanningStrategy.current().createPlanner()
+                .planRoutes(trucks, stores, products, demands);
+
+        long start = System.nanoTime();
+        Report report = new RobustnessSimulator().simulate(routes, trucks, stores, scenarios, 42);
+        System.out.println("Моделирование: " + report + " (" + (System.nanoTime() - start) / 1_000_000 + " мс)");
+        for (StopRisk stop : report.riskiest(REPORT_STOPS)) {
+            if (stop.getViolationProbability() == 0) {
+                break;
+            }
+            System.out.println(String.format(Locale.US, "  %s, магазин %s: опоздание с вероятностью %.1f%%, в среднем %.1f мин",
+                    stop.getRouteId(), stop.getStoreId(), stop.getViolationProbability() * 100,
+                    stop.getExpectedLatenessSeconds() / 60));
+        }
+    }
+
+    /**
+     * Риск одной остановки
+     */
+    public static class StopRisk {
+        private final String routeId;
+        private final String storeId;
+        private final double violationProbability;
+        private final double expectedLatenessSeconds;
+
+        StopRisk(String routeId, String storeId, double violationProbability, double expectedLatenessSeconds) {
+            this.routeId = routeId;
+            this.storeId = storeId;
+            this.violationProbability = violationProbability;
+            this.expectedLatenessSeconds = expectedLatenessSeconds;
+        }
+
+        public String getRouteId() { return routeId; }
+        public String getStoreId() { return storeId; }
+        public double getViolationProbability() { return violationProbability; }
+        public double getExpectedLatenessSeconds() { return expectedLatenessSeconds; }
+    }
+
+    /**
+     * Итоги моделирования: остановки в порядке маршрутов плана
+     */
+    public static class Report {
+        private final int scenarios;
+        private final List<StopRisk> stops;
+        private final double planViolationProbability;
+        private final double expectedTotalLatenessSeconds;
+
+        Report(int scenarios, List<StopRisk> stops, double planViolationProbability, double expectedTotalLatenessSeconds) {
+            this.scenarios = scenarios;
+            this.stops = stops;
+            this.planViolationProbability = planViolationProbability;
+            this.expectedTotalLatenessSeconds = expectedTotalLatenessSeconds;
+        }
+
+        public int getScenarios() { return scenarios; }
+        public List<StopRisk> getStops() { return stops; }
+        // Вероятность, что хотя бы одна остановка опоздает
+        public double getPlanViolationProbability() { return planViolationProbability; }
+        public double getExpectedTotalLatenessSeconds() { return expectedTotalLatenessSeconds; }
+
+        /**
+         * count остановок с наибольшей вероятностью опоздания
+         */
+        public List<StopRisk> riskiest(int count) {
+            List<StopRisk> sorted = new ArrayList<>(stops);
+            sorted.sort(Comparator.comparingDouble(StopRisk::getViolationProbability).reversed()
+                    .thenComparing(Comparator.comparingDouble(StopRisk::getExpectedLatenessSeconds).reversed()));
+            return sorted.subList(0, Math.min(count, sorted.size()));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "сценариев %d, остановок %d: опоздание хотя бы в одном магазине с вероятностью %.1f%%, "
+                            + "среднее суммарное опоздание %.1f мин", scenarios, stops.size(),
+                    planViolationProbability * 100, expectedTotalLatenessSeconds / 60);
+        }
+    }
+
+    /**
+     * План в плоских массивах: остановки маршрута r - stopStart[r]..stopStart[r + 1] - 1
+     * Маршруты упорядочены по грузовику и времени выезда; previous[r] - предыдущий рейс того же грузовика.
+     */
+    private static final class CompiledPlan {
+        final int routeCount;
+        final int[] stopStart;
+        final int[] departure;
+        final int[] previous;
+        final int[] returnTravel;
+        final int[] travel;
+        final int[] service;
+        final int[] windowStart;
+        final int[] windowEnd;
+        final int[] stopOrder;
+
+        CompiledPlan(List<DeliveryRoute> routes, List<Truck> trucks, Map<String, Store> storesMap) {
+            DistanceProvider distances = DistanceProviders.current();
+            Map<String, Truck> trucksById = new HashMap<>();
+            for (Truck truck : trucks) {
+                trucksById.put(truck.getTruckId(), truck);
+            }
+            // Порядок проигрывания: по грузовику и времени выезда; номера остановок - в порядке плана
+            Integer[] order = new Integer[routes.size()];
+            int[] planStopStart = new int[routes.size() + 1];
+            for (int r = 0; r < routes.size(); r++) {
+                order[r] = r;
+                planStopStart[r + 1] = planStopStart[r] + routes.get(r).getStops().size();
+            }
+            Arrays.sort(order, Comparator.comparing((Integer r) -> routes.get(r).getTruckId())
+                    .thenComparing(r -> routes.get(r).getDepartureTime()));
+
+            int stopCount = planStopStart[routes.size()];
+            routeCount = routes.size();
+            stopStart = new int[routeCount + 1];
+            departure = new int[routeCount];
+            previous = new int[routeCount];
+            returnTravel = new int[routeCount];
+            travel = new int[stopCount];
+            service = new int[stopCount];
+            windowStart = new int[stopCount];
+            windowEnd = new int[stopCount];
+            stopOrder = new int[stopCount];
+
+            int stop = 0;
+            for (int r = 0; r < routeCount; r++) {
+                DeliveryRoute route = routes.get(order[r]);
+                Truck truck = trucksById.get(route.getTruckId());
+                stopStart[r] = stop;
+                departure[r] = route.getDepartureTime().toSecondOfDay();
+                previous[r] = r > 0 && routes.get(order[r - 1]).getTruckId().equals(route.getTruckId()) ? r - 1 : -1;
+                int planStop = planStopStart[order[r]];
+                DeliveryRoute.RouteStop last = null;
+                for (DeliveryRoute.RouteStop routeStop : route.getStops()) {
+                    Store store = storesMap.get(routeStop.getStoreId());
+                    if (store == null) {
+                        throw new IllegalArgumentException("Магазин маршрута не найден: " + routeStop.getStoreId());
+                    }
+                    int quantity = 0;
+                    for (DeliveryRoute.DeliveryItem item : routeStop.getItems()) {
+                        quantity += item.getQuantity();
+                    }
+                    travel[stop] = DistanceCalculator.calculateTravelTime(routeStop.getDistanceFromPreviousStop());
+                    service[stop] = DistanceCalculator.calculateServiceTime(quantity);
+                    windowStart[stop] = store.getTimeWindowStart().toSecondOfDay();
+                    windowEnd[stop] = store.getTimeWindowEnd().toSecondOfDay();
+                    stopOrder[stop] = planStop++;
+                    stop++;
+                    last = routeStop;
+                }
+                returnTravel[r] = last != null && truck != null
+                        ? DistanceCalculator.calculateTravelTime(distances.distance(
+                                last.getX(), last.getY(), truck.getStartX(), truck.getStartY()))
+                        : 0;
+            }
+            stopStart[routeCount] = stop;
+        }
+    }
+
+    /**
+     * Счётчики одного блока сценариев (индексы остановок - в порядке плана)
+     */
+    private static final class Tally {
+        final long[] violations;
+        final double[] lateness;
+        long planViolations;
+        double totalLateness;
+
+        Tally(int stopCount) {
+            violations = new long[stopCount];
+            lateness = new double[stopCount];
+        }
+
+        Tally add(Tally other) {
+            for (int i = 0; i < violations.length; i++) {
+                violations[i] += other.violations[i];
+                lateness[i] += other.lateness[i];
+            }
+            planViolations += other.planViolations;
+            totalLateness += other.totalLateness;
+            return this;
+        }
+    }
+
+    /**
+     * Нормальные случайные числа (Бокс-Мюллер над SplitMix64)
+     * Генератор переинициализируется для каждого сценария без выделения памяти.
+     */
+    private static final class Gaussian {
+        private long state;
+        private double spare;
+        private boolean hasSpare;
+
+        void reset(long seed) {
+            state = seed;
+            hasSpare = false;
+        }
+
+        double next() {
+            if (hasSpare) {
+                hasSpare = false;
+                return spare;
+            }
+            double u = 1.0 - uniform();
+            double v = uniform();
+            double radius = Math.sqrt(-2 * Math.log(u));
+            spare = radius * Math.sin(2 * Math.PI * v);
+            hasSpare = true;
+            return radius * Math.cos(2 * Math.PI * v);
+        }
+
+        // Равномерное число из [0, 1)
+        private double uniform() {
+            long z = state += 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+            return (z >>> 11) * 0x1.0p-53;
+        }
+    }
+
+    public Report simulate(List<DeliveryRoute> routes, List<Truck> trucks, Map<String, Store> storesMap) {
+        return simulate(routes, trucks, storesMap, DEFAULT_SCENARIOS, 42);
+    }
+
+    /**
+     * Проигрывает план scenarios раз; выборка сценариев зависит только от seed, а не от числа потоков
+     */
+    public Report simulate(List<DeliveryRoute> routes, List<Truck> trucks, Map<String, Store> storesMap,
+                           int scenarios, long seed) {
+        CompiledPlan plan = new CompiledPlan(routes, trucks, storesMap);
+        int stopCount = plan.travel.length;
+        int chunks = Math.max(1, Math.min(scenarios, pool.getParallelism() * CHUNKS_PER_THREAD));
+
+        Tally total;
+        try {
+            total = pool.submit(() -> IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> {
+                        int from = (int) ((long) scenarios * chunk / chunks);
+                        int to = (int) ((long) scenarios * (chunk + 1) / chunks);
+                        return run(plan, from, to, seed);
+                    })
+                    .reduce(Tally::add)
+                    .orElseGet(() -> new Tally(stopCount))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Моделирование прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка моделирования", e.getCause());
+        }
+
+        List<StopRisk> stops = new ArrayList<>(stopCount);
+        int index = 0;
+        for (DeliveryRoute route : routes) {
+            for (DeliveryRoute.RouteStop stop : route.getStops()) {
+                stops.add(new StopRisk(route.getRouteId(), stop.getStoreId(),
+                        (double) total.violations[index] / scenarios, total.lateness[index] / scenarios));
+                index++;
+            }
+        }
+        return new Report(scenarios, stops, (double) total.planViolations / scenarios, total.totalLateness / scenarios);
+    }
+
+    /**
+     * Сценарии from..to-1; у каждого сценария свой генератор, поэтому разбиение на блоки не влияет на результат
+     */
+    private Tally run(CompiledPlan plan, int from, int to, long seed) {
+        Tally tally = new Tally(plan.travel.length);
+        int[] returnAt = new int[plan.routeCount];
+        Gaussian gaussian = new Gaussian();
+        int loading = DistanceCalculator.calculateLoadingTime();
+        double travelShift = travelSigma * travelSigma / 2;
+        double serviceShift = serviceSigma * serviceSigma / 2;
+
+        for (int scenario = from; scenario < to; scenario++) {
+            gaussian.reset(seed * 0x9E3779B97F4A7C15L + (long) scenario * 0xD1B54A32D192ED03L);
+            boolean violated = false;
+            for (int r = 0; r < plan.routeCount; r++) {
+                int start = plan.departure[r];
+                if (plan.previous[r] >= 0) {
+                    start = Math.max(start, returnAt[plan.previous[r]]);
+                }
+                double time = start + loading;
+                for (int s = plan.stopStart[r]; s < plan.stopStart[r + 1]; s++) {
+                    time += plan.travel[s] * Math.exp(travelSigma * gaussian.next() - travelShift);
+                    if (time < plan.windowStart[s]) {
+                        time = plan.windowStart[s];
+                    }
+                    double late = time - plan.windowEnd[s];
+                    if (late > 0) {
+                        int stop = plan.stopOrder[s];
+                        tally.violations[stop]++;
+                        tally.lateness[stop] += late;
+                        tally.totalLateness += late;
+                        violated = true;
+                    }
+                    time += plan.service[s] * Math.exp(serviceSigma * gaussian.next() - serviceShift);
+                }
+                time += plan.returnTravel[r] * Math.exp(travelSigma * gaussian.next() - travelShift);
+                returnAt[r] = (int) Math.ceil(time);
+            }
+            if (violated) {
+                tally.planViolations++;
+            }
+        }
+        return tally;
+    }
+}
@@ -0,0 +1,31 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Стратегия планирования маршрутов доставки
+ * Принимает те же данные, что и RoutePlanningEngine.planRoutes
+ */
+public interface RoutePlanner {
+
+    List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands);
+
+    /**
+     * Имя стратегии вместе с настройками, влияющими на план (ключ PlanCache):
+     * стратегии с параметрами (бюджет, seed, число запусков) должны его переопределить
+     */
+    default String cacheKey() {
+        return getClass().getName();
+    }
+}
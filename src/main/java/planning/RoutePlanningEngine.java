@@ -8,12 +8,16 @@ import java.util.*;
 
 /**
  * Алгоритм планирования маршрутов доставки
- * Использует жадный алгоритм: ближайший магазин первым, с учётом временных окон
+ * Использует жадный алгоритм: ближайший магазин первым, с учётом временных окон,
+ * после чего маршруты улучшаются локальным поиском (LocalSearch).
+ * Грузовик может сделать несколько рейсов, пока не закроется его окно доступности.
+ * Планирование идёт по скомпилированной задаче (ProblemInstance): индексы узлов и секунды вместо
+ * объектов модели; DeliveryRoute собираются только из готового плана.
  */
 public class RoutePlanningEngine {
 
-    private static final int DEPOT_X = 0;
-    private static final int DEPOT_Y = 0;
+    // Выезд со склада по умолчанию, если у грузовика не задано окно доступности
+    static final LocalTime DEPARTURE_TIME = LocalTime.of(9, 0);
 
     /**
      * Основной метод планирования
@@ -23,293 +27,292 @@ public class RoutePlanningEngine {
             Map<String, Store> storesMap,
             Map<String, Product> productsMap,
             Map<String, List<DeliveryRequest>> demands) {
-
-        List<DeliveryRoute> routes = new ArrayList<>();
-        Map<String, List<DeliveryRequest>> remainingDemands = new HashMap<>(demands);
-
-        LocalTime departureTime = LocalTime.of(9, 0);  // Выезд со склада в 9:00
-        int routeCounter = 0;
-
-        // Для каждого грузовика формируем маршрут
-        for (Truck truck : trucks) {
-            if (remainingDemands.isEmpty()) {
-                break;
-            }
-
-            DeliveryRoute route = buildRoute(
-                ++routeCounter,
-                truck,
-                storesMap,
-                productsMap,
-                remainingDemands,
-                departureTime
-            );
-
-            if (!route.getStops().isEmpty()) {
-                routes.add(route);
-            }
-        }
-
-        return routes;
+        return planRoutes(trucks, storesMap, productsMap, demands, COST_WEIGHT, null);
     }
 
     /**
-     * Строит маршрут для одного грузовика
+     * Планирование с заданным весом стоимости (вес времени = 1 - costWeight)
+     * Если random не null, близкие по score магазины выбираются случайно.
+     * Списки заказов в demands не изменяются; доставленные заказы помечаются статусом DELIVERED.
      */
-    private static DeliveryRoute buildRoute(
-            int routeId,
-            Truck truck,
+    public static List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
             Map<String, Store> storesMap,
             Map<String, Product> productsMap,
-            Map<String, List<DeliveryRequest>> remainingDemands,
-            LocalTime departureTime) {
-
-        DeliveryRoute route = new DeliveryRoute(
-            "ROUTE_" + routeId,
-            truck.getTruckId(),
-            departureTime
-        );
-
-        double currentX = truck.getStartX();
-        double currentY = truck.getStartY();
-        LocalTime currentTime = departureTime;
-        
-        // Добавляем время погрузки на базе (10 минут) перед началом маршрута
-        int loadingTimeSeconds = DistanceCalculator.calculateLoadingTime();
-        currentTime = currentTime.plusSeconds(loadingTimeSeconds);
-        
-        double currentLoad = 0;
-        double totalDistance = 0;
-
-        // Оптимизация с учетом стоимости и времени доставки
-        while (true) {
-            String nextStoreId = findNearestStore(
-                currentX, currentY, currentTime, currentLoad, truck.getCapacity(),
-                truck.getCostPerKm(), truck.getStartX(), truck.getStartY(),
-                storesMap, productsMap, remainingDemands
-            );
-
-            if (nextStoreId == null) {
-                break;  // Нет больше доступных магазинов
-            }
+            Map<String, List<DeliveryRequest>> demands,
+            double costWeight,
+            Random random) {
+
+        // Модель компилируется в массивы один раз на весь запуск планирования
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+        List<RouteState> states = plan(instance, identityOrder(instance.truckCount()), costWeight, random,
+                new boolean[instance.lineCount()]);
+
+        // Улучшаем жадные маршруты локальным поиском (2-opt, Or-opt, перенос и обмен между маршрутами)
+        LocalSearch.improve(states, instance);
+        return instance.toRoutes(states);
+    }
 
-            Store store = storesMap.get(nextStoreId);
-            List<DeliveryRequest> storeRequests = remainingDemands.get(nextStoreId);
+    /**
+     * Жадный план по скомпилированной задаче
+     * @param truckOrder порядок, в котором грузовики получают рейсы (индексы instance.trucks)
+     * @param planned сюда отмечаются запланированные строки заказов
+     */
+    static List<RouteState> plan(ProblemInstance instance, int[] truckOrder, double costWeight,
+                                 Random random, boolean[] planned) {
+        return new Greedy(instance, costWeight, random, planned).run(truckOrder);
+    }
 
-            // Рассчитываем расстояние до магазина
-            double distanceToStore = DistanceCalculator.calculateDistance(
-                currentX, currentY, store.getX(), store.getY()
-            );
+    static int[] identityOrder(int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
 
-            // Время в пути
-            int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distanceToStore);
-            LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
+    /**
+     * Коэффициент веса для стоимости (0.0 - только время, 1.0 - только стоимость)
+     * 0.3 означает 30% веса на стоимость, 70% на время доставки; настройка запуска - CostWeights.PROPERTY
+     */
+    static final double COST_WEIGHT = CostWeights.current(0.3);
 
-            // Проверяем, можем ли мы попасть в временное окно магазина
-            if (!store.isWithinTimeWindow(arrivalTime)) {
-                // Пытаемся приехать в начало временного окна
-                arrivalTime = store.getTimeWindowStart();
-            }
+    /**
+     * Разброс score, в пределах которого магазины считаются равноценными при случайном выборе
+     */
+    private static final double TIE_NOISE = 0.02;
 
-            // Создаём остановку
-            DeliveryRoute.RouteStop stop = new DeliveryRoute.RouteStop(
-                nextStoreId, store.getX(), store.getY()
-            );
-            stop.setDistanceFromPreviousStop(distanceToStore);
-            stop.setArrivalTime(arrivalTime);
-
-            // Добавляем товары в остановку
-            double stopLoadWeight = 0;
-            List<DeliveryRequest> delivered = new ArrayList<>();
-
-            for (DeliveryRequest request : storeRequests) {
-                Product product = productsMap.get(request.getProductId());
-
-                if (currentLoad + stopLoadWeight + request.getTotalWeight() <= truck.getCapacity()) {
-                    DeliveryRoute.DeliveryItem item = new DeliveryRoute.DeliveryItem(
-                        request.getProductId(),
-                        request.getQuantity(),
-                        request.getTotalWeight()
-                    );
-                    stop.addItem(item);
-                    stopLoadWeight += request.getTotalWeight();
-                    delivered.add(request);
-                    request.setStatus(DeliveryRequest.DeliveryStatus.DELIVERED);
-                }
-            }
+    /**
+     * Сколько ближайших магазинов оценивается на каждом шаге жадного алгоритма
+     */
+    private static final int CANDIDATE_COUNT = 32;
 
-            // Если ничего не добавили, пропускаем этот магазин
-            // (возможно, товары не помещаются в грузовик)
-            if (stop.getItems().isEmpty()) {
-                // Удаляем только те заказы, которые были доставлены (если есть)
-                if (!delivered.isEmpty()) {
-                    remainingDemands.get(nextStoreId).removeAll(delivered);
-                    if (remainingDemands.get(nextStoreId).isEmpty()) {
-                        remainingDemands.remove(nextStoreId);
+    /**
+     * Состояние одного запуска жадного алгоритма (буферы переиспользуются между шагами)
+     */
+    static class Greedy {
+        private final ProblemInstance instance;
+        private final DistanceMatrix matrix;
+        private final double costWeight;
+        private final Random random;
+        private final boolean[] planned;
+        // Сколько незапланированных строк осталось у магазина
+        private final int[] remainingLines;
+        private final SpatialGrid grid;
+        private final Feasibility feasibility;
+
+        private int[] nearest = new int[CANDIDATE_COUNT];
+        private final int[] candidates = new int[CANDIDATE_COUNT];
+        private final double[] costs = new double[CANDIDATE_COUNT];
+        private final int[] times = new int[CANDIDATE_COUNT];
+
+        Greedy(ProblemInstance instance, double costWeight, Random random, boolean[] planned) {
+            this.instance = instance;
+            this.matrix = instance.matrix;
+            this.costWeight = costWeight;
+            this.random = random;
+            this.planned = planned;
+            this.remainingLines = new int[matrix.storeCount()];
+
+            // Пространственный индекс по магазинам, у которых есть заказы
+            int[] nodes = new int[matrix.storeCount()];
+            int count = 0;
+            for (int node = 0; node < matrix.storeCount(); node++) {
+                for (int line = instance.lineStart[node]; line < instance.lineStart[node + 1]; line++) {
+                    if (!planned[line]) {
+                        remainingLines[node]++;
                     }
                 }
-                // Пропускаем этот магазин и ищем следующий
-                continue;
+                if (remainingLines[node] > 0) {
+                    nodes[count++] = node;
+                }
             }
+            this.grid = new SpatialGrid(matrix, Arrays.copyOf(nodes, count));
+            this.feasibility = instance.feasibility();
+        }
 
-            // Время обслуживания (разгрузка зависит от количества товаров)
-            int totalItems = stop.getItems().stream().mapToInt(DeliveryRoute.DeliveryItem::getQuantity).sum();
-            int serviceTime = DistanceCalculator.calculateServiceTime(totalItems);
-            LocalTime departTime = arrivalTime.plusSeconds(serviceTime);
-            stop.setDepartureTime(departTime);
-
-            route.addStop(stop);
-            currentLoad += stopLoadWeight;
-            totalDistance += distanceToStore;
-            currentX = store.getX();
-            currentY = store.getY();
-            currentTime = departTime;
-
-            // Удаляем доставленные заказы
-            remainingDemands.get(nextStoreId).removeAll(delivered);
-            if (remainingDemands.get(nextStoreId).isEmpty()) {
-                remainingDemands.remove(nextStoreId);
+        List<RouteState> run(int[] truckOrder) {
+            List<RouteState> trips = new ArrayList<>();
+            // Время, с которого грузовик свободен для следующего рейса
+            int[] freeAt = new int[instance.truckCount()];
+            boolean[] finished = new boolean[instance.truckCount()];
+            for (int t = 0; t < freeAt.length; t++) {
+                freeAt[t] = instance.availableFrom[t];
             }
-        }
 
-        // Возврат на склад
-        double distanceToDepot = 0;
-        if (!route.getStops().isEmpty()) {
-            distanceToDepot = DistanceCalculator.calculateDistance(
-                currentX, currentY, truck.getStartX(), truck.getStartY()
-            );
-            totalDistance += distanceToDepot;
-
-            int returnTime = DistanceCalculator.calculateTravelTime(distanceToDepot);
-            LocalTime returnTime_local = currentTime.plusSeconds(returnTime);
-            route.setEstimatedReturnTime(returnTime_local);
+            // Рейсы формируются по кругу: сначала первый рейс каждого грузовика, затем вторые и т.д.,
+            // пока остаются заказы и хотя бы один грузовик успевает сделать ещё рейс
+            boolean built = true;
+            while (built && grid.activeCount() > 0) {
+                built = false;
+                for (int t : truckOrder) {
+                    if (finished[t] || grid.activeCount() == 0) {
+                        continue;
+                    }
+                    RouteState trip = buildTrip("ROUTE_" + (trips.size() + 1), t, freeAt[t]);
+                    if (trip.size == 0) {
+                        finished[t] = true;  // До конца окна доступности рейс уже не сделать
+                        continue;
+                    }
+                    trips.add(trip);
+                    built = true;
+                    // Следующий рейс начинается с возвращения на склад (погрузка учитывается в buildTrip)
+                    freeAt[t] = trip.returnTime(instance);
+                }
+            }
+            return trips;
         }
 
-        route.setTotalDistance(totalDistance);
-        
-        // Рассчитываем стоимость с учетом обратного пути * 0.7
-        if (!route.getStops().isEmpty() && distanceToDepot > 0) {
-            // Стоимость = путь туда (все расстояния между точками) + обратный путь от последней точки до базы * 0.7
-            double forwardDistance = totalDistance - distanceToDepot; // Расстояние без обратного пути
-            double cost = DistanceCalculator.calculateCostWithReturn(forwardDistance, distanceToDepot, truck.getCostPerKm());
-            route.setTotalCost(cost);
-        } else {
-            route.setTotalCost(0);
-        }
+        /**
+         * Строит один рейс грузовика t с выездом в departure (секунды от начала суток)
+         * Рейс заканчивается возвратом на склад не позже конца окна доступности грузовика.
+         */
+        private RouteState buildTrip(String routeId, int t, int departure) {
+            RouteState trip = new RouteState(routeId, instance.trucks[t], LocalTime.ofSecondOfDay(departure), matrix);
+            int depot = instance.depot[t];
+            int latestReturn = instance.availableUntil[t];
+            double capacity = instance.capacity[t];
+
+            // Время погрузки на базе (10 минут) перед началом маршрута
+            int time = departure + DistanceCalculator.calculateLoadingTime();
+            if (time > latestReturn) {
+                return trip;  // Окно доступности закрывается раньше, чем закончится погрузка
+            }
+            int current = depot;
+            double load = 0;
+
+            // Оптимизация с учетом стоимости и времени доставки
+            while (true) {
+                int next = findNearestStore(t, current, time, load, capacity, instance.costPerKm[t], depot, latestReturn);
+                if (next < 0) {
+                    break;  // Нет больше доступных магазинов
+                }
 
-        return route;
-    }
+                int arrival = Math.max(time + matrix.travelTime(current, next), instance.windowStart[next]);
+                // Время на разгрузку, после которой грузовик ещё успевает вернуться на склад
+                int serviceBudget = latestReturn - arrival - matrix.travelTime(next, depot);
+
+                // Берём строки заказа, которые помещаются в грузовик и по времени разгрузки
+                List<DeliveryRequest> taken = new ArrayList<>(instance.lineStart[next + 1] - instance.lineStart[next]);
+                double stopWeight = 0;
+                int stopQuantity = 0;
+                for (int line = instance.lineStart[next]; line < instance.lineStart[next + 1]; line++) {
+                    if (planned[line]) continue;
+                    if (load + stopWeight + instance.lineWeight[line] <= capacity
+                            && DistanceCalculator.calculateServiceTime(stopQuantity + instance.lineQuantity[line]) <= serviceBudget) {
+                        planned[line] = true;
+                        remainingLines[next]--;
+                        stopWeight += instance.lineWeight[line];
+                        stopQuantity += instance.lineQuantity[line];
+                        taken.add(instance.lineRequest[line]);
+                    }
+                }
+                if (remainingLines[next] == 0) {
+                    grid.remove(next);
+                }
 
-    /**
-     * Коэффициент веса для стоимости (0.0 - только время, 1.0 - только стоимость)
-     * 0.3 означает 30% веса на стоимость, 70% на время доставки
-     */
-    private static final double COST_WEIGHT = 0.3;
-    private static final double TIME_WEIGHT = 1.0 - COST_WEIGHT;
+                Visit visit = Visit.fromRequests(next, taken);
+                trip.visits.add(visit);
+                load += stopWeight;
+                current = next;
+                time = arrival + visit.service;
+            }
 
-    /**
-     * Находит оптимальный магазин с учетом стоимости и времени доставки
-     */
-    private static String findNearestStore(
-            double currentX, double currentY,
-            LocalTime currentTime, double currentLoad, double capacity,
-            double costPerKm, double depotX, double depotY,
-            Map<String, Store> storesMap,
-            Map<String, Product> productsMap,
-            Map<String, List<DeliveryRequest>> remainingDemands) {
-
-        String bestStoreId = null;
-        double bestScore = Double.MAX_VALUE;
-        
-        // Для нормализации находим максимальные значения стоимости и времени
-        double maxCost = 0;
-        long maxTimeSeconds = 0;
-        
-        // Первый проход: находим максимальные значения для нормализации
-        for (Map.Entry<String, List<DeliveryRequest>> entry : remainingDemands.entrySet()) {
-            if (entry.getValue().isEmpty()) continue;
-
-            String storeId = entry.getKey();
-            Store store = storesMap.get(storeId);
+            trip.update(instance);
+            return trip;
+        }
 
+        /**
+         * Находит оптимальный магазин с учетом стоимости и времени доставки
+         * Оцениваются только CANDIDATE_COUNT ближайших магазинов, в которые помещается хотя бы один заказ,
+         * чьё временное окно ещё открыто и после обслуживания которых грузовик успевает вернуться на склад к latestReturn
+         * Магазины, недопустимые для грузовика truck (Feasibility), пропускаются без расчёта времени.
+         * @return индекс магазина в матрице или -1
+         */
+        int findNearestStore(int truck, int current, int time, double load, double capacity,
+                                     double costPerKm, int depot, int latestReturn) {
             // Проверяем, поместится ли хотя бы один заказ (частичные доставки допускаются)
-            double remainingCapacity = capacity - currentLoad;
-            boolean hasFittableRequest = entry.getValue().stream()
-                    .anyMatch(req -> req.getTotalWeight() <= remainingCapacity);
-            if (!hasFittableRequest) {
-                continue;  // Ничего не помещается в текущий грузовик
+            double remainingCapacity = capacity - load;
+            int candidateCount;
+            int k = CANDIDATE_COUNT;
+            while (true) {
+                if (nearest.length < k) {
+                    nearest = new int[k];
+                }
+                int found = grid.nearest(matrix.x(current), matrix.y(current), k, nearest);
+                candidateCount = 0;
+                for (int i = 0; i < found && candidateCount < CANDIDATE_COUNT; i++) {
+                    int store = nearest[i];
+                    if (!feasibility.allows(store, truck)) {
+                        continue;
+                    }
+                    int arrival = time + matrix.travelTime(current, store);
+                    if (arrival > latestReturn || arrival > instance.windowEnd[store]) {
+                        continue;  // Окно магазина уже закрыто
+                    }
+                    // Учитываем ожидание до начала окна магазина
+                    arrival = Math.max(arrival, instance.windowStart[store]);
+                    int serviceBudget = latestReturn - arrival - matrix.travelTime(store, depot);
+                    if (hasFittableLine(store, remainingCapacity, serviceBudget)) {
+                        times[candidateCount] = arrival - time;
+                        candidates[candidateCount++] = store;
+                    }
+                }
+                // Если среди ближайших нет подходящих, расширяем поиск
+                if (candidateCount > 0 || found < k) {
+                    break;
+                }
+                k *= 2;
             }
 
-            double distance = DistanceCalculator.calculateDistance(
-                currentX, currentY, store.getX(), store.getY()
-            );
-            
-            // Стоимость: путь туда + обратный путь от магазина до базы * 0.7
-            double distanceFromStoreToBase = DistanceCalculator.calculateDistance(
-                    store.getX(), store.getY(), depotX, depotY
-            );
-            double cost = DistanceCalculator.calculateCostWithReturn(distance, distanceFromStoreToBase, costPerKm);
-            int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
-            LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
-            
-            // Учитываем ожидание до начала окна магазина
-            if (arrivalTime.isBefore(store.getTimeWindowStart())) {
-                long waitSeconds = java.time.Duration.between(arrivalTime, store.getTimeWindowStart()).getSeconds();
-                travelTimeSeconds += waitSeconds;
+            if (candidateCount == 0) {
+                return -1;
             }
-            
-            maxCost = Math.max(maxCost, cost);
-            maxTimeSeconds = Math.max(maxTimeSeconds, travelTimeSeconds);
-        }
-        
-        // Второй проход: выбираем лучший магазин по комбинированному критерию
-        for (Map.Entry<String, List<DeliveryRequest>> entry : remainingDemands.entrySet()) {
-            if (entry.getValue().isEmpty()) continue;
-
-            String storeId = entry.getKey();
-            Store store = storesMap.get(storeId);
 
-            // Проверяем, поместится ли хотя бы один заказ (частичные доставки допускаются)
-            double remainingCapacity = capacity - currentLoad;
-            boolean hasFittableRequest = entry.getValue().stream()
-                    .anyMatch(req -> req.getTotalWeight() <= remainingCapacity);
-            if (!hasFittableRequest) {
-                continue;  // Ничего не помещается в текущий грузовик
+            // Для нормализации находим максимальные значения стоимости и времени
+            double maxCost = 0;
+            int maxTime = 0;
+
+            // Первый проход: стоимость для каждого кандидата
+            for (int i = 0; i < candidateCount; i++) {
+                int store = candidates[i];
+                // Стоимость: путь туда + обратный путь от магазина до базы * 0.7
+                costs[i] = DistanceCalculator.calculateCostWithReturn(
+                        matrix.distance(current, store), matrix.distance(store, depot), costPerKm);
+                maxCost = Math.max(maxCost, costs[i]);
+                maxTime = Math.max(maxTime, times[i]);
             }
 
-            double distance = DistanceCalculator.calculateDistance(
-                currentX, currentY, store.getX(), store.getY()
-            );
-            
-            // Рассчитываем стоимость: путь туда + обратный путь от магазина до базы * 0.7
-            double distanceFromStoreToBase = DistanceCalculator.calculateDistance(
-                    store.getX(), store.getY(), depotX, depotY
-            );
-            double cost = DistanceCalculator.calculateCostWithReturn(distance, distanceFromStoreToBase, costPerKm);
-            
-            // Рассчитываем время доставки
-            int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
-            LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
-            
-            // Учитываем ожидание до начала окна магазина
-            if (arrivalTime.isBefore(store.getTimeWindowStart())) {
-                long waitSeconds = java.time.Duration.between(arrivalTime, store.getTimeWindowStart()).getSeconds();
-                travelTimeSeconds += waitSeconds;
-            }
-            
-            // Нормализуем значения (избегаем деления на ноль)
-            double normalizedCost = maxCost > 0 ? cost / maxCost : 0;
-            double normalizedTime = maxTimeSeconds > 0 ? (double)travelTimeSeconds / maxTimeSeconds : 0;
-            
-            // Комбинированный score: меньше = лучше
-            double score = COST_WEIGHT * normalizedCost + TIME_WEIGHT * normalizedTime;
-
-            if (score < bestScore) {
-                bestScore = score;
-                bestStoreId = storeId;
+            // Второй проход: выбираем лучший магазин по комбинированному критерию
+            int best = -1;
+            double bestScore = Double.MAX_VALUE;
+            for (int i = 0; i < candidateCount; i++) {
+                // Нормализуем значения (избегаем деления на ноль)
+                double normalizedCost = maxCost > 0 ? costs[i] / maxCost : 0;
+                double normalizedTime = maxTime > 0 ? (double) times[i] / maxTime : 0;
+
+                // Комбинированный score: меньше = лучше
+                double score = costWeight * normalizedCost + (1.0 - costWeight) * normalizedTime;
+                if (random != null) {
+                    score += TIE_NOISE * random.nextDouble();
+                }
+
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = candidates[i];
+                }
             }
+            return best;
         }
 
-        return bestStoreId;
+        private boolean hasFittableLine(int store, double remainingCapacity, int serviceBudget) {
+            for (int line = instance.lineStart[store]; line < instance.lineStart[store + 1]; line++) {
+                if (!planned[line] && instance.lineWeight[line] <= remainingCapacity
+                        && DistanceCalculator.calculateServiceTime(instance.lineQuantity[line]) <= serviceBudget) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
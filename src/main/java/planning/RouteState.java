@@ -0,0 +1,314 @@
+package planning;
+
+import model.DeliveryRoute;
+import model.Truck;
+import util.DistanceCalculator;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Рабочее представление маршрута для улучшающих алгоритмов
+ * Кроме последовательности посещений хранит префиксные и суффиксные сводки
+ * (TimeWindowSegment, пробег, загрузка), чтобы изменение маршрута проверялось за O(1).
+ * После любого изменения visits нужно вызвать update().
+ */
+class RouteState {
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    String routeId;
+    final Truck truck;
+    final LocalTime departureTime;
+    final int depot;
+    // Время готовности к выезду (после погрузки) и крайнее время возврата на склад
+    // Для рейса, за которым следует другой рейс того же грузовика, end - выезд следующего рейса
+    final int start;
+    int end;
+    final double capacity;
+    final double costPerKm;
+    final List<Visit> visits = new ArrayList<>();
+
+    int size;
+    int[] nodes = new int[0];
+    // pre[i]: склад + посещения 0..i-1; suf[i]: посещения i..size-1 + возврат на склад
+    TimeWindowSegment[] pre = new TimeWindowSegment[0];
+    TimeWindowSegment[] suf = new TimeWindowSegment[0];
+    // cum[i]: пробег от склада до посещения i-1 включительно
+    double[] cum = new double[0];
+    double load;
+    int timeWarp;
+
+    // Буферы update и bestInsertion: маршрут не используется из нескольких потоков одновременно
+    private final TimeWindowSegment scratch = new TimeWindowSegment();
+    private final TimeWindowSegment check = new TimeWindowSegment();
+
+    RouteState(String routeId, Truck truck, LocalTime departureTime, DistanceMatrix matrix) {
+        this.routeId = routeId;
+        this.truck = truck;
+        this.departureTime = departureTime;
+        this.depot = matrix.depotIndex(truck);
+        this.start = departureTime.toSecondOfDay() + DistanceCalculator.calculateLoadingTime();
+        LocalTime availabilityEnd = truck.getAvailabilityEnd();
+        this.end = availabilityEnd != null && availabilityEnd.isAfter(departureTime)
+                ? availabilityEnd.toSecondOfDay() : SECONDS_PER_DAY;
+        this.capacity = truck.getCapacity();
+        this.costPerKm = truck.getCostPerKm();
+    }
+
+    static RouteState of(DeliveryRoute route, Truck truck, ProblemInstance instance) {
+        RouteState state = new RouteState(route.getRouteId(), truck, route.getDepartureTime(), instance.matrix);
+        for (DeliveryRoute.RouteStop stop : route.getStops()) {
+            state.visits.add(Visit.of(stop, instance.matrix));
+        }
+        state.update(instance);
+        return state;
+    }
+
+    /**
+     * Рейсы одного грузовика должны возвращаться на склад до выезда его следующего рейса
+     */
+    static void chainTrips(List<RouteState> states, ProblemInstance instance) {
+        Map<Truck, List<RouteState>> byTruck = new IdentityHashMap<>();
+        for (RouteState state : states) {
+            byTruck.computeIfAbsent(state.truck, key -> new ArrayList<>()).add(state);
+        }
+        for (List<RouteState> trips : byTruck.values()) {
+            trips.sort(Comparator.comparing((RouteState state) -> state.departureTime));
+            for (int i = 0; i + 1 < trips.size(); i++) {
+                trips.get(i).limitEnd(trips.get(i + 1).departureTime.toSecondOfDay(), instance);
+            }
+        }
+    }
+
+    /**
+     * Ограничивает крайнее время возврата на склад
+     */
+    void limitEnd(int latestReturn, ProblemInstance instance) {
+        if (latestReturn < end) {
+            end = latestReturn;
+            update(instance);
+        }
+    }
+
+    /**
+     * Время возвращения на склад при выезде в start и ожидании открытия окон
+     */
+    int returnTime(ProblemInstance instance) {
+        DistanceMatrix matrix = instance.matrix;
+        int time = start;
+        int previous = depot;
+        for (Visit visit : visits) {
+            time = Math.max(time + matrix.travelTime(previous, visit.node), instance.windowStart[visit.node]);
+            time += visit.service;
+            previous = visit.node;
+        }
+        return time + matrix.travelTime(previous, depot);
+    }
+
+    /**
+     * Копия маршрута с тем же набором посещений (префиксы пересчитываются)
+     */
+    RouteState copy(ProblemInstance instance) {
+        RouteState copy = new RouteState(routeId, truck, departureTime, depot, start, end);
+        copy.visits.addAll(visits);
+        copy.update(instance);
+        return copy;
+    }
+
+    private RouteState(String routeId, Truck truck, LocalTime departureTime, int depot, int start, int end) {
+        this.routeId = routeId;
+        this.truck = truck;
+        this.departureTime = departureTime;
+        this.depot = depot;
+        this.start = start;
+        this.end = end;
+        this.capacity = truck.getCapacity();
+        this.costPerKm = truck.getCostPerKm();
+    }
+
+    /**
+     * Изменение стоимости маршрута при удалении посещения на позиции i (O(1))
+     */
+    double removalDelta(int i, DistanceMatrix matrix) {
+        double forward = cum[i];
+        if (i < size - 1) {
+            forward += matrix.distance(node(i - 1), node(i + 1)) + cum[size] - cum[i + 2];
+        }
+        int last = i == size - 1 ? node(i - 1) : nodes[size - 1];
+        return cost(matrix, forward, last, size - 1) - cost(matrix);
+    }
+
+    /**
+     * Узел на позиции pos; позиции -1 и size соответствуют складу
+     */
+    int node(int pos) {
+        return pos < 0 || pos >= size ? depot : nodes[pos];
+    }
+
+    TimeWindowSegment nodeSegment(Visit visit, ProblemInstance instance, TimeWindowSegment out) {
+        return out.setNode(visit.service, instance.windowStart[visit.node], instance.windowEnd[visit.node]);
+    }
+
+    /**
+     * Пересчитывает префиксы и суффиксы после изменения посещений
+     */
+    void update(ProblemInstance instance) {
+        DistanceMatrix matrix = instance.matrix;
+        size = visits.size();
+        if (pre.length < size + 1) {
+            int capacity = Math.max(size, nodes.length * 2);
+            nodes = new int[capacity];
+            cum = new double[capacity + 1];
+            pre = grow(pre, capacity + 1);
+            suf = grow(suf, capacity + 1);
+        }
+        load = 0;
+        for (int i = 0; i < size; i++) {
+            nodes[i] = visits.get(i).node;
+            load += visits.get(i).weight;
+        }
+
+        pre[0].setNode(0, start, start);
+        cum[0] = 0;
+        for (int i = 0; i < size; i++) {
+            nodeSegment(visits.get(i), instance, scratch);
+            TimeWindowSegment.concat(pre[i], matrix.travelTime(node(i - 1), nodes[i]), scratch, pre[i + 1]);
+            cum[i + 1] = cum[i] + matrix.distance(node(i - 1), nodes[i]);
+        }
+
+        suf[size].setNode(0, 0, end);
+        for (int i = size - 1; i >= 0; i--) {
+            nodeSegment(visits.get(i), instance, scratch);
+            TimeWindowSegment.concat(scratch, matrix.travelTime(nodes[i], node(i + 1)), suf[i + 1], suf[i]);
+        }
+
+        TimeWindowSegment full = TimeWindowSegment.concat(pre[0], matrix.travelTime(depot, node(0)), suf[0], check);
+        timeWarp = size == 0 ? 0 : full.timeWarp;
+    }
+
+    private static TimeWindowSegment[] grow(TimeWindowSegment[] segments, int length) {
+        TimeWindowSegment[] result = new TimeWindowSegment[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = i < segments.length ? segments[i] : new TimeWindowSegment();
+        }
+        return result;
+    }
+
+    /**
+     * Пробег от склада до последнего магазина (без возврата)
+     */
+    double forwardDistance() {
+        return cum[size];
+    }
+
+    double totalDistance(DistanceMatrix matrix) {
+        return size == 0 ? 0 : cum[size] + matrix.distance(nodes[size - 1], depot);
+    }
+
+    double cost(DistanceMatrix matrix) {
+        return cost(matrix, cum[size], node(size - 1), size);
+    }
+
+    /**
+     * Стоимость варианта маршрута: путь до последнего магазина + возврат на склад * 0.7
+     */
+    double cost(DistanceMatrix matrix, double forward, int lastNode, int visitCount) {
+        if (visitCount == 0) {
+            return 0;
+        }
+        return DistanceCalculator.calculateCostWithReturn(forward, matrix.distance(lastNode, depot), costPerKm);
+    }
+
+    /**
+     * Пробег по маршруту между посещениями from и to включительно (from <= to)
+     */
+    double distanceBetween(int from, int to) {
+        return cum[to + 1] - cum[from + 1];
+    }
+
+    /**
+     * Ищет самую дешёвую позицию вставки посещения без превышения грузоподъёмности
+     * и без роста опоздания. Каждая позиция проверяется за O(1) по префиксам/суффиксам.
+     * Магазины, недопустимые для грузовика (Feasibility), отбрасываются сразу.
+     * @param position сюда пишется найденная позиция (индекс в visits)
+     * @return прирост стоимости маршрута или Double.POSITIVE_INFINITY, если вставить нельзя
+     */
+    double bestInsertion(Visit visit, ProblemInstance instance, int[] position) {
+        if (load + visit.weight > capacity
+                || !instance.feasibility().allows(visit.node, instance.truckIndex(truck))) {
+            return Double.POSITIVE_INFINITY;
+        }
+        DistanceMatrix matrix = instance.matrix;
+        TimeWindowSegment segment = nodeSegment(visit, instance, scratch);
+        double oldCost = cost(matrix);
+        double best = Double.POSITIVE_INFINITY;
+        for (int p = 0; p <= size; p++) {
+            int previous = node(p - 1);
+            int next = node(p);
+            double forward = cum[p] + matrix.distance(previous, visit.node);
+            if (p < size) {
+                forward += matrix.distance(visit.node, next) + cum[size] - cum[p + 1];
+            }
+            int last = p == size ? visit.node : nodes[size - 1];
+            double delta = cost(matrix, forward, last, size + 1) - oldCost;
+            if (delta >= best) continue;
+
+            TimeWindowSegment.concat(pre[p], matrix.travelTime(previous, visit.node), segment, check);
+            TimeWindowSegment.concat(check, matrix.travelTime(visit.node, next), suf[p], check);
+            if (check.timeWarp <= timeWarp) {
+                best = delta;
+                position[0] = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Собирает DeliveryRoute с пересчитанными временами, пробегом и стоимостью
+     */
+    DeliveryRoute toRoute(ProblemInstance instance) {
+        return toRoute(instance, routeId);
+    }
+
+    DeliveryRoute toRoute(ProblemInstance instance, String routeId) {
+        DistanceMatrix matrix = instance.matrix;
+        DeliveryRoute route = new DeliveryRoute(routeId, truck.getTruckId(), departureTime);
+        route.setTruckAvailabilityStart(truck.getAvailabilityStart());
+        route.setTruckAvailabilityEnd(truck.getAvailabilityEnd());
+
+        int time = start;
+        int previous = depot;
+        for (Visit visit : visits) {
+            DeliveryRoute.RouteStop stop = new DeliveryRoute.RouteStop(
+                    matrix.storeId(visit.node), matrix.x(visit.node), matrix.y(visit.node));
+            time += matrix.travelTime(previous, visit.node);
+            // Приехали раньше окна - ждём открытия магазина
+            time = Math.max(time, instance.windowStart[visit.node]);
+            stop.setDistanceFromPreviousStop(matrix.distance(previous, visit.node));
+            stop.setArrivalTime(toLocalTime(time));
+            time += visit.service;
+            stop.setDepartureTime(toLocalTime(time));
+            for (DeliveryRoute.DeliveryItem item : visit.items) {
+                stop.addItem(item);
+            }
+            route.addStop(stop);
+            previous = visit.node;
+        }
+
+        if (!visits.isEmpty()) {
+            route.setEstimatedReturnTime(toLocalTime(time + matrix.travelTime(previous, depot)));
+        }
+        route.setTotalDistance(totalDistance(matrix));
+        route.setTotalCost(cost(matrix));
+        return route;
+    }
+
+    static LocalTime toLocalTime(int secondOfDay) {
+        return LocalTime.ofSecondOfDay(Math.floorMod(secondOfDay, SECONDS_PER_DAY));
+    }
+}
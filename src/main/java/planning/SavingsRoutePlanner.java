@@ -0,0 +1,432 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+import util.DistanceCalculator;
+
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Алгоритм сбережений Кларка-Райта
+ * Посещения делятся между складами (каждое - к ближайшему складу, грузовики которого его поднимут).
+ * Для каждого склада каждое посещение начинает с отдельного маршрута склад-магазин-склад; затем маршруты
+ * сливаются по убыванию сбережения s(i,j) = d(0,i) + d(0,j) - d(i,j), пока соблюдаются
+ * грузоподъёмность и временные окна от самого раннего выезда грузовиков склада. Принадлежность
+ * посещений маршрутам ведётся через union-find.
+ * Готовые маршруты назначаются рейсами грузовикам своего склада: рейс проверяется от выезда
+ * грузовика (первый рейс - начало доступности, следующий - возвращение из предыдущего, как в
+ * RoutePlanningEngine) и принимается только без нарушения окон. Затем маршруты улучшаются локальным поиском.
+ */
+public class SavingsRoutePlanner implements RoutePlanner {
+
+    // Для каждого магазина рассматриваются пары только с ближайшими магазинами
+    private static final int NEIGHBOUR_COUNT = 64;
+
+    @Override
+    public List<DeliveryRoute> planRoutes(
+            List<Truck> trucks,
+            Map<String, Store> storesMap,
+            Map<String, Product> productsMap,
+            Map<String, List<DeliveryRequest>> demands) {
+
+        if (trucks.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ProblemInstance instance = ProblemInstance.compile(trucks, storesMap, demands);
+        DistanceMatrix matrix = instance.matrix;
+
+        // Склады и их грузовики
+        Map<Integer, List<Integer>> trucksByDepot = new LinkedHashMap<>();
+        double maxCapacity = 0;
+        for (int t = 0; t < instance.truckCount(); t++) {
+            trucksByDepot.computeIfAbsent(instance.depot[t], key -> new ArrayList<>()).add(t);
+            maxCapacity = Math.max(maxCapacity, instance.capacity[t]);
+        }
+        List<Visit> visits = Visit.split(instance, maxCapacity, null);
+
+        Map<Integer, List<Visit>> visitsByDepot = new HashMap<>();
+        for (Visit visit : visits) {
+            int bestDepot = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            for (Map.Entry<Integer, List<Integer>> entry : trucksByDepot.entrySet()) {
+                double distance = matrix.distance(entry.getKey(), visit.node);
+                if (distance < bestDistance && carries(entry.getValue(), visit, instance)) {
+                    bestDistance = distance;
+                    bestDepot = entry.getKey();
+                }
+            }
+            if (bestDepot >= 0) {
+                visitsByDepot.computeIfAbsent(bestDepot, key -> new ArrayList<>()).add(visit);
+            }
+        }
+
+        List<RouteState> states = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : trucksByDepot.entrySet()) {
+            List<Visit> depotVisits = visitsByDepot.getOrDefault(entry.getKey(), Collections.emptyList());
+            List<Integer> depotTrucks = entry.getValue();
+            List<Double> loads = new ArrayList<>();
+            List<List<Visit>> sequences = merge(depotVisits, entry.getKey(), depotTrucks, instance, loads);
+            states.addAll(assignTrucks(sequences, loads, depotTrucks, instance));
+        }
+        states.removeIf(state -> state.size == 0);
+        int routeCounter = 0;
+        for (RouteState state : states) {
+            state.routeId = "ROUTE_" + (++routeCounter);
+        }
+        LocalSearch.improve(states, instance);
+        return instance.toRoutes(states);
+    }
+
+    /**
+     * Хотя бы один грузовик склада поднимает посещение и допущен к магазину
+     */
+    private static boolean carries(List<Integer> depotTrucks, Visit visit, ProblemInstance instance) {
+        for (int t : depotTrucks) {
+            if (instance.capacity[t] >= visit.weight && instance.feasibility().allows(visit.node, t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Сливает маршруты склада depot по убыванию сбережения
+     * Окна проверяются от самого раннего выезда грузовиков склада до самого позднего возврата,
+     * вместимость - по самому большому грузовику. Посещения, которые даже в одиночку нарушают окна,
+     * в маршруты не попадают. В loads записывается загрузка каждого маршрута.
+     */
+    private static List<List<Visit>> merge(List<Visit> visits, int depot, List<Integer> depotTrucks,
+                                           ProblemInstance instance, List<Double> loads) {
+        DistanceMatrix matrix = instance.matrix;
+        int n = visits.size();
+        double capacity = 0;
+        int departure = Integer.MAX_VALUE;
+        int latestEnd = 0;
+        for (int t : depotTrucks) {
+            capacity = Math.max(capacity, instance.capacity[t]);
+            departure = Math.min(departure, instance.availableFrom[t]);
+            latestEnd = Math.max(latestEnd, instance.availableUntil[t]);
+        }
+        int start = departure + DistanceCalculator.calculateLoadingTime();
+        TimeWindowSegment depotStart = new TimeWindowSegment().setNode(0, start, start);
+        TimeWindowSegment depotEnd = new TimeWindowSegment().setNode(0, 0, latestEnd);
+        TimeWindowSegment merged = new TimeWindowSegment();
+        TimeWindowSegment check = new TimeWindowSegment();
+
+        // Начальные маршруты: по одному посещению
+        int[] parent = new int[n];
+        int[] first = new int[n];
+        int[] last = new int[n];
+        int[] next = new int[n];
+        double[] load = new double[n];
+        boolean[] dropped = new boolean[n];
+        TimeWindowSegment[] segments = new TimeWindowSegment[n];
+        for (int i = 0; i < n; i++) {
+            Visit visit = visits.get(i);
+            parent[i] = i;
+            first[i] = i;
+            last[i] = i;
+            next[i] = -1;
+            load[i] = visit.weight;
+            segments[i] = new TimeWindowSegment().setNode(
+                    visit.service, instance.windowStart[visit.node], instance.windowEnd[visit.node]);
+            dropped[i] = withDepot(depotStart, depotEnd, segments[i], matrix, depot, visit.node, visit.node, check)
+                    .timeWarp > 0;
+        }
+
+        List<int[]> pairs = new ArrayList<>();
+        long[] savings = buildSavings(visits, matrix, depot, pairs);
+
+        for (int k = savings.length - 1; k >= 0; k--) {
+            int[] pair = pairs.get((int) savings[k]);
+            int a = pair[0];
+            int b = pair[1];
+            if (dropped[a] || dropped[b]) continue;
+            for (int orientation = 0; orientation < 2; orientation++) {
+                int i = orientation == 0 ? a : b;
+                int j = orientation == 0 ? b : a;
+                int ri = find(parent, i);
+                int rj = find(parent, j);
+                if (ri == rj || last[ri] != i || first[rj] != j) continue;
+                if (load[ri] + load[rj] > capacity) continue;
+
+                TimeWindowSegment.concat(segments[ri], matrix.travelTime(visits.get(i).node, visits.get(j).node),
+                        segments[rj], merged);
+                withDepot(depotStart, depotEnd, merged, matrix, depot,
+                        visits.get(first[ri]).node, visits.get(last[rj]).node, check);
+                if (check.timeWarp > 0) continue;
+
+                next[i] = j;
+                parent[rj] = ri;
+                last[ri] = last[rj];
+                load[ri] += load[rj];
+                segments[ri].set(merged);
+                break;
+            }
+        }
+
+        // Собираем маршруты из цепочек
+        List<List<Visit>> sequences = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (find(parent, i) != i || dropped[i]) continue;
+            List<Visit> sequence = new ArrayList<>();
+            for (int v = first[i]; v >= 0; v = next[v]) {
+                sequence.add(visits.get(v));
+            }
+            sequences.add(sequence);
+            loads.add(load[i]);
+        }
+        return sequences;
+    }
+
+    /**
+     * Маршрут segment с выездом со склада и возвратом на него (результат в out)
+     */
+    private static TimeWindowSegment withDepot(TimeWindowSegment depotStart, TimeWindowSegment depotEnd,
+                                               TimeWindowSegment segment, DistanceMatrix matrix, int depot,
+                                               int firstNode, int lastNode, TimeWindowSegment out) {
+        TimeWindowSegment.concat(depotStart, matrix.travelTime(depot, firstNode), segment, out);
+        return TimeWindowSegment.concat(out, matrix.travelTime(lastNode, depot), depotEnd, out);
+    }
+
+    /**
+     * Положительные сбережения, отсортированные по возрастанию
+     * Элемент: старшие 32 бита - сбережение (float), младшие - номер пары в pairs
+     */
+    private static long[] buildSavings(List<Visit> visits, DistanceMatrix matrix, int depot, List<int[]> pairs) {
+        int n = visits.size();
+        Map<Integer, List<Integer>> visitsByNode = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            visitsByNode.computeIfAbsent(visits.get(i).node, key -> new ArrayList<>()).add(i);
+        }
+        int[] nodes = visitsByNode.keySet().stream().mapToInt(Integer::intValue).toArray();
+        SpatialGrid grid = new SpatialGrid(matrix, nodes);
+
+        long[] savings = new long[16];
+        int count = 0;
+        int[] nearest = new int[NEIGHBOUR_COUNT + 1];
+        for (int i = 0; i < n; i++) {
+            int node = visits.get(i).node;
+            int found = grid.nearest(matrix.x(node), matrix.y(node), nearest.length, nearest);
+            for (int f = 0; f < found; f++) {
+                for (int j : visitsByNode.get(nearest[f])) {
+                    if (j <= i) continue;
+                    int other = visits.get(j).node;
+                    double saving = matrix.distance(depot, node) + matrix.distance(depot, other)
+                            - matrix.distance(node, other);
+                    if (saving <= 0) continue;
+                    if (count == savings.length) {
+                        savings = Arrays.copyOf(savings, count * 2);
+                    }
+                    // Для положительных float порядок битов совпадает с порядком значений
+                    savings[count++] = ((long) Float.floatToIntBits((float) saving) << 32) | pairs.size();
+                    pairs.add(new int[]{i, j});
+                }
+            }
+        }
+        savings = Arrays.copyOf(savings, count);
+        Arrays.sort(savings);
+        return savings;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Назначает маршруты рейсами грузовикам склада: самые загруженные маршруты получают первыми.
+     * Сначала рассматриваются грузовики без рейсов (наименьший подходящий по грузоподъёмности),
+     * затем - следующие рейсы уже занятых грузовиков с выездом после возвращения из предыдущего.
+     * Рейс принимается, если от выезда этого грузовика окна не нарушаются. Маршрут, который целиком
+     * ни в один рейс не встаёт, получает рейс по своему самому длинному подходящему началу.
+     * Оставшиеся посещения вставляются в другие рейсы, в том числе в пустой следующий рейс
+     * каждого грузовика; посещения, которые никуда не помещаются без нарушения окон, не планируются.
+     */
+    private static List<RouteState> assignTrucks(List<List<Visit>> sequences, List<Double> loads,
+                                                 List<Integer> depotTrucks, ProblemInstance instance) {
+        Integer[] order = new Integer[sequences.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(loads.get(b), loads.get(a)));
+
+        int[] freeAt = new int[instance.truckCount()];
+        int[] tripCount = new int[instance.truckCount()];
+        for (int t : depotTrucks) {
+            freeAt[t] = instance.availableFrom[t];
+        }
+        List<Integer> candidates = new ArrayList<>(depotTrucks);
+        Comparator<Integer> bySize = Comparator.comparingDouble((Integer t) -> instance.capacity[t])
+                .thenComparingDouble(t -> instance.costPerKm[t]);
+
+        List<RouteState> states = new ArrayList<>();
+        List<Visit> unassigned = new ArrayList<>();
+        Comparator<Integer> byUse = Comparator.comparingInt((Integer t) -> tripCount[t] > 0 ? 1 : 0)
+                .thenComparing(bySize);
+        // Сначала маршруты, которые встают в рейс целиком
+        List<List<Visit>> deferred = new ArrayList<>();
+        for (int index : order) {
+            candidates.sort(byUse);
+            RouteState chosen = wholeTrip(candidates, freeAt, sequences.get(index), instance);
+            if (chosen == null) {
+                deferred.add(sequences.get(index));
+                continue;
+            }
+            states.add(chosen);
+            int t = instance.truckIndex(chosen.truck);
+            tripCount[t]++;
+            freeAt[t] = chosen.returnTime(instance);
+        }
+        // Остальным - рейс по самому длинному подходящему началу, хвост уходит на вставку
+        for (List<Visit> sequence : deferred) {
+            candidates.sort(byUse);
+            RouteState chosen = null;
+            for (int t : candidates) {
+                RouteState longer = longestPrefix(t, freeAt[t], sequence, chosen == null ? 0 : chosen.size, instance);
+                if (longer != null) {
+                    chosen = longer;
+                }
+            }
+            if (chosen == null) {
+                unassigned.addAll(sequence);
+                continue;
+            }
+            states.add(chosen);
+            int t = instance.truckIndex(chosen.truck);
+            tripCount[t]++;
+            freeAt[t] = chosen.returnTime(instance);
+            unassigned.addAll(sequence.subList(chosen.size, sequence.size()));
+        }
+        // Каждый грузовик получает пустой следующий рейс, который можно открыть вставкой
+        RouteState[] lastTrip = new RouteState[instance.truckCount()];
+        for (int t : depotTrucks) {
+            lastTrip[t] = trip(t, freeAt[t], instance);
+            if (lastTrip[t] != null) {
+                lastTrip[t].update(instance);
+                states.add(lastTrip[t]);
+            }
+        }
+        RouteState.chainTrips(states, instance);
+
+        // Посещения из маршрутов, которым не нашлось рейса, вставляем в другие рейсы;
+        // когда пустой рейс открыт, за ним добавляется следующий пустой рейс того же грузовика
+        unassigned.sort(Comparator.comparingDouble((Visit visit) -> visit.weight).reversed());
+        int[] position = new int[1];
+        while (!unassigned.isEmpty()) {
+            List<Visit> rest = new ArrayList<>();
+            for (Visit visit : unassigned) {
+                RouteState bestState = null;
+                int bestPosition = -1;
+                double bestDelta = Double.POSITIVE_INFINITY;
+                for (RouteState state : states) {
+                    double delta = state.bestInsertion(visit, instance, position);
+                    if (delta < bestDelta) {
+                        bestDelta = delta;
+                        bestState = state;
+                        bestPosition = position[0];
+                    }
+                }
+                if (bestState != null) {
+                    bestState.visits.add(bestPosition, visit);
+                    bestState.update(instance);
+                } else {
+                    rest.add(visit);
+                }
+            }
+            boolean opened = false;
+            for (int t : depotTrucks) {
+                if (rest.isEmpty() || lastTrip[t] == null || lastTrip[t].size == 0) continue;
+                int returnTime = lastTrip[t].returnTime(instance);
+                lastTrip[t].limitEnd(returnTime, instance);
+                lastTrip[t] = trip(t, returnTime, instance);
+                if (lastTrip[t] != null) {
+                    lastTrip[t].update(instance);
+                    states.add(lastTrip[t]);
+                    opened = true;
+                }
+            }
+            if (!opened) {
+                break;
+            }
+            unassigned = rest;
+        }
+        return states;
+    }
+
+    /**
+     * Пустой рейс грузовика t с выездом в departure или null, если до конца доступности рейс не успеть
+     */
+    private static RouteState trip(int t, int departure, ProblemInstance instance) {
+        if (departure + DistanceCalculator.calculateLoadingTime() >= instance.availableUntil[t]) {
+            return null;
+        }
+        return new RouteState(null, instance.trucks[t], LocalTime.ofSecondOfDay(departure), instance.matrix);
+    }
+
+    /**
+     * Рейс грузовика t с выездом в departure по посещениям visits или null,
+     * если груз не помещается, посещение грузовику недоступно или нарушаются окна
+     */
+    private static RouteState fittingTrip(int t, int departure, List<Visit> visits, ProblemInstance instance) {
+        double load = 0;
+        for (Visit visit : visits) {
+            load += visit.weight;
+        }
+        if (load > instance.capacity[t] || !allowed(visits, t, instance)) {
+            return null;
+        }
+        RouteState trip = trip(t, departure, instance);
+        if (trip == null) {
+            return null;
+        }
+        trip.visits.addAll(visits);
+        trip.update(instance);
+        return trip.timeWarp == 0 ? trip : null;
+    }
+
+    /**
+     * Рейс первого из candidates, в который маршрут visits встаёт целиком, или null
+     */
+    private static RouteState wholeTrip(List<Integer> candidates, int[] freeAt, List<Visit> visits,
+                                        ProblemInstance instance) {
+        for (int t : candidates) {
+            RouteState trip = fittingTrip(t, freeAt[t], visits, instance);
+            if (trip != null) {
+                return trip;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Рейс грузовика t по самому длинному началу visits длиннее minLength посещений, но
+     * короче самого маршрута; null, если такого нет
+     */
+    private static RouteState longestPrefix(int t, int departure, List<Visit> visits, int minLength,
+                                            ProblemInstance instance) {
+        for (int length = visits.size() - 1; length > minLength; length--) {
+            RouteState trip = fittingTrip(t, departure, visits.subList(0, length), instance);
+            if (trip != null) {
+                return trip;
+            }
+        }
+        return null;
+    }
+
+    private static boolean allowed(List<Visit> visits, int t, ProblemInstance instance) {
+        for (Visit visit : visits) {
+            if (!instance.feasibility().allows(visit.node, t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,238 @@
+package planning;
+
+import java.util.Arrays;
+
+/**
+ * Равномерная сетка по координатам магазинов для поиска k ближайших
+ * Точки задаются плотными индексами DistanceMatrix. Поддерживает удаление
+ * магазинов, которые полностью обслужены.
+ */
+public class SpatialGrid {
+
+    // Среднее количество точек в ячейке
+    private static final int POINTS_PER_CELL = 2;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    // Содержимое ячеек в формате CSR: точки ячейки c лежат в cellItems[cellStart[c]..cellStart[c+1])
+    private final int[] cellStart;
+    private final int[] cellItems;
+    private final int[] cellActive;
+    private final int[] pointCell;
+    private final boolean[] active;
+    private int activeCount;
+
+    // Буферы запроса (max-heap по квадрату расстояния)
+    private int[] heapIndex = new int[0];
+    private double[] heapDist = new double[0];
+
+    /**
+     * Строит сетку по заданным индексам матрицы
+     */
+    public SpatialGrid(DistanceMatrix matrix, int[] indices) {
+        int size = matrix.size();
+        this.xs = new double[size];
+        this.ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = matrix.x(i);
+            ys[i] = matrix.y(i);
+        }
+
+        double loX = Double.MAX_VALUE, loY = Double.MAX_VALUE;
+        double hiX = -Double.MAX_VALUE, hiY = -Double.MAX_VALUE;
+        for (int index : indices) {
+            loX = Math.min(loX, xs[index]);
+            loY = Math.min(loY, ys[index]);
+            hiX = Math.max(hiX, xs[index]);
+            hiY = Math.max(hiY, ys[index]);
+        }
+        if (indices.length == 0) {
+            loX = loY = hiX = hiY = 0;
+        }
+        this.minX = loX;
+        this.minY = loY;
+
+        double width = Math.max(hiX - loX, 1e-9);
+        double height = Math.max(hiY - loY, 1e-9);
+        int cellCount = Math.max(1, indices.length / POINTS_PER_CELL);
+        double size0 = Math.sqrt(width * height / cellCount);
+        if (size0 <= 0 || Double.isNaN(size0)) {
+            size0 = Math.max(width, height);
+        }
+        // Вытянутая область (точки почти на одной прямой): не больше cellCount ячеек по длинной стороне,
+        // иначе колец поиска - миллионы
+        size0 = Math.max(size0, Math.max(width, height) / cellCount);
+        this.cellSize = size0;
+        this.cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+
+        this.cellStart = new int[cols * rows + 1];
+        this.cellActive = new int[cols * rows];
+        this.pointCell = new int[size];
+        this.active = new boolean[size];
+        Arrays.fill(pointCell, -1);
+        for (int index : indices) {
+            int cell = cellOf(xs[index], ys[index]);
+            pointCell[index] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        this.cellItems = new int[indices.length];
+        int[] fill = Arrays.copyOf(cellStart, cols * rows);
+        for (int index : indices) {
+            int cell = pointCell[index];
+            cellItems[fill[cell]++] = index;
+            if (!active[index]) {
+                active[index] = true;
+                cellActive[cell]++;
+                activeCount++;
+            }
+        }
+    }
+
+    private int column(double x) {
+        int c = (int) ((x - minX) / cellSize);
+        return Math.min(Math.max(c, 0), cols - 1);
+    }
+
+    private int row(double y) {
+        int r = (int) ((y - minY) / cellSize);
+        return Math.min(Math.max(r, 0), rows - 1);
+    }
+
+    private int cellOf(double x, double y) {
+        return row(y) * cols + column(x);
+    }
+
+    /**
+     * Удаляет точку из индекса (магазин полностью обслужен)
+     */
+    public void remove(int index) {
+        if (index < 0 || index >= active.length || !active[index]) {
+            return;
+        }
+        active[index] = false;
+        cellActive[pointCell[index]]--;
+        activeCount--;
+    }
+
+    public boolean isActive(int index) {
+        return index >= 0 && index < active.length && active[index];
+    }
+
+    public int activeCount() {
+        return activeCount;
+    }
+
+    /**
+     * Находит до k ближайших активных точек к (x, y)
+     * @param out массив для результата длиной не меньше k, заполняется по возрастанию расстояния
+     * @return количество найденных точек
+     */
+    public int nearest(double x, double y, int k, int[] out) {
+        if (k <= 0 || activeCount == 0) {
+            return 0;
+        }
+        if (heapIndex.length < k) {
+            heapIndex = new int[k];
+            heapDist = new double[k];
+        }
+        int heapSize = 0;
+
+        int cx = column(x);
+        int cy = row(y);
+        int maxRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int dy = -ring; dy <= ring; dy++) {
+                int r = cy + dy;
+                if (r < 0 || r >= rows) continue;
+                // Внутри кольца обходим только граничные ячейки
+                int step = (dy == -ring || dy == ring) ? 1 : Math.max(1, 2 * ring);
+                for (int dx = -ring; dx <= ring; dx += step) {
+                    int c = cx + dx;
+                    if (c < 0 || c >= cols) continue;
+                    int cell = r * cols + c;
+                    if (cellActive[cell] == 0) continue;
+
+                    for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                        int index = cellItems[p];
+                        if (!active[index]) continue;
+                        double ddx = xs[index] - x;
+                        double ddy = ys[index] - y;
+                        double d = ddx * ddx + ddy * ddy;
+                        if (heapSize < k) {
+                            heapIndex[heapSize] = index;
+                            heapDist[heapSize] = d;
+                            siftUp(heapSize++);
+                        } else if (d < heapDist[0]) {
+                            heapIndex[0] = index;
+                            heapDist[0] = d;
+                            siftDown(0, heapSize);
+                        }
+                    }
+                }
+            }
+
+            // Все точки ближе границы просмотренного блока ячеек уже учтены
+            if (heapSize == k) {
+                double covered = Math.min(
+                        Math.min(x - (minX + (cx - ring) * cellSize), minX + (cx + ring + 1) * cellSize - x),
+                        Math.min(y - (minY + (cy - ring) * cellSize), minY + (cy + ring + 1) * cellSize - y));
+                if (covered > 0 && heapDist[0] <= covered * covered) {
+                    break;
+                }
+            }
+        }
+
+        // Извлекаем из кучи в порядке возрастания расстояния
+        int count = heapSize;
+        for (int i = count - 1; i >= 0; i--) {
+            out[i] = heapIndex[0];
+            heapSize--;
+            heapIndex[0] = heapIndex[heapSize];
+            heapDist[0] = heapDist[heapSize];
+            siftDown(0, heapSize);
+        }
+        return count;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (heapDist[parent] >= heapDist[i]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int size) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int largest = left;
+            if (left + 1 < size && heapDist[left + 1] > heapDist[left]) {
+                largest = left + 1;
+            }
+            if (heapDist[i] >= heapDist[largest]) break;
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int ti = heapIndex[a];
+        heapIndex[a] = heapIndex[b];
+        heapIndex[b] = ti;
+        double td = heapDist[a];
+        heapDist[a] = heapDist[b];
+        heapDist[b] = td;
+    }
+}
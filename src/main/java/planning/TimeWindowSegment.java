@@ -0,0 +1,69 @@
+package planning;
+
+/**
+ * Сводка по участку маршрута для проверки временных окон за O(1)
+ * Хранит длительность участка (путь + разгрузка + ожидание), самое раннее и самое
+ * позднее время начала обслуживания первой точки и суммарное опоздание (time warp).
+ * Два участка склеиваются без прохода по их точкам, поэтому префиксы и суффиксы
+ * маршрута достаточно посчитать один раз.
+ * Время - секунды от начала суток.
+ */
+public final class TimeWindowSegment {
+
+    int duration;
+    int earliest;
+    int latest;
+    int timeWarp;
+
+    public TimeWindowSegment() {
+    }
+
+    /**
+     * Участок из одной точки с окном [windowStart, windowEnd] и временем обслуживания service
+     */
+    public TimeWindowSegment setNode(int service, int windowStart, int windowEnd) {
+        this.duration = service;
+        this.earliest = windowStart;
+        this.latest = windowEnd;
+        this.timeWarp = 0;
+        return this;
+    }
+
+    public TimeWindowSegment set(TimeWindowSegment other) {
+        this.duration = other.duration;
+        this.earliest = other.earliest;
+        this.latest = other.latest;
+        this.timeWarp = other.timeWarp;
+        return this;
+    }
+
+    /**
+     * Склеивает участки a и b (travel - время в пути между ними) и пишет результат в out
+     * out может совпадать с a или b
+     */
+    public static TimeWindowSegment concat(TimeWindowSegment a, int travel, TimeWindowSegment b, TimeWindowSegment out) {
+        int delta = a.duration - a.timeWarp + travel;
+        int waitTime = Math.max(b.earliest - delta - a.latest, 0);
+        int lateTime = Math.max(a.earliest + delta - b.latest, 0);
+
+        int duration = a.duration + b.duration + travel + waitTime;
+        int timeWarp = a.timeWarp + b.timeWarp + lateTime;
+        int earliest = Math.max(b.earliest - delta, a.earliest) - waitTime;
+        int latest = Math.min(b.latest - delta, a.latest) + lateTime;
+
+        out.duration = duration;
+        out.timeWarp = timeWarp;
+        out.earliest = earliest;
+        out.latest = latest;
+        return out;
+    }
+
+    public int getDuration() { return duration; }
+    public int getEarliest() { return earliest; }
+    public int getLatest() { return latest; }
+
+    /**
+     * Суммарное опоздание в секундах; 0 означает, что все окна соблюдены
+     */
+    public int getTimeWarp() { return timeWarp; }
+}
@@ -0,0 +1,297 @@
+package planning;
+
+import model.Store;
+import model.Truck;
+import util.DistanceCalculator;
+import util.DistanceProvider;
+import util.DistanceProviders;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Планирование цепочки заказов из очереди одного грузовика (логика TruckAgent)
+ * Заказы выбираются жадно по комбинированному score стоимости и времени доставки,
+ * пока хватает грузоподъёмности, временных окон магазинов и окна доступности грузовика.
+ * Вынесено из агента, чтобы планирование можно было проверять и измерять без JADE.
+ */
+public class TruckOrderPlanner {
+
+    // Коэффициент веса для стоимости (0.0 - только время, 1.0 - только стоимость)
+    // 0.1 означает 10% веса на стоимость, 90% на время доставки (время имеет больший вес);
+    // настройка запуска - CostWeights.PROPERTY
+    private static final double COST_WEIGHT = CostWeights.current(0.1);
+    private static final double TIME_WEIGHT = 1.0 - COST_WEIGHT;
+    // Коэффициент для увеличения веса времени доставки
+    private static final double TIME_MULTIPLIER = 2.0;
+
+    /**
+     * Заказ в очереди грузовика
+     */
+    public interface Order {
+        Store getStore();
+        double getTotalWeight();
+        int getTotalQuantity();
+    }
+
+    /**
+     * Получает каждый заказ, добавленный в цепочку, с расчётными временами
+     */
+    public interface StopListener<T> {
+        void onStop(T order, LocalTime arrivalTime, LocalTime departureTime, double currentLoad);
+    }
+
+    /**
+     * Строит цепочку заказов, начиная из точки (startX, startY) в момент startTime
+     * @param orders очередь заказов (не изменяется)
+     * @param listener может быть null
+     * @return заказы в порядке объезда
+     */
+    public static <T extends Order> List<T> plan(Truck truck, double startX, double startY,
+                                                 LocalTime startTime, double currentLoad,
+                                                 List<T> orders, StopListener<? super T> listener) {
+        return plan(truck, startX, startY, startTime, currentLoad, orders, listener, DistanceProviders.current());
+    }
+
+    /**
+     * То же по заданному источнику расстояний. Для кэша строк агента (DistanceRowCache) расстояния
+     * читаются из строк по плотным индексам магазинов, без поиска узлов по координатам.
+     */
+    public static <T extends Order> List<T> plan(Truck truck, double startX, double startY,
+                                                 LocalTime startTime, double currentLoad,
+                                                 List<T> orders, StopListener<? super T> listener,
+                                                 DistanceProvider distances) {
+        List<T> route = new ArrayList<>();
+        List<T> availableOrders = new ArrayList<>(orders);
+        LocalTime currentTime = startTime;
+        double routeX = startX;
+        double routeY = startY;
+
+        // Узлы кэша строк: точки маршрута и магазины заказов (null - расстояния по координатам)
+        DistanceRowCache cache = distances instanceof DistanceRowCache ? (DistanceRowCache) distances : null;
+        int routeNode = cache != null ? cache.nodeAt(startX, startY) : -1;
+        int[] nodes = routeNode >= 0 ? nodesOf(cache, availableOrders) : null;
+
+        // Расстояние от магазина до базы не зависит от шага - считается один раз (индексы как в availableOrders)
+        double[] toBase = new double[availableOrders.size()];
+        for (int i = 0; i < toBase.length; i++) {
+            Store store = availableOrders.get(i).getStore();
+            toBase[i] = nodes != null ? cache.row(nodes[i])[cache.depot()]
+                    : distances.distance(store.getX(), store.getY(), truck.getStartX(), truck.getStartY());
+        }
+
+        // Оптимизация с учетом стоимости и времени доставки
+        while (!availableOrders.isEmpty() && currentTime.isBefore(truck.getAvailabilityEnd())) {
+            T bestOrder = null;
+            double bestScore = Double.MAX_VALUE;
+            int bestIndex = -1;
+
+            // Координаты доступных заказов подряд: расстояния от точки до всех заказов - один пакетный запрос
+            int count = availableOrders.size();
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            double[] weights = new double[count];
+            for (int i = 0; i < count; i++) {
+                T order = availableOrders.get(i);
+                xs[i] = order.getStore().getX();
+                ys[i] = order.getStore().getY();
+                weights[i] = order.getTotalWeight();
+            }
+            double[] fromRoute = new double[count];
+            double[] fromStore = new double[count];
+            if (nodes != null) {
+                gather(cache.row(routeNode), nodes, count, fromRoute);
+            } else {
+                distances.distancesFrom(routeX, routeY, xs, ys, fromRoute);
+            }
+
+            // Первый проход: находим максимальные значения для нормализации
+            double maxCost = 0;
+            long maxTimeSeconds = 0;
+
+            for (int i = 0; i < count; i++) {
+                T order = availableOrders.get(i);
+                Store store = order.getStore();
+                if (currentLoad + order.getTotalWeight() > truck.getCapacity()) {
+                    continue;
+                }
+
+                double distance = fromRoute[i];
+                // Стоимость: путь туда + обратный путь от магазина до базы * 0.7
+                double distanceFromStoreToBase = toBase[i];
+                double cost = DistanceCalculator.calculateCostWithReturn(distance, distanceFromStoreToBase, truck.getCostPerKm());
+                int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
+                LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
+
+                if (arrivalTime.isBefore(store.getTimeWindowStart())) {
+                    long waitSeconds = java.time.Duration.between(arrivalTime, store.getTimeWindowStart()).getSeconds();
+                    travelTimeSeconds += waitSeconds;
+                } else if (arrivalTime.isAfter(store.getTimeWindowEnd())) {
+                    continue;
+                }
+
+                int serviceTimeSeconds = DistanceCalculator.calculateServiceTime(order.getTotalQuantity()); // Разгрузка зависит от количества товаров
+                LocalTime departureTime = arrivalTime.plusSeconds(serviceTimeSeconds);
+
+                if (departureTime.isAfter(store.getTimeWindowEnd()) ||
+                    departureTime.isAfter(truck.getAvailabilityEnd())) {
+                    continue;
+                }
+
+                // Учитываем время разгрузки при расчете общего времени для нормализации
+                long totalTimeSeconds = travelTimeSeconds + serviceTimeSeconds;
+
+                maxCost = Math.max(maxCost, cost);
+                maxTimeSeconds = Math.max(maxTimeSeconds, totalTimeSeconds);
+            }
+
+            // Второй проход: выбираем лучший заказ по комбинированному критерию
+            for (int i = 0; i < count; i++) {
+                T order = availableOrders.get(i);
+                Store store = order.getStore();
+
+                // Проверяем грузоподъёмность
+                if (currentLoad + order.getTotalWeight() > truck.getCapacity()) {
+                    continue;
+                }
+
+                // Рассчитываем расстояние и стоимость
+                double distance = fromRoute[i];
+
+                // Ищем ближайший следующий заказ для цепочки (без возврата на базу)
+                if (nodes != null) {
+                    gather(cache.row(nodes[i]), nodes, count, fromStore);
+                } else {
+                    distances.distancesFrom(store.getX(), store.getY(), xs, ys, fromStore);
+                }
+                double distanceFromStore = Double.MAX_VALUE;
+                for (int j = 0; j < count; j++) {
+                    if (j == i) continue;
+                    if (currentLoad + order.getTotalWeight() + weights[j] > truck.getCapacity()) continue;
+
+                    if (fromStore[j] < distanceFromStore) {
+                        distanceFromStore = fromStore[j];
+                    }
+                }
+
+                // Если не нашли следующий заказ в цепочке, считаем возврат на базу
+                if (distanceFromStore == Double.MAX_VALUE) {
+                    distanceFromStore = toBase[i];
+                }
+
+                double cost = DistanceCalculator.calculateCostWithReturn(distance, distanceFromStore, truck.getCostPerKm());
+
+                // Рассчитываем время прибытия
+                int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
+                LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
+
+                // Проверяем временное окно МАГАЗИНА
+                if (arrivalTime.isBefore(store.getTimeWindowStart())) {
+                    // Приедем раньше окна - ждем до начала окна магазина
+                    long waitSeconds = java.time.Duration.between(arrivalTime, store.getTimeWindowStart()).getSeconds();
+                    travelTimeSeconds += waitSeconds;
+                    arrivalTime = store.getTimeWindowStart();
+                } else if (arrivalTime.isAfter(store.getTimeWindowEnd())) {
+                    // Приедем позже окна - пропускаем этот заказ
+                    continue;
+                }
+
+                // Рассчитываем время обслуживания (разгрузка зависит от количества товаров)
+                int serviceTimeSeconds = DistanceCalculator.calculateServiceTime(order.getTotalQuantity());
+                LocalTime departureTime = arrivalTime.plusSeconds(serviceTimeSeconds);
+
+                // Проверяем, что обслуживание завершится до конца окна магазина
+                if (departureTime.isAfter(store.getTimeWindowEnd())) {
+                    continue; // Не вписывается в окно магазина
+                }
+
+                // Проверяем, не выходим ли за окно доступности грузовика
+                if (departureTime.isAfter(truck.getAvailabilityEnd())) {
+                    continue;
+                }
+
+                // Учитываем время разгрузки при расчете общего времени для нормализации
+                long totalTimeSeconds = travelTimeSeconds + serviceTimeSeconds;
+
+                // Нормализуем значения (избегаем деления на ноль)
+                double normalizedCost = maxCost > 0 ? cost / maxCost : 0;
+                double normalizedTime = maxTimeSeconds > 0 ? (double)totalTimeSeconds / maxTimeSeconds : 0;
+
+                // Комбинированный score: меньше = лучше
+                // Время доставки домножается на коэффициент для увеличения веса
+                double score = COST_WEIGHT * normalizedCost + TIME_WEIGHT * normalizedTime * TIME_MULTIPLIER;
+
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestOrder = order;
+                    bestIndex = i;
+                }
+            }
+
+            if (bestOrder == null) {
+                break; // Нет доступных заказов
+            }
+
+            // Добавляем в маршрут
+            route.add(bestOrder);
+            currentLoad += bestOrder.getTotalWeight();
+            Store store = bestOrder.getStore();
+
+            // Обновляем позицию и время (цепочка заказов без возврата на базу)
+            double distance = fromRoute[bestIndex];
+            int travelTimeSeconds = DistanceCalculator.calculateTravelTime(distance);
+            LocalTime arrivalTime = currentTime.plusSeconds(travelTimeSeconds);
+            // Учитываем окно магазина
+            if (arrivalTime.isBefore(store.getTimeWindowStart())) {
+                arrivalTime = store.getTimeWindowStart();
+            } else if (arrivalTime.isAfter(store.getTimeWindowEnd())) {
+                // Это не должно произойти, так как мы уже проверили выше, но на всякий случай
+                arrivalTime = store.getTimeWindowStart();
+            }
+            int serviceTimeSeconds = DistanceCalculator.calculateServiceTime(bestOrder.getTotalQuantity());
+            LocalTime departureTime = arrivalTime.plusSeconds(serviceTimeSeconds);
+            // Убеждаемся, что не выходим за окно магазина
+            if (departureTime.isAfter(store.getTimeWindowEnd())) {
+                departureTime = store.getTimeWindowEnd();
+            }
+            currentTime = departureTime;
+            routeX = store.getX();
+            routeY = store.getY();
+            if (nodes != null) {
+                routeNode = nodes[bestIndex];
+                System.arraycopy(nodes, bestIndex + 1, nodes, bestIndex, count - bestIndex - 1);
+            }
+
+            if (listener != null) {
+                listener.onStop(bestOrder, arrivalTime, departureTime, currentLoad);
+            }
+
+            // Удаляем из доступных
+            availableOrders.remove(bestIndex);
+            System.arraycopy(toBase, bestIndex + 1, toBase, bestIndex, count - bestIndex - 1);
+        }
+
+        return route;
+    }
+
+    /**
+     * Узлы кэша для магазинов заказов или null, если какого-то магазина в кэше нет
+     */
+    private static int[] nodesOf(DistanceRowCache cache, List<? extends Order> orders) {
+        int[] nodes = new int[orders.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = cache.indexOf(orders.get(i).getStore().getStoreId());
+            if (nodes[i] < 0) {
+                return null;
+            }
+        }
+        return nodes;
+    }
+
+    private static void gather(double[] row, int[] nodes, int count, double[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = row[nodes[i]];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import util.DistanceCalculator;
+
+import java.util.*;
+
+/**
+ * Посещение магазина в маршруте: индекс узла в матрице и доставляемые товары
+ */
+class Visit {
+
+    final int node;
+    final List<DeliveryRoute.DeliveryItem> items;
+    final double weight;
+    final int quantity;
+    final int service;
+    // Заказы, из которых собрано посещение (пусто, если посещение взято из готового маршрута)
+    final List<DeliveryRequest> requests;
+
+    Visit(int node, List<DeliveryRoute.DeliveryItem> items) {
+        this(node, items, Collections.emptyList());
+    }
+
+    Visit(int node, List<DeliveryRoute.DeliveryItem> items, List<DeliveryRequest> requests) {
+        this.node = node;
+        this.items = items;
+        this.requests = requests;
+        double weight = 0;
+        int quantity = 0;
+        for (DeliveryRoute.DeliveryItem item : items) {
+            weight += item.getWeight();
+            quantity += item.getQuantity();
+        }
+        this.weight = weight;
+        this.quantity = quantity;
+        // Разгрузка зависит от количества товаров
+        this.service = DistanceCalculator.calculateServiceTime(quantity);
+    }
+
+    static Visit of(DeliveryRoute.RouteStop stop, DistanceMatrix matrix) {
+        return new Visit(matrix.indexOf(stop.getStoreId()), new ArrayList<>(stop.getItems()));
+    }
+
+    /**
+     * Разбивает заказы магазинов на посещения, каждое из которых помещается в грузовик
+     * грузоподъёмностью maxCapacity. Строки заказа тяжелее maxCapacity не планируются.
+     * Магазины обходятся в порядке индексов матрицы, строки - в исходном порядке.
+     * Строки, отмеченные в skip (если он не null), пропускаются.
+     */
+    static List<Visit> split(ProblemInstance instance, double maxCapacity, boolean[] skip) {
+        List<Visit> visits = new ArrayList<>();
+        for (int node = 0; node < instance.matrix.storeCount(); node++) {
+            List<List<DeliveryRequest>> chunks = new ArrayList<>();
+            List<Double> chunkWeights = new ArrayList<>();
+            for (int line = instance.lineStart[node]; line < instance.lineStart[node + 1]; line++) {
+                double weight = instance.lineWeight[line];
+                if ((skip != null && skip[line]) || weight > maxCapacity) {
+                    continue;
+                }
+                int target = -1;
+                for (int c = 0; c < chunks.size(); c++) {
+                    if (chunkWeights.get(c) + weight <= maxCapacity) {
+                        target = c;
+                        break;
+                    }
+                }
+                if (target < 0) {
+                    chunks.add(new ArrayList<>());
+                    chunkWeights.add(0.0);
+                    target = chunks.size() - 1;
+                }
+                chunks.get(target).add(instance.lineRequest[line]);
+                chunkWeights.set(target, chunkWeights.get(target) + weight);
+            }
+
+            for (List<DeliveryRequest> chunk : chunks) {
+                visits.add(fromRequests(node, chunk));
+            }
+        }
+        return visits;
+    }
+
+    static Visit fromRequests(int node, List<DeliveryRequest> requests) {
+        List<DeliveryRoute.DeliveryItem> items = new ArrayList<>();
+        for (DeliveryRequest request : requests) {
+            items.add(new DeliveryRoute.DeliveryItem(
+                    request.getProductId(), request.getQuantity(), request.getTotalWeight()));
+        }
+        return new Visit(node, items, requests);
+    }
+}
@@ -8,6 +8,11 @@ import jade.wrapper.AgentController;
 import agents.*;
 import model.*;
 import io.DataLoader;
+import planning.CostWeights;
+import planning.Feasibility;
+import planning.MatrixDistanceProvider;
+import planning.PlanningStrategy;
+import util.DistanceProviders;
 
 import java.io.IOException;
 import java.util.*;
@@ -18,6 +23,10 @@ import java.util.*;
  * 
  * Использование:
  *   java -cp target/jade-delivery-system.jar server.ServerLauncher [port]
+ * Расстояния по дорожной сети: -Ddelivery.distance=road[:файл] (см. util.DistanceProviders)
+ * Общий файл матрицы расстояний: -Ddelivery.matrixDir=каталог (см. planning.DistanceMatrixFile)
+ * Стратегия эталонного плана: -Ddelivery.strategy=greedy|savings|alns|... (см. planning.PlanningStrategy)
+ * Вес стоимости для планировщика и грузовиков: -Ddelivery.costWeight=0..1 (см. planning.CostWeights)
  */
 public class ServerLauncher {
 
@@ -32,8 +41,13 @@ public class ServerLauncher {
             }
         }
 
+        // Неизвестная стратегия или неверный вес стоимости - ошибка запуска, а не молчаливая подмена
+        PlanningStrategy strategy = PlanningStrategy.current();
+        CostWeights.current(0);
+
         System.out.println("=== Запуск серверной части JADE ===");
         System.out.println("Порт: " + port);
+        System.out.println("Стратегия планирования: " + strategy.name().toLowerCase(Locale.ROOT));
 
         try {
             // Получаем Runtime JADE
@@ -55,10 +69,28 @@ public class ServerLauncher {
             Map<String, Product> products = loadProducts();
             Map<String, Store> stores = loadStores();
             List<Truck> trucks = loadTrucks();
+            // Веса единиц товара по заказам магазинов: грузовик и магазин отсекают одни и те же пары
+            Map<String, List<DeliveryRequest>> demands = DataLoader.loadDemands("data/stores.csv", products);
+            Map<String, Double> minUnitWeights = Feasibility.minUnitWeights(demands);
             System.out.println("✓ Данные загружены успешно");
             System.out.println("  - Товаров: " + products.size());
             System.out.println("  - Магазинов: " + stores.size());
             System.out.println("  - Грузовиков: " + trucks.size());
+            // Источник расстояний создаётся заранее, чтобы граф дорог строился при запуске, а не в первом агенте;
+            // при заданном каталоге матриц агенты контейнера читают общую отображённую матрицу
+            MatrixDistanceProvider.install(stores, trucks);
+            System.out.println("  - Расстояния: " + DistanceProviders.current());
+
+            // Централизованный план выбранной стратегией - эталон для расписания, которое согласуют агенты
+            long planningStart = System.nanoTime();
+            List<DeliveryRoute> reference = strategy.createPlanner().planRoutes(trucks, stores, products, demands);
+            double referenceCost = 0;
+            for (DeliveryRoute route : reference) {
+                referenceCost += route.getTotalCost();
+            }
+            System.out.printf(Locale.ROOT, "  - Эталонный план (%s): рейсов %d, стоимость %.2f, %d мс%n",
+                    strategy.name().toLowerCase(Locale.ROOT), reference.size(), referenceCost,
+                    (System.nanoTime() - planningStart) / 1_000_000);
 
             // Создаем и запускаем агентов (все равноправные, без централизованного координатора)
             System.out.println("\nСоздание агентов...");
@@ -84,7 +116,7 @@ public class ServerLauncher {
             System.out.println("\nСоздание грузовиков на сервере...");
             int truckCount = 0;
             for (Truck truck : trucks) {
-                Object[] args_truck = new Object[]{truck};
+                Object[] args_truck = new Object[]{truck, minUnitWeights};
                 AgentController truckController = mainContainer.createNewAgent(
                     truck.getTruckId(),
                     "agents.TruckAgent",
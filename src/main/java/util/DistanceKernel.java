@@ -0,0 +1,14 @@
+package util;
+
+/**
+ * Пакетный расчёт евклидовых расстояний от одной точки до многих (координаты - struct-of-arrays)
+ * Реализации дают побитово одинаковый результат: sqrt(dx*dx + dy*dy) без слияния умножения и сложения.
+ * Текущая реализация - DistanceKernels.current().
+ */
+public interface DistanceKernel {
+
+    /**
+     * Расстояния от точки (x, y) до точек (xs[i], ys[i]) в out[i], i < xs.length
+     */
+    void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out);
+}
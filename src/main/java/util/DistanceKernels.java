@@ -0,0 +1,56 @@
+package util;
+
+/**
+ * Выбор пакетного ядра расстояний
+ * Если модуль jdk.incubator.vector подключён (JDK 16+, java --add-modules jdk.incubator.vector)
+ * и класс VECTOR_CLASS собран (профиль vector в pom.xml), используется ядро на Vector API;
+ * иначе - скалярный цикл, который C2 векторизует сам.
+ */
+public final class DistanceKernels {
+
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+    static final String VECTOR_CLASS = "util.VectorDistanceKernel";
+
+    /**
+     * Простой счётный цикл без ветвлений: JIT разворачивает его в SIMD-инструкции (SuperWord)
+     */
+    public static final DistanceKernel SCALAR = new DistanceKernel() {
+        @Override
+        public void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+            for (int i = 0; i < xs.length; i++) {
+                double dx = xs[i] - x;
+                double dy = ys[i] - y;
+                out[i] = Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "скалярное ядро";
+        }
+    };
+
+    private static final DistanceKernel CURRENT = load();
+
+    private DistanceKernels() {
+    }
+
+    public static DistanceKernel current() {
+        return CURRENT;
+    }
+
+    public static void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+        CURRENT.distancesFrom(x, y, xs, ys, out);
+    }
+
+    private static DistanceKernel load() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (DistanceKernel) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package util;
+
+/**
+ * Источник расстояний между точками плоскости (в тех же единицах, что и координаты)
+ * Реализация выбирается одной настройкой, см. DistanceProviders. Время в пути по-прежнему
+ * считается из расстояния (DistanceCalculator.calculateTravelTime).
+ */
+public interface DistanceProvider {
+
+    double distance(double x1, double y1, double x2, double y2);
+
+    /**
+     * Расстояние не зависит от направления (можно хранить половину матрицы)
+     */
+    default boolean isSymmetric() {
+        return false;
+    }
+
+    /**
+     * Отпечаток данных, от которых зависят расстояния (ключ файлов матриц DistanceMatrixFile):
+     * разные расстояния - разные отпечатки. Источник, читающий данные из файла, обязан его переопределить.
+     */
+    default long fingerprint() {
+        return getClass().getName().hashCode();
+    }
+
+    /**
+     * Расстояния от точки (x, y) до точек (xs[i], ys[i]) в out[i]
+     */
+    default void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = distance(x, y, xs[i], ys[i]);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package util;
+
+import java.io.IOException;
+
+/**
+ * Текущий источник расстояний для планировщика и агентов
+ * Выбирается системным свойством delivery.distance (задаётся каждой JVM - серверу и клиентам):
+ *   euclidean          - евклидовы расстояния (по умолчанию);
+ *   road               - дорожная сеть из data/roads.csv;
+ *   road:путь/к/файлу  - дорожная сеть из указанного файла.
+ * Источник создаётся при первом обращении и общий для всех агентов JVM.
+ */
+public final class DistanceProviders {
+
+    public static final String PROPERTY = "delivery.distance";
+    static final String DEFAULT_ROADS = "data/roads.csv";
+
+    private static volatile DistanceProvider current;
+
+    private DistanceProviders() {
+    }
+
+    public static DistanceProvider current() {
+        DistanceProvider provider = current;
+        if (provider == null) {
+            synchronized (DistanceProviders.class) {
+                provider = current;
+                if (provider == null) {
+                    provider = fromSetting(System.getProperty(PROPERTY));
+                    current = provider;
+                }
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Заменяет текущий источник (например, загруженный заранее граф)
+     */
+    public static void use(DistanceProvider provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException("Источник расстояний не задан");
+        }
+        current = provider;
+    }
+
+    /**
+     * Источник по значению настройки; null или пустая строка - евклидовы расстояния
+     */
+    public static DistanceProvider fromSetting(String setting) {
+        String value = setting != null ? setting.trim() : "";
+        if (value.isEmpty() || value.equalsIgnoreCase("euclidean")) {
+            return EuclideanDistanceProvider.INSTANCE;
+        }
+        if (value.equalsIgnoreCase("road") || value.regionMatches(true, 0, "road:", 0, 5)) {
+            String filename = value.length() > 5 ? value.substring(5).trim() : DEFAULT_ROADS;
+            try {
+                return RoadNetworkProvider.load(filename);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось загрузить граф дорог " + filename + ": " + e.getMessage(), e);
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный источник расстояний " + PROPERTY + "=" + setting);
+    }
+}
@@ -0,0 +1,32 @@
+package util;
+
+/**
+ * Евклидовы расстояния (по умолчанию)
+ */
+public final class EuclideanDistanceProvider implements DistanceProvider {
+
+    public static final EuclideanDistanceProvider INSTANCE = new EuclideanDistanceProvider();
+
+    private EuclideanDistanceProvider() {
+    }
+
+    @Override
+    public double distance(double x1, double y1, double x2, double y2) {
+        return DistanceCalculator.calculateDistance(x1, y1, x2, y2);
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        return true;
+    }
+
+    @Override
+    public void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+        DistanceKernels.distancesFrom(x, y, xs, ys, out);
+    }
+
+    @Override
+    public String toString() {
+        return "евклидовы расстояния";
+    }
+}
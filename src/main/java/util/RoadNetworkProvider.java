@@ -0,0 +1,714 @@
+package util;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Расстояния по дорожной сети (иерархии сжатия)
+ * Граф читается из CSV со столбцами from_x, from_y, to_x, to_y и необязательными length
+ * (длина ребра, по умолчанию евклидова) и oneway (1 - движение только from -> to); узлы - различные точки.
+ * При загрузке узлы сжимаются по возрастанию приоритета (разность числа ярлыков и рёбер, число уже
+ * сжатых соседей и уровень), ярлыки сохраняют кратчайшие пути между оставшимися узлами. Запрос - два
+ * поиска Дейкстры только вверх по рангу (от источника по прямым рёбрам, от цели по обратным) с остановкой
+ * по требованию; пространства поиска - сотни узлов вместо всего графа. Для запроса один-ко-многим
+ * поиск от источника выполняется один раз.
+ * Точка привязывается к ближайшему узлу, расстояние привязки добавляется к пути по графу.
+ * Если узел цели недостижим, берётся евклидово расстояние (с предупреждением в журнал).
+ */
+public final class RoadNetworkProvider implements DistanceProvider {
+
+    // Предел числа узлов в поиске свидетеля при сжатии: если путь в обход не найден, добавляется ярлык
+    private static final int WITNESS_SETTLED_LIMIT = 200;
+    // Тот же предел при оценке приоритета: оценка грубее, но пересчитывается после каждого сжатия соседа
+    private static final int PRIORITY_SETTLED_LIMIT = 20;
+    // Вес разности рёбер в приоритете относительно числа сжатых соседей и уровня узла
+    private static final int EDGE_DIFFERENCE_WEIGHT = 2;
+
+    private final int nodeCount;
+    private final double[] nodeX;
+    private final double[] nodeY;
+    // Рёбра к узлам выше по рангу (CSR): up - прямые рёбра, down - обратные (для поиска от цели)
+    private final int[] upStart;
+    private final int[] upTo;
+    private final double[] upWeight;
+    private final int[] downStart;
+    private final int[] downTo;
+    private final double[] downWeight;
+    private final int edgeCount;
+    private final int shortcutCount;
+    // Хэш списка рёбер (концы, длины, односторонность) в порядке файла
+    private final long fingerprint;
+    // Нет односторонних рёбер
+    private final boolean symmetric;
+
+    // Ближайший узел по точке "x;y"
+    private final Map<String, Integer> snapped = new ConcurrentHashMap<>();
+    private final ThreadLocal<Search> searches;
+    private volatile boolean warned;
+
+    /**
+     * Загрузка графа и построение иерархии сжатия
+     */
+    public static RoadNetworkProvider load(String filename) throws IOException {
+        Map<String, Integer> nodeIndex = new HashMap<>();
+        double[] xs = new double[16];
+        double[] ys = new double[16];
+        int[] from = new int[16];
+        int[] to = new int[16];
+        double[] length = new double[16];
+        boolean[] oneway = new boolean[16];
+        int nodes = 0;
+        int edges = 0;
+
+        try (Reader reader = new FileReader(filename)) {
+            CSVFormat format = CSVFormat.DEFAULT.withFirstRecordAsHeader();
+            CSVParser parser = new CSVParser(reader, format);
+
+            for (CSVRecord record : parser) {
+                double x1 = Double.parseDouble(record.get("from_x"));
+                double y1 = Double.parseDouble(record.get("from_y"));
+                double x2 = Double.parseDouble(record.get("to_x"));
+                double y2 = Double.parseDouble(record.get("to_y"));
+                String lengthValue = record.isMapped("length") ? record.get("length").trim() : "";
+                double edgeLength = lengthValue.isEmpty()
+                        ? DistanceCalculator.calculateDistance(x1, y1, x2, y2) : Double.parseDouble(lengthValue);
+                if (edgeLength < 0 || Double.isNaN(edgeLength)) {
+                    throw new IllegalArgumentException("Отрицательная длина ребра в строке " + record.getRecordNumber());
+                }
+
+                int[] ends = new int[2];
+                for (int e = 0; e < 2; e++) {
+                    double x = e == 0 ? x1 : x2;
+                    double y = e == 0 ? y1 : y2;
+                    Integer index = nodeIndex.get(key(x, y));
+                    if (index == null) {
+                        if (nodes == xs.length) {
+                            xs = Arrays.copyOf(xs, nodes * 2);
+                            ys = Arrays.copyOf(ys, nodes * 2);
+                        }
+                        xs[nodes] = x;
+                        ys[nodes] = y;
+                        index = nodes++;
+                        nodeIndex.put(key(x, y), index);
+                    }
+                    ends[e] = index;
+                }
+
+                if (edges == from.length) {
+                    from = Arrays.copyOf(from, edges * 2);
+                    to = Arrays.copyOf(to, edges * 2);
+                    length = Arrays.copyOf(length, edges * 2);
+                    oneway = Arrays.copyOf(oneway, edges * 2);
+                }
+                from[edges] = ends[0];
+                to[edges] = ends[1];
+                length[edges] = edgeLength;
+                oneway[edges] = record.isMapped("oneway") && record.get("oneway").trim().equals("1");
+                edges++;
+            }
+        }
+        if (nodes == 0) {
+            throw new IllegalArgumentException("Граф дорог пуст: " + filename);
+        }
+
+        boolean symmetric = true;
+        long fingerprint = 0xcbf29ce484222325L;
+        for (int e = 0; e < edges; e++) {
+            symmetric &= !oneway[e];
+            fingerprint = mix(fingerprint, Double.doubleToLongBits(xs[from[e]]));
+            fingerprint = mix(fingerprint, Double.doubleToLongBits(ys[from[e]]));
+            fingerprint = mix(fingerprint, Double.doubleToLongBits(xs[to[e]]));
+            fingerprint = mix(fingerprint, Double.doubleToLongBits(ys[to[e]]));
+            fingerprint = mix(fingerprint, Double.doubleToLongBits(length[e]));
+            fingerprint = mix(fingerprint, oneway[e] ? 1 : 0);
+        }
+        long start = System.nanoTime();
+        RoadNetworkProvider provider = new RoadNetworkProvider(Arrays.copyOf(xs, nodes), Arrays.copyOf(ys, nodes),
+                new Contraction(nodes, from, to, length, oneway, edges), symmetric, fingerprint);
+        System.out.println("Граф дорог " + filename + ": " + provider + " ("
+                + (System.nanoTime() - start) / 1_000_000 + " мс)");
+        return provider;
+    }
+
+    /**
+     * Узлы перенумеровываются по убыванию ранга: верх иерархии, через который проходят все запросы,
+     * лежит в массивах подряд
+     */
+    private RoadNetworkProvider(double[] xs, double[] ys, Contraction contraction, boolean symmetric, long fingerprint) {
+        this.nodeCount = xs.length;
+        this.symmetric = symmetric;
+        this.fingerprint = fingerprint;
+        this.edgeCount = contraction.edgeCount;
+        this.shortcutCount = contraction.shortcutCount;
+        int[] id = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            id[node] = nodeCount - 1 - contraction.rank[node];
+        }
+        this.nodeX = new double[nodeCount];
+        this.nodeY = new double[nodeCount];
+        this.upStart = new int[nodeCount + 1];
+        this.downStart = new int[nodeCount + 1];
+        this.upTo = new int[contraction.upCount];
+        this.upWeight = new double[contraction.upCount];
+        this.downTo = new int[contraction.downCount];
+        this.downWeight = new double[contraction.downCount];
+        int up = 0;
+        int down = 0;
+        for (int r = nodeCount - 1; r >= 0; r--) {
+            int node = contraction.order[r];
+            int index = id[node];
+            nodeX[index] = xs[node];
+            nodeY[index] = ys[node];
+            upStart[index] = up;
+            downStart[index] = down;
+            Arcs upArcs = contraction.up[node];
+            for (int i = 0; i < upArcs.size; i++) {
+                upTo[up] = id[upArcs.to[i]];
+                upWeight[up++] = upArcs.weight[i];
+            }
+            Arcs downArcs = contraction.down[node];
+            for (int i = 0; i < downArcs.size; i++) {
+                downTo[down] = id[downArcs.to[i]];
+                downWeight[down++] = downArcs.weight[i];
+            }
+        }
+        upStart[nodeCount] = up;
+        downStart[nodeCount] = down;
+        this.searches = ThreadLocal.withInitial(() -> new Search(nodeCount));
+    }
+
+    @Override
+    public double distance(double x1, double y1, double x2, double y2) {
+        if (x1 == x2 && y1 == y2) {
+            return 0;
+        }
+        int source = snap(x1, y1);
+        int target = snap(x2, y2);
+        Search search = searches.get();
+        search.forward(this, source);
+        double path = search.backward(this, target);
+        search.reset();
+        return total(x1, y1, source, x2, y2, target, path);
+    }
+
+    @Override
+    public void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+        int source = snap(x, y);
+        Search search = searches.get();
+        search.forward(this, source);
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] == x && ys[i] == y) {
+                out[i] = 0;
+                continue;
+            }
+            int target = snap(xs[i], ys[i]);
+            out[i] = total(x, y, source, xs[i], ys[i], target, search.backward(this, target));
+        }
+        search.reset();
+    }
+
+    public int nodeCount() { return nodeCount; }
+
+    @Override
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    @Override
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Шаг FNV-1a по 8 байтам значения
+     */
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "дорожная сеть: узлов " + nodeCount + ", рёбер " + edgeCount + ", ярлыков " + shortcutCount;
+    }
+
+    private double total(double x1, double y1, int source, double x2, double y2, int target, double path) {
+        if (path == Double.POSITIVE_INFINITY) {
+            if (!warned) {
+                warned = true;
+                System.err.println("Граф дорог несвязен: для недостижимых точек берётся евклидово расстояние");
+            }
+            return DistanceCalculator.calculateDistance(x1, y1, x2, y2);
+        }
+        return DistanceCalculator.calculateDistance(x1, y1, nodeX[source], nodeY[source]) + path
+                + DistanceCalculator.calculateDistance(nodeX[target], nodeY[target], x2, y2);
+    }
+
+    /**
+     * Ближайший к точке узел графа; точки магазинов и складов повторяются, поэтому результат запоминается
+     */
+    private int snap(double x, double y) {
+        return snapped.computeIfAbsent(key(x, y), k -> {
+            int nearest = 0;
+            double best = Double.MAX_VALUE;
+            for (int node = 0; node < nodeCount; node++) {
+                double dx = nodeX[node] - x;
+                double dy = nodeY[node] - y;
+                double squared = dx * dx + dy * dy;
+                if (squared < best) {
+                    best = squared;
+                    nearest = node;
+                }
+            }
+            return nearest;
+        });
+    }
+
+    private static String key(double x, double y) {
+        return x + ";" + y;
+    }
+
+    /**
+     * Рабочие массивы запроса одного потока: расстояния поиска вверх от источника и от цели
+     */
+    private static final class Search {
+        final double[] forward;
+        final double[] backward;
+        final int[] touchedForward;
+        final int[] touchedBackward;
+        int forwardCount;
+        int backwardCount;
+        final MinHeap heap = new MinHeap();
+
+        Search(int nodeCount) {
+            forward = new double[nodeCount];
+            backward = new double[nodeCount];
+            Arrays.fill(forward, Double.POSITIVE_INFINITY);
+            Arrays.fill(backward, Double.POSITIVE_INFINITY);
+            touchedForward = new int[nodeCount];
+            touchedBackward = new int[nodeCount];
+        }
+
+        /**
+         * Полный поиск вверх от источника по прямым рёбрам
+         */
+        void forward(RoadNetworkProvider graph, int source) {
+            forward[source] = 0;
+            touchedForward[forwardCount++] = source;
+            heap.clear();
+            heap.push(source, 0);
+            while (!heap.isEmpty()) {
+                double key = heap.peekKey();
+                int node = heap.pop();
+                if (key > forward[node] || stalled(graph.downStart, graph.downTo, graph.downWeight, forward, node, key)) {
+                    continue;
+                }
+                for (int arc = graph.upStart[node]; arc < graph.upStart[node + 1]; arc++) {
+                    int next = graph.upTo[arc];
+                    double distance = key + graph.upWeight[arc];
+                    if (distance < forward[next]) {
+                        if (forward[next] == Double.POSITIVE_INFINITY) {
+                            touchedForward[forwardCount++] = next;
+                        }
+                        forward[next] = distance;
+                        heap.push(next, distance);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Поиск вверх от цели по обратным рёбрам; встреча с поиском от источника даёт путь.
+         * Поиск останавливается, когда ключ очереди не меньше лучшего найденного пути.
+         */
+        double backward(RoadNetworkProvider graph, int target) {
+            double best = Double.POSITIVE_INFINITY;
+            backward[target] = 0;
+            touchedBackward[backwardCount++] = target;
+            heap.clear();
+            heap.push(target, 0);
+            while (!heap.isEmpty()) {
+                double key = heap.peekKey();
+                if (key >= best) {
+                    break;
+                }
+                int node = heap.pop();
+                if (key > backward[node]) {
+                    continue;
+                }
+                if (forward[node] + key < best) {
+                    best = forward[node] + key;
+                }
+                if (stalled(graph.upStart, graph.upTo, graph.upWeight, backward, node, key)) {
+                    continue;
+                }
+                for (int arc = graph.downStart[node]; arc < graph.downStart[node + 1]; arc++) {
+                    int next = graph.downTo[arc];
+                    double distance = key + graph.downWeight[arc];
+                    if (distance < backward[next]) {
+                        if (backward[next] == Double.POSITIVE_INFINITY) {
+                            touchedBackward[backwardCount++] = next;
+                        }
+                        backward[next] = distance;
+                        heap.push(next, distance);
+                    }
+                }
+            }
+            for (int i = 0; i < backwardCount; i++) {
+                backward[touchedBackward[i]] = Double.POSITIVE_INFINITY;
+            }
+            backwardCount = 0;
+            return best;
+        }
+
+        /**
+         * Остановка по требованию: узел достижим короче через узел выше по рангу (дугу, ведущую в него
+         * сверху), значит кратчайший путь через него не идёт вверх и его дуги не просматриваются
+         */
+        private static boolean stalled(int[] start, int[] to, double[] weight, double[] distance, int node, double key) {
+            for (int arc = start[node]; arc < start[node + 1]; arc++) {
+                if (distance[to[arc]] + weight[arc] < key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void reset() {
+            for (int i = 0; i < forwardCount; i++) {
+                forward[touchedForward[i]] = Double.POSITIVE_INFINITY;
+            }
+            forwardCount = 0;
+        }
+    }
+
+    /**
+     * Двоичная куча узлов по ключу; устаревшие записи пропускаются при извлечении
+     */
+    private static final class MinHeap {
+        private int[] nodes = new int[64];
+        private double[] keys = new double[64];
+        private int size;
+
+        boolean isEmpty() { return size == 0; }
+        double peekKey() { return keys[0]; }
+        void clear() { size = 0; }
+
+        void push(int node, double key) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            int lastNode = nodes[--size];
+            double lastKey = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= lastKey) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            keys[i] = lastKey;
+            return top;
+        }
+    }
+
+    /**
+     * Список дуг узла (растущие массивы); при повторном добавлении дуги остаётся меньший вес
+     */
+    private static final class Arcs {
+        int[] to = new int[4];
+        double[] weight = new double[4];
+        int size;
+
+        void add(int node, double w) {
+            for (int i = 0; i < size; i++) {
+                if (to[i] == node) {
+                    if (w < weight[i]) {
+                        weight[i] = w;
+                    }
+                    return;
+                }
+            }
+            if (size == to.length) {
+                to = Arrays.copyOf(to, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+            }
+            to[size] = node;
+            weight[size++] = w;
+        }
+
+        void remove(int node) {
+            for (int i = 0; i < size; i++) {
+                if (to[i] == node) {
+                    size--;
+                    to[i] = to[size];
+                    weight[i] = weight[size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Построение иерархии: сжатие узлов с ленивым пересчётом приоритетов
+     */
+    private static final class Contraction {
+        final int nodeCount;
+        final Arcs[] out;
+        final Arcs[] in;
+        final Arcs[] up;
+        final Arcs[] down;
+        final boolean[] contracted;
+        final int[] deletedNeighbours;
+        final int[] level;
+        // Ранг узла (порядок сжатия) и узел по рангу
+        final int[] rank;
+        final int[] order;
+        int contractedCount;
+        final int edgeCount;
+        int shortcutCount;
+        int upCount;
+        int downCount;
+
+        // Поиск свидетеля
+        final double[] witness;
+        final int[] touched;
+        int touchedCount;
+        // Метки целей текущего поиска
+        final int[] targetMark;
+        int stamp;
+        final MinHeap heap = new MinHeap();
+
+        Contraction(int nodeCount, int[] from, int[] to, double[] length, boolean[] oneway, int edges) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edges;
+            out = new Arcs[nodeCount];
+            in = new Arcs[nodeCount];
+            up = new Arcs[nodeCount];
+            down = new Arcs[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                out[node] = new Arcs();
+                in[node] = new Arcs();
+                up[node] = new Arcs();
+                down[node] = new Arcs();
+            }
+            contracted = new boolean[nodeCount];
+            deletedNeighbours = new int[nodeCount];
+            level = new int[nodeCount];
+            rank = new int[nodeCount];
+            order = new int[nodeCount];
+            witness = new double[nodeCount];
+            Arrays.fill(witness, Double.POSITIVE_INFINITY);
+            touched = new int[nodeCount];
+            targetMark = new int[nodeCount];
+
+            for (int e = 0; e < edges; e++) {
+                if (from[e] == to[e]) {
+                    continue;
+                }
+                arc(from[e], to[e], length[e]);
+                if (!oneway[e]) {
+                    arc(to[e], from[e], length[e]);
+                }
+            }
+
+            // Очередь узлов по приоритету; запись устарела, если приоритет узла с тех пор изменился
+            double[] priority = new double[nodeCount];
+            MinHeap queue = new MinHeap();
+            for (int node = 0; node < nodeCount; node++) {
+                priority[node] = priority(node);
+                queue.push(node, priority[node]);
+            }
+            while (!queue.isEmpty()) {
+                double key = queue.peekKey();
+                int node = queue.pop();
+                if (contracted[node] || key != priority[node]) {
+                    continue;
+                }
+                // Ленивое обновление: если приоритет вырос и узел уже не первый, он возвращается в очередь
+                double current = priority(node);
+                if (current > key && !queue.isEmpty() && current > queue.peekKey()) {
+                    priority[node] = current;
+                    queue.push(node, current);
+                    continue;
+                }
+                contract(node);
+                for (int i = 0; i < up[node].size; i++) {
+                    touchNeighbour(node, up[node].to[i], priority, queue);
+                }
+                for (int i = 0; i < down[node].size; i++) {
+                    touchNeighbour(node, down[node].to[i], priority, queue);
+                }
+            }
+        }
+
+        private void touchNeighbour(int node, int neighbour, double[] priority, MinHeap queue) {
+            deletedNeighbours[neighbour]++;
+            level[neighbour] = Math.max(level[neighbour], level[node] + 1);
+            priority[neighbour] = priority(neighbour);
+            queue.push(neighbour, priority[neighbour]);
+        }
+
+        private void arc(int from, int to, double weight) {
+            out[from].add(to, weight);
+            in[to].add(from, weight);
+        }
+
+        private double priority(int node) {
+            int degree = out[node].size + in[node].size;
+            return EDGE_DIFFERENCE_WEIGHT * (shortcuts(node, false) - degree) + deletedNeighbours[node] + level[node];
+        }
+
+        /**
+         * Сжатие узла: его рёбра к оставшимся узлам становятся рёбрами вверх, между соседями добавляются ярлыки
+         */
+        private void contract(int node) {
+            shortcuts(node, true);
+            for (int i = 0; i < out[node].size; i++) {
+                up[node].add(out[node].to[i], out[node].weight[i]);
+            }
+            for (int i = 0; i < in[node].size; i++) {
+                down[node].add(in[node].to[i], in[node].weight[i]);
+            }
+            upCount += up[node].size;
+            downCount += down[node].size;
+            contracted[node] = true;
+            rank[node] = contractedCount;
+            order[contractedCount++] = node;
+            // Сжатый узел убирается из списков соседей: в списках остаются только несжатые узлы
+            for (int i = 0; i < up[node].size; i++) {
+                in[up[node].to[i]].remove(node);
+            }
+            for (int i = 0; i < down[node].size; i++) {
+                out[down[node].to[i]].remove(node);
+            }
+        }
+
+        /**
+         * Число ярлыков, нужных при сжатии узла; если add - ярлыки добавляются в граф
+         */
+        private int shortcuts(int node, boolean add) {
+            Arcs outArcs = out[node];
+            Arcs inArcs = in[node];
+            double maxOut = 0;
+            for (int i = 0; i < outArcs.size; i++) {
+                maxOut = Math.max(maxOut, outArcs.weight[i]);
+            }
+            int count = 0;
+            for (int i = 0; i < inArcs.size; i++) {
+                int source = inArcs.to[i];
+                double toNode = inArcs.weight[i];
+                int targets = 0;
+                stamp++;
+                for (int j = 0; j < outArcs.size; j++) {
+                    if (outArcs.to[j] != source) {
+                        targetMark[outArcs.to[j]] = stamp;
+                        targets++;
+                    }
+                }
+                witnessSearch(source, node, toNode + maxOut, targets, add ? WITNESS_SETTLED_LIMIT : PRIORITY_SETTLED_LIMIT);
+                for (int j = 0; j < outArcs.size; j++) {
+                    int target = outArcs.to[j];
+                    if (target == source) {
+                        continue;
+                    }
+                    double via = toNode + outArcs.weight[j];
+                    if (witness[target] > via) {
+                        count++;
+                        if (add) {
+                            arc(source, target, via);
+                            shortcutCount++;
+                        }
+                    }
+                }
+                clearWitness();
+            }
+            return count;
+        }
+
+        /**
+         * Дейкстра от source в обход excluded, не дальше limit;
+         * останавливается, когда найдены все targets узлов, отмеченных текущей меткой
+         */
+        private void witnessSearch(int source, int excluded, double limit, int targets, int settledLimit) {
+            witness[source] = 0;
+            touched[touchedCount++] = source;
+            heap.clear();
+            heap.push(source, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < settledLimit) {
+                double key = heap.peekKey();
+                int node = heap.pop();
+                if (key > witness[node]) {
+                    continue;
+                }
+                if (key > limit) {
+                    break;
+                }
+                settled++;
+                if (targetMark[node] == stamp && --targets == 0) {
+                    break;
+                }
+                Arcs arcs = out[node];
+                for (int i = 0; i < arcs.size; i++) {
+                    int next = arcs.to[i];
+                    if (next == excluded) {
+                        continue;
+                    }
+                    double distance = key + arcs.weight[i];
+                    if (distance < witness[next]) {
+                        if (witness[next] == Double.POSITIVE_INFINITY) {
+                            touched[touchedCount++] = next;
+                        }
+                        witness[next] = distance;
+                        heap.push(next, distance);
+                    }
+                }
+            }
+        }
+
+        private void clearWitness() {
+            for (int i = 0; i < touchedCount; i++) {
+                witness[touched[i]] = Double.POSITIVE_INFINITY;
+            }
+            touchedCount = 0;
+        }
+    }
+}
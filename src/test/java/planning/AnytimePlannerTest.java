@@ -0,0 +1,43 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.Product;
+import model.Store;
+import model.Truck;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ошибка обработчика улучшений завершает фоновое планирование и доходит до await()
+ */
+public class AnytimePlannerTest {
+
+    @Test
+    public void listenerErrorFailsPlanning() throws InterruptedException {
+        Map<String, Store> stores = new HashMap<>();
+        stores.put("S1", new Store("S1", 10, 5, LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        List<Truck> trucks = Collections.singletonList(
+                new Truck("T1", 10, 1, 0, 0, LocalTime.of(6, 0), LocalTime.of(22, 0)));
+        Map<String, Product> products = new HashMap<>();
+        products.put("P1", new Product("P1", "Товар", 0.1));
+        Map<String, List<DeliveryRequest>> demands = new HashMap<>();
+        demands.put("S1", new ArrayList<>(Collections.singletonList(new DeliveryRequest("R1", "S1", "P1", 5, 0.5))));
+
+        IllegalArgumentException error = new IllegalArgumentException("обработчик");
+        PlanningHandle handle = new AnytimePlanner(10_000, 1).start(trucks, stores, products, demands,
+                (cost, distance, elapsedMillis) -> {
+                    throw error;
+                });
+        try {
+            handle.await();
+            fail("ошибка обработчика должна завершить планирование");
+        } catch (IllegalStateException e) {
+            assertSame(error, e.getCause());
+        }
+        assertTrue(handle.isDone());
+    }
+}
@@ -0,0 +1,20 @@
+package planning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ключ кэша планов учитывает настройки стратегии, а не только её класс
+ */
+public class CachingRoutePlannerTest {
+
+    @Test
+    public void cacheKeyDependsOnPlannerSettings() {
+        assertNotEquals(new AlnsSolver(1_000, 1).cacheKey(), new AlnsSolver(60_000, 1).cacheKey());
+        assertNotEquals(new AnytimePlanner(1_000, 1, 0.01).cacheKey(), new AnytimePlanner(1_000, 1, 0.05).cacheKey());
+        assertNotEquals(new MultiStartPlanner(4, 1, null).cacheKey(), new MultiStartPlanner(16, 1, null).cacheKey());
+        assertEquals(new AlnsSolver(1_000, 1).cacheKey(), new CachingRoutePlanner(new AlnsSolver(1_000, 1)).cacheKey());
+        assertEquals(GreedyRoutePlanner.class.getName(), new GreedyRoutePlanner().cacheKey());
+    }
+}
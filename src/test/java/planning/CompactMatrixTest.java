@@ -0,0 +1,73 @@
+package planning;
+
+import model.Store;
+import model.Truck;
+import org.junit.After;
+import org.junit.Test;
+import util.DistanceProvider;
+import util.EuclideanDistanceProvider;
+
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Компактная матрица (DistanceMatrix.Layout.COMPACT) совпадает с полной с точностью float,
+ * а время в пути больше 65535 с насыщается; проверяются треугольный (симметричный источник)
+ * и полный (несимметричный) варианты
+ */
+public class CompactMatrixTest {
+
+    private static final int MAX_TRAVEL_TIME = Character.MAX_VALUE;
+
+    @After
+    public void resetLayout() {
+        System.clearProperty(DistanceMatrix.LAYOUT_PROPERTY);
+    }
+
+    @Test
+    public void triangularMatchesFullMatrix() {
+        compare(EuclideanDistanceProvider.INSTANCE);
+    }
+
+    @Test
+    public void asymmetricMatchesFullMatrix() {
+        // Дорога "в гору" (на увеличение x) на 20% длиннее
+        compare((x1, y1, x2, y2) -> Math.hypot(x2 - x1, y2 - y1) * (x2 > x1 ? 1.2 : 1.0));
+    }
+
+    private static void compare(DistanceProvider provider) {
+        Random random = new Random(7);
+        Map<String, Store> stores = new HashMap<>();
+        for (int i = 0; i < 120; i++) {
+            // Каждый десятый магазин далеко: время в пути до него не помещается в 16 бит
+            double scale = i % 10 == 0 ? 100_000 : 500;
+            String id = String.format(Locale.ROOT, "S%03d", i);
+            stores.put(id, new Store(id, random.nextDouble() * scale, random.nextDouble() * scale,
+                    LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        }
+        List<Truck> trucks = Arrays.asList(new Truck("T1", 100, 1, 0, 0), new Truck("T2", 100, 1, 250, 250));
+
+        System.setProperty(DistanceMatrix.LAYOUT_PROPERTY, "full");
+        DistanceMatrix full = DistanceMatrix.build(stores, trucks, provider);
+        System.setProperty(DistanceMatrix.LAYOUT_PROPERTY, "compact");
+        DistanceMatrix compact = DistanceMatrix.build(stores, trucks, provider);
+        assertEquals(DistanceMatrix.Layout.FULL, full.layout());
+        assertEquals(DistanceMatrix.Layout.COMPACT, compact.layout());
+
+        int saturated = 0;
+        for (int i = 0; i < full.size(); i++) {
+            for (int j = 0; j < full.size(); j++) {
+                double distance = full.distance(i, j);
+                assertEquals(distance, compact.distance(i, j), Math.ulp((float) distance));
+                int time = full.travelTime(i, j);
+                assertEquals(Math.min(time, MAX_TRAVEL_TIME), compact.travelTime(i, j));
+                if (time > MAX_TRAVEL_TIME) {
+                    saturated++;
+                }
+            }
+        }
+        assertTrue("должны быть пары с насыщенным временем", saturated > 0);
+    }
+}
@@ -0,0 +1,29 @@
+package planning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Вес стоимости из настройки запуска
+ */
+public class CostWeightsTest {
+
+    @Test
+    public void settingOverridesDefault() {
+        assertEquals(0.3, CostWeights.fromSetting(null, 0.3), 0);
+        assertEquals(0.1, CostWeights.fromSetting(" ", 0.1), 0);
+        assertEquals(0.75, CostWeights.fromSetting("0.75", 0.3), 0);
+        assertEquals(0, CostWeights.fromSetting("0", 0.3), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightOutsideUnitIntervalIsRejected() {
+        CostWeights.fromSetting("1.5", 0.3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedWeightIsRejected() {
+        CostWeights.fromSetting("0,3", 0.3);
+    }
+}
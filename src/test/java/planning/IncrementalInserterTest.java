@@ -0,0 +1,43 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Вставка заказа в план, построенный по другим магазинам: задача IncrementalInserter
+ * компилируется без заказов, и магазины без строк не должны считаться недопустимыми (Feasibility)
+ */
+public class IncrementalInserterTest {
+
+    @Test
+    public void insertsIntoStoreWithoutOrdersInPlan() {
+        Map<String, Store> stores = new HashMap<>();
+        stores.put("S1", new Store("S1", 10, 5, LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        stores.put("S2", new Store("S2", 20, 0, LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        stores.put("S3", new Store("S3", 30, -5, LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        List<Truck> trucks = Collections.singletonList(
+                new Truck("T1", 10, 1, 0, 0, LocalTime.of(6, 0), LocalTime.of(22, 0)));
+        Map<String, Product> products = new HashMap<>();
+        products.put("P1", new Product("P1", "Товар", 0.1));
+        Map<String, List<DeliveryRequest>> demands = new HashMap<>();
+        demands.put("S1", new ArrayList<>(Collections.singletonList(new DeliveryRequest("R1", "S1", "P1", 5, 0.5))));
+        demands.put("S3", new ArrayList<>(Collections.singletonList(new DeliveryRequest("R3", "S3", "P1", 5, 0.5))));
+
+        List<DeliveryRoute> routes = new ArrayList<>(new GreedyRoutePlanner().planRoutes(trucks, stores, products, demands));
+        assertFalse(routes.isEmpty());
+
+        IncrementalInserter inserter = new IncrementalInserter(trucks, stores);
+        DeliveryRoute changed = inserter.insert(new DeliveryRequest("R2", "S2", "P1", 5, 0.5), routes);
+        assertNotNull("заказ в магазин без заказов в плане должен вставиться", changed);
+        assertTrue(routes.contains(changed));
+    }
+}
@@ -0,0 +1,199 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.Store;
+import model.Truck;
+import org.junit.Test;
+import util.DistanceCalculator;
+
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ходы локального поиска оценивают стоимость и опоздание за O(1) по префиксам/суффиксам
+ * (RouteState, TimeWindowSegment); после каждого принятого хода предсказание сверяется
+ * с полным пересчётом маршрута по посещениям
+ */
+public class LocalSearchTest {
+
+    private static final int INSTANCES = 60;
+    private static final int STORES = 14;
+
+    @Test
+    public void intraRouteMovesMatchFullEvaluation() {
+        Random random = new Random(3);
+        int moves = 0;
+        for (int k = 0; k < INSTANCES; k++) {
+            ProblemInstance instance = randomInstance(random);
+            List<RouteState> states = randomRoutes(instance, random);
+            LocalSearch.Search search = new LocalSearch.Search(instance, states);
+            for (RouteState route : states) {
+                double cost = cost(route, instance);
+                while (true) {
+                    boolean twoOpt = search.twoOpt(route);
+                    if (!twoOpt && !search.orOpt(route)) {
+                        break;
+                    }
+                    double after = cost(route, instance);
+                    assertEquals(search.lastDelta, after - cost, 1e-6);
+                    assertEquals(timeWarp(route, instance), search.left.timeWarp);
+                    assertEquals(timeWarp(route, instance), route.timeWarp);
+                    cost = after;
+                    moves++;
+                }
+            }
+        }
+        assertTrue("ходы должны находиться на случайных маршрутах", moves > INSTANCES);
+    }
+
+    @Test
+    public void interRouteMovesMatchFullEvaluation() {
+        Random random = new Random(5);
+        int moves = 0;
+        for (int k = 0; k < INSTANCES; k++) {
+            ProblemInstance instance = randomInstance(random);
+            List<RouteState> states = randomRoutes(instance, random);
+            LocalSearch.Search search = new LocalSearch.Search(instance, states);
+            double cost = totalCost(states, instance);
+            while (true) {
+                int[] before = sizes(states);
+                boolean relocate = search.relocate();
+                if (!relocate && !search.exchange()) {
+                    break;
+                }
+                double after = totalCost(states, instance);
+                assertEquals(search.lastDelta, after - cost, 1e-6);
+                int[] changed = changedRoutes(states, before, relocate);
+                int fromWarp = timeWarp(states.get(changed[0]), instance);
+                int toWarp = timeWarp(states.get(changed[1]), instance);
+                if (relocate) {
+                    assertEquals(fromWarp, search.left.timeWarp);
+                    assertEquals(toWarp, search.right.timeWarp);
+                } else {
+                    // При обмене порядок маршрутов в паре неизвестен
+                    assertEquals(fromWarp + toWarp, search.left.timeWarp + search.right.timeWarp);
+                    assertEquals(Math.min(fromWarp, toWarp), Math.min(search.left.timeWarp, search.right.timeWarp));
+                }
+                for (RouteState route : states) {
+                    assertEquals(timeWarp(route, instance), route.timeWarp);
+                }
+                cost = after;
+                moves++;
+            }
+        }
+        assertTrue("ходы должны находиться на случайных маршрутах", moves > INSTANCES);
+    }
+
+    /**
+     * Магазины со случайными узкими окнами, два грузовика с одного склада
+     */
+    private static ProblemInstance randomInstance(Random random) {
+        Map<String, Store> stores = new HashMap<>();
+        Map<String, List<DeliveryRequest>> demands = new HashMap<>();
+        for (int i = 0; i < STORES; i++) {
+            String id = "S" + i;
+            LocalTime open = LocalTime.of(8, 0).plusMinutes(random.nextInt(6 * 60));
+            stores.put(id, new Store(id, random.nextDouble() * 100, random.nextDouble() * 100,
+                    open, open.plusMinutes(30 + random.nextInt(120))));
+            demands.put(id, new ArrayList<>(Collections.singletonList(
+                    new DeliveryRequest("R" + i, id, "P1", 1 + random.nextInt(20), 1))));
+        }
+        List<Truck> trucks = Arrays.asList(
+                new Truck("T1", 1000, 1, 50, 50, LocalTime.of(7, 0), LocalTime.of(20, 0)),
+                new Truck("T2", 1000, 1.5, 50, 50, LocalTime.of(7, 0), LocalTime.of(18, 0)));
+        return ProblemInstance.compile(trucks, stores, demands);
+    }
+
+    /**
+     * Посещения в случайном порядке на случайных маршрутах
+     */
+    private static List<RouteState> randomRoutes(ProblemInstance instance, Random random) {
+        List<Visit> visits = Visit.split(instance, 1000, null);
+        Collections.shuffle(visits, random);
+        List<RouteState> states = new ArrayList<>();
+        for (Truck truck : instance.trucks) {
+            states.add(new RouteState("ROUTE_" + truck.getTruckId(), truck, LocalTime.of(7, 0), instance.matrix));
+        }
+        for (Visit visit : visits) {
+            states.get(random.nextInt(states.size())).visits.add(visit);
+        }
+        for (RouteState state : states) {
+            state.update(instance);
+        }
+        return states;
+    }
+
+    private static int[] sizes(List<RouteState> states) {
+        int[] sizes = new int[states.size()];
+        for (int r = 0; r < sizes.length; r++) {
+            sizes[r] = states.get(r).size;
+        }
+        return sizes;
+    }
+
+    /**
+     * Маршруты, изменённые ходом: для переноса - {источник, приёмник}
+     */
+    private static int[] changedRoutes(List<RouteState> states, int[] before, boolean relocate) {
+        if (relocate) {
+            int from = -1;
+            int to = -1;
+            for (int r = 0; r < states.size(); r++) {
+                if (states.get(r).size < before[r]) from = r;
+                if (states.get(r).size > before[r]) to = r;
+            }
+            return new int[]{from, to};
+        }
+        return new int[]{0, 1};
+    }
+
+    private static double totalCost(List<RouteState> states, ProblemInstance instance) {
+        double total = 0;
+        for (RouteState state : states) {
+            total += cost(state, instance);
+        }
+        return total;
+    }
+
+    /**
+     * Стоимость маршрута проходом по посещениям
+     */
+    private static double cost(RouteState route, ProblemInstance instance) {
+        if (route.visits.isEmpty()) {
+            return 0;
+        }
+        double forward = 0;
+        int previous = route.depot;
+        for (Visit visit : route.visits) {
+            forward += instance.matrix.distance(previous, visit.node);
+            previous = visit.node;
+        }
+        return DistanceCalculator.calculateCostWithReturn(
+                forward, instance.matrix.distance(previous, route.depot), route.costPerKm);
+    }
+
+    /**
+     * Опоздание проходом по посещениям: при опоздании время сдвигается назад к концу окна
+     */
+    private static int timeWarp(RouteState route, ProblemInstance instance) {
+        if (route.visits.isEmpty()) {
+            return 0;
+        }
+        int time = route.start;
+        int warp = 0;
+        int previous = route.depot;
+        for (Visit visit : route.visits) {
+            time = Math.max(time + instance.matrix.travelTime(previous, visit.node), instance.windowStart[visit.node]);
+            if (time > instance.windowEnd[visit.node]) {
+                warp += time - instance.windowEnd[visit.node];
+                time = instance.windowEnd[visit.node];
+            }
+            time += visit.service;
+            previous = visit.node;
+        }
+        time += instance.matrix.travelTime(previous, route.depot);
+        return warp + Math.max(time - route.end, 0);
+    }
+}
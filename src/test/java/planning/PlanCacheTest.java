@@ -0,0 +1,159 @@
+package planning;
+
+import model.DeliveryRequest;
+import model.DeliveryRoute;
+import model.Product;
+import model.Store;
+import model.Truck;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.DistanceProvider;
+import util.DistanceProviders;
+import util.EuclideanDistanceProvider;
+
+import java.io.File;
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ключ кэша планов и поиск ближайшего прошлого плана для тёплого старта
+ */
+public class PlanCacheTest {
+
+    private static final String PLANNER = "planner";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetSettings() {
+        DistanceProviders.use(EuclideanDistanceProvider.INSTANCE);
+        System.clearProperty(DistanceMatrix.LAYOUT_PROPERTY);
+    }
+
+    @Test
+    public void keyIgnoresOrderOfTrucksAndStores() {
+        List<Truck> reversed = new ArrayList<>(trucks());
+        Collections.reverse(reversed);
+        Map<String, Store> sorted = new TreeMap<>(stores());
+        assertEquals(key(trucks(), stores(), demands()), key(reversed, sorted, demands()));
+    }
+
+    @Test
+    public void keyDependsOnInputsAndSettings() {
+        String base = key(trucks(), stores(), demands());
+
+        List<Truck> trucks = trucks();
+        trucks.get(0).setAvailabilityEnd(LocalTime.of(17, 0));
+        assertNotEquals(base, key(trucks, stores(), demands()));
+
+        Map<String, List<DeliveryRequest>> demands = demands();
+        demands.get("S1").get(0).setQuantity(6);
+        assertNotEquals(base, key(trucks(), stores(), demands));
+
+        assertNotEquals(base, PlanCache.fingerprint("other", trucks(), stores(), products(), demands()).getKey());
+
+        System.setProperty(DistanceMatrix.LAYOUT_PROPERTY, "compact");
+        assertNotEquals(base, key(trucks(), stores(), demands()));
+        System.clearProperty(DistanceMatrix.LAYOUT_PROPERTY);
+
+        DistanceProviders.use(new DistanceProvider() {
+            @Override
+            public double distance(double x1, double y1, double x2, double y2) {
+                return Math.abs(x2 - x1) + Math.abs(y2 - y1);
+            }
+        });
+        assertNotEquals(base, key(trucks(), stores(), demands()));
+    }
+
+    @Test
+    public void closestFindsPlanWithFewestChangedLines() {
+        PlanCache cache = new PlanCache(folder.getRoot());
+        Map<String, List<DeliveryRequest>> far = demands();
+        far.get("S1").add(new DeliveryRequest("R9", "S1", "P1", 1, 0.1));
+        far.get("S2").add(new DeliveryRequest("R8", "S2", "P1", 2, 0.2));
+        Map<String, List<DeliveryRequest>> near = demands();
+        near.get("S2").add(new DeliveryRequest("R7", "S2", "P1", 3, 0.3));
+        cache.put(fingerprint(far), plan("FAR"));
+        cache.put(fingerprint(near), plan("NEAR"));
+
+        PlanCache.Match match = cache.closest(fingerprint(demands()), 10);
+        assertNotNull(match);
+        assertEquals(1, match.changedLines);
+        assertEquals("NEAR", match.routes.get(0).getRouteId());
+
+        assertNull("план дальше порога не подходит", cache.closest(fingerprint(demands()), 0));
+        assertEquals("NEAR", cache.get(fingerprint(near)).get(0).getRouteId());
+        assertNull(cache.get(fingerprint(demands())));
+
+        // Другие магазины - другой baseKey: прошлые планы не подходят
+        Map<String, Store> moved = stores();
+        moved.get("S3").setX(99);
+        PlanCache.Fingerprint other = PlanCache.fingerprint(PLANNER, trucks(), moved, products(), demands());
+        assertNull(cache.closest(other, 10));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPlans() {
+        PlanCache cache = new PlanCache(folder.getRoot(), 2);
+        List<PlanCache.Fingerprint> keys = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, List<DeliveryRequest>> demands = demands();
+            demands.get("S3").get(0).setQuantity(10 + i);
+            keys.add(fingerprint(demands));
+            cache.put(keys.get(i), plan("P" + i));
+            // Время изменения файла - порядок LRU, разводим записи по времени
+            new File(folder.getRoot(), keys.get(i).getKey() + ".plan")
+                    .setLastModified(System.currentTimeMillis() - (10 - i) * 1000L);
+        }
+        assertNull(cache.get(keys.get(0)));
+        assertNotNull(cache.get(keys.get(1)));
+        assertNotNull(cache.get(keys.get(2)));
+    }
+
+    private static String key(List<Truck> trucks, Map<String, Store> stores,
+                              Map<String, List<DeliveryRequest>> demands) {
+        return PlanCache.fingerprint(PLANNER, trucks, stores, products(), demands).getKey();
+    }
+
+    private static PlanCache.Fingerprint fingerprint(Map<String, List<DeliveryRequest>> demands) {
+        return PlanCache.fingerprint(PLANNER, trucks(), stores(), products(), demands);
+    }
+
+    private static List<DeliveryRoute> plan(String routeId) {
+        return Collections.singletonList(new DeliveryRoute(routeId, "T1", LocalTime.of(9, 0)));
+    }
+
+    private static List<Truck> trucks() {
+        return new ArrayList<>(Arrays.asList(
+                new Truck("T1", 10, 1, 0, 0, LocalTime.of(6, 0), LocalTime.of(22, 0)),
+                new Truck("T2", 20, 2, 0, 0, LocalTime.of(6, 0), LocalTime.of(22, 0))));
+    }
+
+    private static Map<String, Store> stores() {
+        Map<String, Store> stores = new LinkedHashMap<>();
+        stores.put("S3", new Store("S3", 30, -5, LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        stores.put("S1", new Store("S1", 10, 5, LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        stores.put("S2", new Store("S2", 20, 0, LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        return stores;
+    }
+
+    private static Map<String, Product> products() {
+        Map<String, Product> products = new HashMap<>();
+        products.put("P1", new Product("P1", "Товар", 0.1));
+        return products;
+    }
+
+    private static Map<String, List<DeliveryRequest>> demands() {
+        Map<String, List<DeliveryRequest>> demands = new HashMap<>();
+        for (String store : Arrays.asList("S1", "S2", "S3")) {
+            demands.put(store, new ArrayList<>(Collections.singletonList(
+                    new DeliveryRequest("R" + store, store, "P1", 5, 0.5))));
+        }
+        return demands;
+    }
+}
@@ -0,0 +1,37 @@
+package planning;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Выбор стратегии по имени и по настройке запуска
+ */
+public class PlanningStrategyTest {
+
+    @After
+    public void resetStrategy() {
+        System.clearProperty(PlanningStrategy.PROPERTY);
+    }
+
+    @Test
+    public void namesIgnoreCaseAndDefaultToGreedy() {
+        assertEquals(PlanningStrategy.SAVINGS, PlanningStrategy.fromName(" Savings "));
+        assertEquals(PlanningStrategy.MULTI_DEPOT, PlanningStrategy.fromName("multi_depot"));
+        assertEquals(PlanningStrategy.GREEDY, PlanningStrategy.fromName(null));
+        assertEquals(PlanningStrategy.GREEDY, PlanningStrategy.fromName(" "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownNameIsRejected() {
+        PlanningStrategy.fromName("savigns");
+    }
+
+    @Test
+    public void currentReadsRunSetting() {
+        assertEquals(PlanningStrategy.GREEDY, PlanningStrategy.current());
+        System.setProperty(PlanningStrategy.PROPERTY, "alns");
+        assertEquals(PlanningStrategy.ALNS, PlanningStrategy.current());
+    }
+}
@@ -0,0 +1,116 @@
+package planning;
+
+import model.Store;
+import model.Truck;
+import org.junit.Test;
+import util.EuclideanDistanceProvider;
+
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * k ближайших по сетке совпадают с полным перебором активных точек
+ * (равномерные, скученные и лежащие на одной прямой магазины, запросы вне области, удаления)
+ */
+public class SpatialGridTest {
+
+    private static final int POINTS = 400;
+    private static final int QUERIES = 200;
+
+    @Test
+    public void uniformPointsMatchBruteForce() {
+        Random random = new Random(11);
+        check(random, index -> new double[]{random.nextDouble() * 1000, random.nextDouble() * 1000});
+    }
+
+    @Test
+    public void clusteredPointsMatchBruteForce() {
+        Random random = new Random(13);
+        check(random, index -> {
+            double cx = index % 3 * 400;
+            double cy = index % 5 * 250;
+            return new double[]{cx + random.nextGaussian() * 5, cy + random.nextGaussian() * 5};
+        });
+    }
+
+    @Test
+    public void collinearPointsMatchBruteForce() {
+        Random random = new Random(17);
+        check(random, index -> new double[]{random.nextInt(500) * 2.0, 7});
+    }
+
+    private interface Points {
+        double[] point(int index);
+    }
+
+    private static void check(Random random, Points points) {
+        Map<String, Store> stores = new HashMap<>();
+        for (int i = 0; i < POINTS; i++) {
+            double[] point = points.point(i);
+            String id = String.format(Locale.ROOT, "S%04d", i);
+            stores.put(id, new Store(id, point[0], point[1], LocalTime.of(8, 0), LocalTime.of(18, 0)));
+        }
+        List<Truck> trucks = Collections.singletonList(new Truck("T1", 100, 1, -50, -50));
+        DistanceMatrix matrix = DistanceMatrix.build(stores, trucks, EuclideanDistanceProvider.INSTANCE);
+
+        // Склад в сетку не входит
+        int[] indices = new int[matrix.storeCount()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        SpatialGrid grid = new SpatialGrid(matrix, indices);
+        boolean[] active = new boolean[matrix.size()];
+        Arrays.fill(active, 0, matrix.storeCount(), true);
+
+        int[] found = new int[64];
+        for (int round = 0; round < 3; round++) {
+            for (int q = 0; q < QUERIES; q++) {
+                double x = random.nextDouble() * 1400 - 200;
+                double y = random.nextDouble() * 1400 - 200;
+                int k = 1 + random.nextInt(found.length);
+                int count = grid.nearest(x, y, k, found);
+                double[] expected = bruteForce(matrix, active, x, y, k);
+                assertEquals(expected.length, count);
+                Set<Integer> seen = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    assertTrue(active[found[i]]);
+                    assertTrue(seen.add(found[i]));
+                    assertEquals(expected[i], squared(matrix, found[i], x, y), 1e-9);
+                }
+            }
+            // Удаляем половину оставшихся точек
+            for (int i = 0; i < matrix.storeCount(); i++) {
+                if (active[i] && random.nextBoolean()) {
+                    grid.remove(i);
+                    active[i] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Квадраты расстояний до k ближайших активных точек по возрастанию
+     */
+    private static double[] bruteForce(DistanceMatrix matrix, boolean[] active, double x, double y, int k) {
+        List<Double> distances = new ArrayList<>();
+        for (int i = 0; i < active.length; i++) {
+            if (active[i]) {
+                distances.add(squared(matrix, i, x, y));
+            }
+        }
+        Collections.sort(distances);
+        double[] result = new double[Math.min(k, distances.size())];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = distances.get(i);
+        }
+        return result;
+    }
+
+    private static double squared(DistanceMatrix matrix, int index, double x, double y) {
+        double dx = matrix.x(index) - x;
+        double dy = matrix.y(index) - y;
+        return dx * dx + dy * dy;
+    }
+}
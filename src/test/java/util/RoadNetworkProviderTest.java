@@ -0,0 +1,121 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Иерархия сжатия против обычного Дейкстры по исходному графу: случайная решётка с диагоналями,
+ * случайными длинами и односторонними рёбрами. Ловит ошибки ярлыков, лимитов поиска свидетелей и stall-on-demand.
+ */
+public class RoadNetworkProviderTest {
+
+    private static final int SIDE = 30;
+    private static final int SOURCES = 40;
+
+    @Test
+    public void matchesDijkstraOnRandomGridWithOneWayEdges() throws IOException {
+        Random random = new Random(7);
+        int nodes = SIDE * SIDE;
+        double[] xs = new double[nodes];
+        double[] ys = new double[nodes];
+        for (int node = 0; node < nodes; node++) {
+            // Небольшой сдвиг узлов: длины не кратны друг другу, равных путей почти нет
+            xs[node] = node % SIDE + 0.3 * random.nextDouble();
+            ys[node] = node / SIDE + 0.3 * random.nextDouble();
+        }
+        List<int[]> arcs = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        File file = Files.createTempFile("roads", ".csv").toFile();
+        try {
+            try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+                out.println("from_x,from_y,to_x,to_y,length,oneway");
+                for (int node = 0; node < nodes; node++) {
+                    int column = node % SIDE;
+                    int[] neighbours = {
+                            column + 1 < SIDE ? node + 1 : -1,
+                            node + SIDE < nodes ? node + SIDE : -1,
+                            column + 1 < SIDE && node + SIDE < nodes && random.nextInt(4) == 0 ? node + SIDE + 1 : -1};
+                    for (int next : neighbours) {
+                        if (next < 0) continue;
+                        double length = Math.hypot(xs[next] - xs[node], ys[next] - ys[node]) * (1 + random.nextDouble());
+                        boolean oneway = random.nextInt(3) == 0;
+                        int from = node;
+                        int to = next;
+                        if (oneway && random.nextBoolean()) {
+                            from = next;
+                            to = node;
+                        }
+                        out.println(xs[from] + "," + ys[from] + "," + xs[to] + "," + ys[to] + "," + length + ","
+                                + (oneway ? 1 : 0));
+                        arcs.add(new int[]{from, to});
+                        weights.add(length);
+                        if (!oneway) {
+                            arcs.add(new int[]{to, from});
+                            weights.add(length);
+                        }
+                    }
+                }
+            }
+            RoadNetworkProvider provider = RoadNetworkProvider.load(file.getPath());
+            assertFalse(provider.isSymmetric());
+
+            int compared = 0;
+            double[] row = new double[nodes];
+            for (int s = 0; s < SOURCES; s++) {
+                int source = random.nextInt(nodes);
+                double[] expected = dijkstra(nodes, arcs, weights, source);
+                provider.distancesFrom(xs[source], ys[source], xs, ys, row);
+                for (int target = 0; target < nodes; target++) {
+                    if (expected[target] == Double.POSITIVE_INFINITY) continue;
+                    String pair = source + " -> " + target;
+                    assertEquals(pair, expected[target], row[target], 1e-9 * (1 + expected[target]));
+                    if (target % 7 == 0) {
+                        assertEquals(pair, expected[target],
+                                provider.distance(xs[source], ys[source], xs[target], ys[target]),
+                                1e-9 * (1 + expected[target]));
+                    }
+                    compared++;
+                }
+            }
+            assertTrue("мало достижимых пар: " + compared, compared > SOURCES * nodes / 2);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static double[] dijkstra(int nodes, List<int[]> arcs, List<Double> weights, int source) {
+        List<List<Integer>> out = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            out.add(new ArrayList<>());
+        }
+        for (int a = 0; a < arcs.size(); a++) {
+            out.get(arcs.get(a)[0]).add(a);
+        }
+        double[] distance = new double[nodes];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        distance[source] = 0;
+        PriorityQueue<double[]> queue = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[0]));
+        queue.add(new double[]{0, source});
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            int node = (int) entry[1];
+            if (entry[0] > distance[node]) continue;
+            for (int a : out.get(node)) {
+                int next = arcs.get(a)[1];
+                double candidate = entry[0] + weights.get(a);
+                if (candidate < distance[next]) {
+                    distance[next] = candidate;
+                    queue.add(new double[]{candidate, next});
+                }
+            }
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,41 @@
+package util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Ядро расстояний на Vector API (JDK 16+): по SPECIES.length() точек за шаг, хвост - скалярно
+ * Собирается отдельно профилем vector (pom.xml), загружается DistanceKernels по имени класса.
+ */
+final class VectorDistanceKernel implements DistanceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorDistanceKernel() {
+    }
+
+    @Override
+    public void distancesFrom(double x, double y, double[] xs, double[] ys, double[] out) {
+        int length = xs.length;
+        int bound = SPECIES.loopBound(length);
+        DoubleVector vx = DoubleVector.broadcast(SPECIES, x);
+        DoubleVector vy = DoubleVector.broadcast(SPECIES, y);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, i).sub(vx);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, i).sub(vy);
+            dx.mul(dx).add(dy.mul(dy)).lanewise(VectorOperators.SQRT).intoArray(out, i);
+        }
+        for (; i < length; i++) {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            out[i] = Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ядро Vector API (" + SPECIES.length() + " x double)";
+    }
+}